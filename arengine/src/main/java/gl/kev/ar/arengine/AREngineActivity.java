@@ -12,19 +12,21 @@ import android.view.View;
 import android.widget.AbsoluteLayout;
 import android.widget.FrameLayout;
 
-import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import com.threed.jpct.Config;
 import com.threed.jpct.SimpleVector;
 import com.threed.jpct.World;
 
+import org.artoolkit.ar.jpct.ArJcptRenderer;
 import org.artoolkit.ar.jpct.ArJpctActivity;
+import org.artoolkit.ar.jpct.MarkerRange;
 import org.artoolkit.ar.jpct.TrackableObject3d;
 
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
-import java.io.InputStreamReader;
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -33,11 +35,18 @@ import javax.microedition.khronos.opengles.GL10;
 
 import gl.kev.ar.arengine.config.ARSceneConfig;
 import gl.kev.ar.arengine.config.ConfigLoader;
+import gl.kev.ar.arengine.config.ConfigReloader;
+import gl.kev.ar.arengine.config.ConfigSnapshot;
+import gl.kev.ar.arengine.config.ModelLoader;
 import gl.kev.ar.arengine.helper.ActivityX;
 import gl.kev.ar.arengine.helper.FileSystem;
+import gl.kev.ar.arengine.helper.ScriptCache;
+import gl.kev.ar.arengine.helper.Scripting;
 import gl.kev.ar.arengine.helper.ViewX;
 import gl.kev.ar.arengine.helper.jpct.JPCTHelper;
+import gl.kev.ar.arengine.helper.jpct.TextureCache;
 import gl.kev.ar.arengine.helper.math.Position;
+import gl.kev.ar.arengine.helper.profiling.FrameAllocationTracker;
 import gl.kev.logging.GLog;
 
 /**
@@ -58,6 +67,8 @@ public class AREngineActivity extends ArJpctActivity {
     Map<String, View> mTrackedViews = new HashMap<>();
 
     ConfigLoader configLoader;
+    ConfigReloader configReloader;
+    private ModelLoader modelLoader;
 
     @Override
     public void onCreate(Bundle savedInstanceState) {
@@ -80,13 +91,77 @@ public class AREngineActivity extends ArJpctActivity {
                     MY_PERMISSIONS_REQUEST_CAMERA);
         }
 
+        // Config scripts compiled on a previous start
+        ScriptCache.getInstance().setDirectory(new File(getCacheDir(), "scripts"));
+
         if(config == null) {
             config = provideConfig();
             GLog.success("Config loaded");
-            GLog.debug("Config:\n" + new GsonBuilder().setPrettyPrinting().create().toJson(config));
+            if(BuildConfig.DEBUG)
+                GLog.debug("Config:\n" + new GsonBuilder().setPrettyPrinting().create().toJson(config));
+        }
+
+        if(config != null)
+            applyRendererSettings(config);
+
+        if(BuildConfig.DEBUG) {
+            FrameAllocationTracker tracker = getArJcptRenderer().getAllocationTracker();
+            if(config != null)
+                tracker.setFrameBudget(config.getFrameAllocationBudget());
+            tracker.setEnabled(true);
         }
     }
 
+    @Override
+    public void onResume() {
+        super.onResume();
+        if(config != null && config.isHotReload() && FileSystem.exists(getConfigPath())) {
+            if(configReloader == null)
+                configReloader = new ConfigReloader(this, config, new File(getConfigPath()));
+            configReloader.start();
+        }
+    }
+
+    @Override
+    public void onPause() {
+        super.onPause();
+        if(configReloader != null)
+            configReloader.stop();
+        if(BuildConfig.DEBUG)
+            getArJcptRenderer().getScriptHooks().logMetrics();
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        // The wrappers hold on to this activity
+        Scripting.clearWrappers();
+    }
+
+    /**
+     * Loader passed to model scripts, one instance so its script wrapper is reused.
+     */
+    public synchronized ModelLoader getModelLoader() {
+        if(modelLoader == null)
+            modelLoader = new ModelLoader(this);
+        return modelLoader;
+    }
+
+    /**
+     * Applies the renderer related settings of the config, again after a reload.
+     */
+    public void applyRendererSettings(ARSceneConfig config) {
+        ArJcptRenderer renderer = getArJcptRenderer();
+        renderer.setSkipUnchangedFrames(config.isSkipUnchangedFrames());
+        renderer.setChangeTolerance(config.getChangeToleranceTranslation(), config.getChangeToleranceRotation());
+        renderer.setFrustumCulling(config.isFrustumCulling());
+        renderer.setIncrementalBuild(config.isIncrementalBuild(), config.getBuildBudget());
+        renderer.getDebugLines().setEnabled(config.isBatchedGizmos());
+        renderer.getScriptHooks().setBudget(config.getScriptBudget(), config.getScriptInstructionLimit());
+        TextureCache.getInstance().configure(this, config.getTextureCacheBudget(),
+                config.getTextureCacheDiskSize(), config.isTextureCompression());
+    }
+
     protected boolean checkCameraPermission() {
         return ContextCompat.checkSelfPermission(this, Manifest.permission.CAMERA) == PackageManager.PERMISSION_GRANTED;
     }
@@ -108,12 +183,23 @@ public class AREngineActivity extends ArJpctActivity {
             if (getConfig() != null) {
                 GLog.debug("Applying config to trackable objects");
                 getConfig().apply(this, list);
+                getArJcptRenderer().setMarkerPager(getConfig().createMarkerPager());
             }
         }catch (Throwable ex) {
             GLog.exception("Exception while loading Config", ex);
         }
     }
 
+    @Override
+    protected void populateMarkerRanges(List<MarkerRange> list) {
+        try {
+            if (getConfig() != null)
+                getConfig().apply_ranges(this, list);
+        }catch (Throwable ex) {
+            GLog.exception("Exception while loading marker ranges", ex);
+        }
+    }
+
     @Override
     public void configureWorld(World world) {
         this.world = world;
@@ -130,17 +216,22 @@ public class AREngineActivity extends ArJpctActivity {
 
     public ARSceneConfig provideConfig() {
         String path = getConfigPath();
-        File file = new File(path);
         requestFileReadPermission();
         try {
             if(FileSystem.exists(path)) {
                 GLog.debug("Load Config File " + path);
-                Gson gson = new Gson();
-                return gson.fromJson(new InputStreamReader(new FileInputStream(file)), ARSceneConfig.class);
+                return loadConfigFile(new File(path));
             } else {
                 GLog.debug("Config File " + path + " not found. Use default.");
-                Gson gson = new Gson();
-                return gson.fromJson(new InputStreamReader(getAssets().open("defaultconfig.json")), ARSceneConfig.class);
+                // Assets only change with an update of the app
+                long installed = getPackageManager().getPackageInfo(getPackageName(), 0).lastUpdateTime;
+                return ConfigSnapshot.load(new File(getCacheDir(), "defaultconfig.snapshot"), installed, -1,
+                        new ConfigSnapshot.Source() {
+                            @Override
+                            public InputStream open() throws IOException {
+                                return getAssets().open("defaultconfig.json");
+                            }
+                        });
             }
         } catch (Exception e) {
             GLog.exception("Can't load Config file: " + path, e);
@@ -148,6 +239,26 @@ public class AREngineActivity extends ArJpctActivity {
         return null;
     }
 
+    /**
+     * Loads a config file through its snapshot, see ConfigSnapshot.
+     */
+    public ARSceneConfig loadConfigFile(final File file) throws IOException {
+        return ConfigSnapshot.load(new File(getCacheDir(), "arapp.snapshot"), file.lastModified(), file.length(),
+                new ConfigSnapshot.Source() {
+                    @Override
+                    public InputStream open() throws IOException {
+                        return new FileInputStream(file);
+                    }
+                });
+    }
+
+    /**
+     * Called by the ConfigReloader after the scene was updated to the new config.
+     */
+    public void onConfigReloaded(ARSceneConfig config) {
+        this.config = config;
+    }
+
     public String getConfigPath() {
         return FileSystem.getStoregePath()+"/arapp.json";
     }
@@ -2,14 +2,19 @@ package gl.kev.ar.arengine.config;
 
 import com.threed.jpct.Object3D;
 
+import org.artoolkit.ar.jpct.DebugLineRenderer;
+import org.artoolkit.ar.jpct.MarkerRange;
 import org.artoolkit.ar.jpct.TrackableObject3d;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 
 import gl.kev.ar.arengine.AREngineActivity;
+import gl.kev.ar.arengine.helper.ScriptHooks;
 import gl.kev.ar.arengine.helper.Scripting;
 import gl.kev.ar.arengine.helper.jpct.JPCTHelper;
+import gl.kev.ar.arengine.helper.jpct.SceneBatch;
 import gl.kev.ar.arengine.helper.math.Position;
 import gl.kev.logging.GLog;
 
@@ -21,6 +26,10 @@ public class ARMarker {
     public String name;
     public String marker;
     public String[] script;
+    // Per frame scripts, see ScriptHooks
+    public String[] onFrame;
+    public String[] onVisible;
+    public String[] onHidden;
 
     public ARModel[] models;
 
@@ -32,8 +41,14 @@ public class ARMarker {
 
     public ARMarkerOptions options;
 
+    // Names of markers paged in while this one is tracked, see ARSceneConfig.MaxActiveMarkers
+    public String[] neighbours;
+
+    // Created by apply, used to update the running scene when the config is reloaded
+    transient TrackableObject3d trackableObject;
+
     public void apply(AREngineActivity activity, List<TrackableObject3d> list) {
-        if(marker == null)
+        if(marker == null || MarkerRange.isRange(marker))
             return;
 
         GLog.debug("Loading marker " + marker);
@@ -42,6 +57,7 @@ public class ARMarker {
         marker_.setOptions(options);
         marker_.lerping = lerping;
         list.add(marker_);
+        trackableObject = marker_;
 
         if(name != null)
             marker_.setName(name);
@@ -52,7 +68,7 @@ public class ARMarker {
 
         if(gizmo) {
             GLog.debug("Attach Gizmo to marker " + marker);
-            marker_.addChild(JPCTHelper.createKartesianGizmo(60, 4));
+            attachGizmo(activity, marker_);
         }
 
         if(models != null && models.length > 0) {
@@ -60,8 +76,7 @@ public class ARMarker {
                 model.apply(activity, marker_, list);
             }
         } else {
-            marker_.addChild(JPCTHelper.createKartesianGizmo(60,4));
-
+            attachGizmo(activity, marker_);
         }
 
         marker_.setCollisionMode(Object3D.COLLISION_CHECK_OTHERS);
@@ -70,7 +85,82 @@ public class ARMarker {
             HashMap<String, Object> context = new HashMap<>();
             context.put("marker", marker_);
             context.put("config", this);
+            context.put("batch", SceneBatch.getInstance());
             Scripting.execute(script, context);
         }
+
+        addHooks(activity, name != null ? name : marker, marker_, null, onFrame, onVisible, onHidden);
+    }
+
+    /**
+     * Compiles the per frame scripts of a marker or model, see ScriptHooks.
+     */
+    static void addHooks(AREngineActivity activity, String name, TrackableObject3d marker, Object node,
+                         String[] onFrame, String[] onVisible, String[] onHidden) {
+        if(onFrame == null && onVisible == null && onHidden == null)
+            return;
+
+        HashMap<String, Object> context = new HashMap<>();
+        context.put("activity", activity);
+        context.put("batch", SceneBatch.getInstance());
+        ScriptHooks hooks = activity.getArJcptRenderer().getScriptHooks();
+        if(onFrame != null)
+            hooks.add(name, ScriptHooks.ON_FRAME, onFrame, marker, node, context);
+        if(onVisible != null)
+            hooks.add(name, ScriptHooks.ON_VISIBLE, onVisible, marker, node, context);
+        if(onHidden != null)
+            hooks.add(name, ScriptHooks.ON_HIDDEN, onHidden, marker, node, context);
+    }
+
+    /**
+     * Creates a marker range if the marker string contains one, e.g. "single_barcode;{0..511};80".
+     * This marker is the template, copied for every marker of the range when it is seen first.
+     * A range in the name is replaced by the id too, otherwise the id is appended.
+     * @return The range, null if this is a single marker.
+     */
+    public MarkerRange applyRange(final AREngineActivity activity) {
+        if(!MarkerRange.isRange(marker))
+            return null;
+
+        GLog.debug("Loading marker range " + marker);
+        final MarkerRange range = new MarkerRange(marker, new MarkerRange.Factory() {
+            @Override
+            public TrackableObject3d create(String markerString, int id) {
+                ARMarker m = copy();
+                m.marker = markerString;
+                if(name != null)
+                    m.name = MarkerRange.isRange(name) ? new MarkerRange(name, null).getMarkerString(id) : name + "_" + id;
+                List<TrackableObject3d> list = new ArrayList<>(1);
+                m.apply(activity, list);
+                return list.isEmpty() ? null : list.get(0);
+            }
+        });
+        range.setOptions(options);
+        return range;
+    }
+
+    private ARMarker copy() {
+        ARMarker m = new ARMarker();
+        m.name = name;
+        m.marker = marker;
+        m.script = script;
+        m.onFrame = onFrame;
+        m.onVisible = onVisible;
+        m.onHidden = onHidden;
+        m.models = models;
+        m.tags = tags;
+        m.gizmo = gizmo;
+        m.lerping = lerping;
+        m.options = options;
+        m.neighbours = neighbours;
+        return m;
+    }
+
+    private static void attachGizmo(AREngineActivity activity, TrackableObject3d marker) {
+        DebugLineRenderer lines = activity.getArJcptRenderer().getDebugLines();
+        if(lines.isEnabled())
+            lines.addAxes(marker, 60);
+        else
+            marker.addChild(JPCTHelper.createKartesianGizmo(60, 4));
     }
 }
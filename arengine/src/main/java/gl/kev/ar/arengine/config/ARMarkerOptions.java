@@ -1,8 +1,8 @@
 package gl.kev.ar.arengine.config;
 
-import org.artoolkit.ar.base.ARToolKit;
 import org.artoolkit.ar.base.NativeInterface;
 
+import java.util.Arrays;
 import java.util.Map;
 
 import gl.kev.logging.GLog;
@@ -16,80 +16,105 @@ public class ARMarkerOptions {
     public Map<String, Float> float_type = null;
     public Map<String, Boolean> bool_type = null;
 
-    public void apply(int markerUID) {
+    // Option ids and values resolved from the names above, see resolve()
+    transient int[] intOptions;
+    transient int[] intValues;
+    transient int[] floatOptions;
+    transient float[] floatValues;
+    transient int[] boolOptions;
+    transient boolean[] boolValues;
+
+    /**
+     * Resolves the option names once through the NativeConstants table. Unknown names are logged
+     * with the valid ones and dropped.
+     */
+    public synchronized void resolve() {
+        if(intOptions != null)
+            return;
+
+        int n = 0;
+        int size = int_type != null ? int_type.size() : 0;
+        int[] options = new int[size];
+        int[] values = new int[size];
         if(int_type != null)
-            applyInt(markerUID);
+            for(Map.Entry<String, String> entry : int_type.entrySet()) {
+                int option = resolveOption(entry.getKey());
+                int value = NativeConstants.resolve(entry.getValue(), NativeConstants.ALL, "int option value");
+                if(option == Integer.MIN_VALUE || value == Integer.MIN_VALUE)
+                    continue;
+                options[n] = option;
+                values[n++] = value;
+            }
+        int[] intOptions_ = Arrays.copyOf(options, n);
+        intValues = Arrays.copyOf(values, n);
 
+        n = 0;
+        size = float_type != null ? float_type.size() : 0;
+        options = new int[size];
+        float[] floats = new float[size];
         if(float_type != null)
-            applyFloat(markerUID);
+            for(Map.Entry<String, Float> entry : float_type.entrySet()) {
+                int option = resolveOption(entry.getKey());
+                if(option == Integer.MIN_VALUE)
+                    continue;
+                if(entry.getValue() == null) {
+                    GLog.error("Missing value of float option '" + entry.getKey() + "'", null);
+                    continue;
+                }
+                options[n] = option;
+                floats[n++] = entry.getValue();
+            }
+        floatOptions = Arrays.copyOf(options, n);
+        floatValues = Arrays.copyOf(floats, n);
 
+        n = 0;
+        size = bool_type != null ? bool_type.size() : 0;
+        options = new int[size];
+        boolean[] bools = new boolean[size];
         if(bool_type != null)
-            applyBool(markerUID);
-    }
-
-    private void applyInt(int markerUID) {
-        for(String key: int_type.keySet()) {
-            try {
-                int option = Integer.MIN_VALUE;
-                int value = Integer.MIN_VALUE;
-
-                try { option = Integer.parseInt(key); } catch (Exception ex) { }
-                try { value = Integer.parseInt(int_type.get(key)); } catch (Exception ex) { }
-
+            for(Map.Entry<String, Boolean> entry : bool_type.entrySet()) {
+                int option = resolveOption(entry.getKey());
                 if(option == Integer.MIN_VALUE)
-                    option = findIntField(key);
-                if(value == Integer.MIN_VALUE)
-                    value = findIntField(int_type.get(key));
-
-                NativeInterface.arwSetMarkerOptionInt(markerUID, option, value);
-                //NativeInterface.arwSetTrackerOptionInt(option, value);
-
-                GLog.info("Did set marker int option of " + markerUID + ": '" + key + "' -> '" + int_type.get(key) + "'");
-            } catch (Exception ex) {
-                GLog.exception("Can't apply int option to AR: '" + key + "' -> '" + int_type.get(key) + "'", ex);
+                    continue;
+                if(entry.getValue() == null) {
+                    GLog.error("Missing value of bool option '" + entry.getKey() + "'", null);
+                    continue;
+                }
+                options[n] = option;
+                bools[n++] = entry.getValue();
             }
-        }
+        boolOptions = Arrays.copyOf(options, n);
+        boolValues = Arrays.copyOf(bools, n);
+
+        // Set last, it marks the options as resolved
+        intOptions = intOptions_;
     }
-    private void applyFloat(int markerUID) {
-        for(String key: float_type.keySet()) {
-            try {
-                int option = Integer.MIN_VALUE;
-                float value = float_type.get(key);
 
-                try { option = Integer.parseInt(key); } catch (Exception ex) { }
+    /**
+     * Sets all options of the marker in one go, the names were resolved before.
+     */
+    public void apply(int markerUID) {
+        resolve();
 
-                if(option == Integer.MIN_VALUE)
-                    option = findIntField(key);
+        for(int i = 0; i < intOptions.length; i++)
+            NativeInterface.arwSetMarkerOptionInt(markerUID, intOptions[i], intValues[i]);
+        for(int i = 0; i < floatOptions.length; i++)
+            NativeInterface.arwSetMarkerOptionFloat(markerUID, floatOptions[i], floatValues[i]);
+        for(int i = 0; i < boolOptions.length; i++)
+            NativeInterface.arwSetMarkerOptionBool(markerUID, boolOptions[i], boolValues[i]);
 
-                NativeInterface.arwSetMarkerOptionFloat(markerUID, option, value);
-                //NativeInterface.arwSetTrackerOptionFloat(option, value);
-                GLog.info("Did set marker float option of " + markerUID + ": '" + key + "' -> '" + float_type.get(key) + "'");
-            } catch (Exception ex) {
-                GLog.exception("Can't apply float option to AR: '" + key + "' -> '" + int_type.get(key) + "'", ex);
-            }
-        }
+        GLog.debug("Did set " + (intOptions.length + floatOptions.length + boolOptions.length)
+                + " marker options of " + markerUID);
     }
-    private void applyBool(int markerUID) {
-        for(String key: bool_type.keySet()) {
-            try {
-                int option = Integer.MIN_VALUE;
-                boolean value = bool_type.get(key);
 
-                try { option = Integer.parseInt(key); } catch (Exception ex) { }
-
-                if(option == Integer.MIN_VALUE)
-                    option = findIntField(key);
-
-                NativeInterface.arwSetMarkerOptionBool(markerUID, option, value);
-                //NativeInterface.arwSetTrackerOptionBool(option, value);
-                GLog.info("Did set marker bool option of " + markerUID + ": '" + key + "' -> '" + bool_type.get(key) + "'");
-            } catch (Exception ex) {
-                GLog.exception("Can't apply float option to AR: '" + key + "' -> '" + int_type.get(key) + "'", ex);
-            }
-        }
+    private static int resolveOption(String name) {
+        return NativeConstants.resolve(name, NativeConstants.MARKER_OPTIONS, "marker option");
     }
 
-    private int findIntField(String name) throws NoSuchFieldException, IllegalAccessException {
-        return NativeInterface.class.getField(name).getInt(null);
+    /**
+     * @return A key that is equal for option blocks with equal content.
+     */
+    Object contentKey() {
+        return Arrays.asList(int_type, float_type, bool_type);
     }
 }
@@ -7,6 +7,8 @@ import com.threed.jpct.Object3D;
 import com.threed.jpct.Primitives;
 import com.threed.jpct.SimpleVector;
 
+import net.gliewe.generic.function.IFuncR0;
+
 import org.artoolkit.ar.jpct.TrackableObject3d;
 
 import java.io.File;
@@ -21,7 +23,9 @@ import java.util.Map;
 import gl.kev.ar.arengine.AREngineActivity;
 import gl.kev.ar.arengine.helper.FileSystem;
 import gl.kev.ar.arengine.helper.Scripting;
+import gl.kev.ar.arengine.helper.jpct.LodNode;
 import gl.kev.ar.arengine.helper.jpct.Node3D;
+import gl.kev.ar.arengine.helper.jpct.SceneBatch;
 import gl.kev.ar.arengine.helper.math.Position;
 import gl.kev.logging.GLog;
 
@@ -32,6 +36,10 @@ import gl.kev.logging.GLog;
 public class ARModel {
     public String model;
     public String[] script;
+    // Per frame scripts with the model node, see ScriptHooks
+    public String[] onFrame;
+    public String[] onVisible;
+    public String[] onHidden;
 
     public double scale = 1.0;
 
@@ -45,49 +53,56 @@ public class ARModel {
 
     public int transparency = 20;
 
+    // Coarser meshes, ordered by switch distance. The model above is the detailed level.
+    public ARModelLod[] lod;
+    public double lodHysteresis = 0.1;
+
     private static Map<String, Object3D[]> modelcache = new HashMap<>();
 
     public static void preloadModel(AREngineActivity activity, ARModel m) {
-        Object3D[] object3DfArr = null;
-        InputStream inputStream = null;
-
-        if(m.model != null) {
-            if(!modelcache.containsKey(m.model)) {
-                HashMap<String, Object> context = new HashMap<>();
-                context.put("loader", new ModelLoader(activity));
-                context.put("activity", activity);
-                inputStream = (InputStream) Scripting.execute(m.model, context);
-                object3DfArr = Loader.loadOBJ(inputStream, null, 1.0F);
-                modelcache.put(m.model, object3DfArr);
-            }
+        if(m.model == null)
+            return;
+        synchronized (modelcache) {
+            if(modelcache.containsKey(m.model))
+                return;
         }
+        // Scripting is thread safe, models can be preloaded in parallel
+        loadModel(activity, m.model);
     }
 
     public void apply(AREngineActivity activity, TrackableObject3d marker, List<TrackableObject3d> list) {
         HashMap<String, Object> context = new HashMap<>();
-        context.put("loader", new ModelLoader(activity));
+        context.put("loader", activity.getModelLoader());
         context.put("activity", activity);
 
         Object3D[] object3DfArr = null;
         InputStream inputStream = null;
 
         if(model != null) {
-            if(modelcache.containsKey(model))
-                object3DfArr = cloneObject3DArr(modelcache.get(model));
+            Object3D[] cached;
+            synchronized (modelcache) {
+                cached = modelcache.get(model);
+            }
+            if(cached != null)
+                object3DfArr = cloneObject3DArr(cached);
             else
                 inputStream = (InputStream) Scripting.execute(model, context);
         } else {
             GLog.info("model is null");
         }
 
-        Node3D node = new Node3D();
+        Node3D node = lod != null && lod.length > 0 ? new LodNode() : new Node3D();
 
         if(inputStream != null || object3DfArr != null) {
             if(inputStream != null)
                 object3DfArr = Loader.loadOBJ(inputStream, null, 1.0F);
 
-            for(Object3D object3Df : object3DfArr) {
-                node.addChild(object3Df);
+            if(node instanceof LodNode) {
+                applyLod(activity, (LodNode) node, object3DfArr);
+            } else {
+                for(Object3D object3Df : object3DfArr) {
+                    node.addChild(object3Df);
+                }
             }
 
             node.setTransparency(transparency) ;
@@ -104,7 +119,9 @@ public class ARModel {
 
             marker.addChild(node);
 
-            modelcache.put(model, object3DfArr);
+            synchronized (modelcache) {
+                modelcache.put(model, object3DfArr);
+            }
         } else {
             GLog.info("'" + model + "' returned null");
         }
@@ -113,10 +130,56 @@ public class ARModel {
             context = new HashMap<>();
             context.put("marker", marker);
             context.put("config", this);
+            context.put("batch", SceneBatch.getInstance());
             context.put("objects3D", object3DfArr);
             context.put("node", node);
             Scripting.execute(script, context);
         }
+
+        ARMarker.addHooks(activity, marker.getName() + "/" + model, marker, node, onFrame, onVisible, onHidden);
+    }
+
+    private void applyLod(final AREngineActivity activity, LodNode node, Object3D[] object3DfArr) {
+        node.setHysteresis((float) lodHysteresis);
+        node.addLevel(0, object3DfArr);
+
+        for(final ARModelLod level : lod) {
+            if(level.model == null) {
+                GLog.info("lod model is null");
+                continue;
+            }
+            node.addLevel((float) level.distance, new IFuncR0<Object3D[]>() {
+                @Override
+                public Object3D[] call() {
+                    return loadModel(activity, level.model);
+                }
+            }, level.lazy);
+        }
+    }
+
+    /**
+     * Loads a model for a LOD level, may run on a background thread.
+     */
+    private static Object3D[] loadModel(AREngineActivity activity, String model) {
+        synchronized (modelcache) {
+            if(modelcache.containsKey(model))
+                return cloneObject3DArr(modelcache.get(model));
+        }
+
+        HashMap<String, Object> context = new HashMap<>();
+        context.put("loader", activity.getModelLoader());
+        context.put("activity", activity);
+        InputStream inputStream = (InputStream) Scripting.execute(model, context);
+        if(inputStream == null) {
+            GLog.info("'" + model + "' returned null");
+            return null;
+        }
+
+        Object3D[] object3DfArr = Loader.loadOBJ(inputStream, null, 1.0F);
+        synchronized (modelcache) {
+            modelcache.put(model, object3DfArr);
+        }
+        return object3DfArr;
     }
 
     public static Object3D[] cloneObject3DArr(Object3D[] arr) {
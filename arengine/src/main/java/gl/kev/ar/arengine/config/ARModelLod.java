@@ -0,0 +1,14 @@
+package gl.kev.ar.arengine.config;
+
+/**
+ * Created by kevingliewe on 18.10.26.
+ *
+ * Level of detail of an ARModel, used from the given distance between camera and marker on.
+ */
+
+public class ARModelLod {
+    public String model;
+    public double distance = 0;
+    // Load on first use instead of with the scene
+    public boolean lazy = true;
+}
@@ -3,14 +3,18 @@ package gl.kev.ar.arengine.config;
 import com.threed.jpct.World;
 
 import org.artoolkit.ar.base.NativeInterface;
+import org.artoolkit.ar.jpct.MarkerPager;
+import org.artoolkit.ar.jpct.MarkerRange;
 import org.artoolkit.ar.jpct.TrackableObject3d;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import gl.kev.ar.arengine.AREngineActivity;
 import gl.kev.ar.arengine.helper.Scripting;
-import gl.kev.ar.arengine.helper.math.Parsing;
+import gl.kev.ar.arengine.helper.jpct.SceneBatch;
 import gl.kev.logging.GLog;
 
 /**
@@ -23,26 +27,131 @@ public class ARSceneConfig {
     String[] script_world;
     String PatternDetectionMode = null;
     String MatrixCodeType = null;
+    long FrameAllocationBudget = -1;
+    boolean SkipUnchangedFrames = true;
+    float ChangeToleranceTranslation = 0.5f;
+    float ChangeToleranceRotation = 0.001f;
+    boolean FrustumCulling = true;
+    long TextureCacheBudget = 32 * 1024 * 1024;
+    int TextureCacheDiskSize = 0;
+    boolean TextureCompression = false;
+    boolean IncrementalBuild = true;
+    float BuildBudget = 8;
+    boolean BatchedGizmos = true;
+    boolean HotReload = false;
+    int MaxActiveMarkers = 0;
+    float ScriptBudget = 2;
+    int ScriptInstructionLimit = 100000;
 
-    public void apply(AREngineActivity activity, List<TrackableObject3d> list) {
-        int patternDetectionMode = getPatternDetectionMode();
-        int matrixCodeType = getMatrixCodeType();
+    // Set by resolve() or when loaded from a ConfigSnapshot
+    transient boolean resolved = false;
+    transient int patternDetectionMode = Integer.MIN_VALUE;
+    transient int matrixCodeType = Integer.MIN_VALUE;
 
-        if(patternDetectionMode != Integer.MIN_VALUE)
-            NativeInterface.arwSetPatternDetectionMode(patternDetectionMode);
+    /**
+     * Resolves option names to NativeInterface constants, here and in the marker options,
+     * so applying the config needs no reflection.
+     */
+    public void resolve() {
+        if(resolved)
+            return;
+        patternDetectionMode = NativeConstants.resolve(PatternDetectionMode,
+                NativeConstants.PATTERN_DETECTION_MODES, "PatternDetectionMode");
+        matrixCodeType = NativeConstants.resolve(MatrixCodeType,
+                NativeConstants.MATRIX_CODE_TYPES, "MatrixCodeType");
 
-        if(matrixCodeType != Integer.MIN_VALUE)
-            NativeInterface.arwSetMatrixCodeType(matrixCodeType);
+        // Markers with equal options share one resolved block, e.g. hundreds of barcode markers
+        if(marker != null) {
+            Map<Object, ARMarkerOptions> shared = new HashMap<>();
+            for(ARMarker m : marker) {
+                if(m.options == null)
+                    continue;
+                ARMarkerOptions options = shared.get(m.options.contentKey());
+                if(options == null) {
+                    options = m.options;
+                    options.resolve();
+                    shared.put(options.contentKey(), options);
+                }
+                m.options = options;
+            }
+        }
+        resolved = true;
+    }
+
+    public void apply(AREngineActivity activity, List<TrackableObject3d> list) {
+        apply_tracker();
 
         if(marker != null)
             for(ARMarker m: marker)
                 m.apply(activity, list);
 
+        apply_script(activity);
+    }
+
+    /**
+     * Adds the marker ranges, see ARMarker.applyRange.
+     */
+    public void apply_ranges(AREngineActivity activity, List<MarkerRange> ranges) {
+        if(marker == null)
+            return;
+        for(ARMarker m: marker) {
+            MarkerRange range = m.applyRange(activity);
+            if(range != null)
+                ranges.add(range);
+        }
+    }
+
+    /**
+     * Pager for MaxActiveMarkers with the neighbours of the markers, call after apply.
+     * @return null if all markers stay registered.
+     */
+    public MarkerPager createMarkerPager() {
+        if(MaxActiveMarkers <= 0 || marker == null)
+            return null;
+
+        Map<String, TrackableObject3d> named = new HashMap<>();
+        for(ARMarker m : marker)
+            if(m.name != null && m.trackableObject != null)
+                named.put(m.name, m.trackableObject);
+
+        MarkerPager pager = new MarkerPager(MaxActiveMarkers);
+        for(ARMarker m : marker) {
+            if(m.neighbours == null || m.trackableObject == null)
+                continue;
+            List<TrackableObject3d> neighbours = new ArrayList<>(m.neighbours.length);
+            for(String name : m.neighbours) {
+                TrackableObject3d neighbour = named.get(name);
+                if(neighbour != null)
+                    neighbours.add(neighbour);
+                else
+                    GLog.warn("Unknown neighbour " + name + " of marker " + m.name);
+            }
+            pager.setNeighbours(m.trackableObject, neighbours.toArray(new TrackableObject3d[neighbours.size()]));
+        }
+        return pager;
+    }
+
+    void apply_tracker() {
+        int patternDetectionMode = getPatternDetectionMode();
+        int matrixCodeType = getMatrixCodeType();
+
+        if(patternDetectionMode != Integer.MIN_VALUE) {
+            NativeInterface.arwSetPatternDetectionMode(patternDetectionMode);
+            GLog.info("Set PatternDetectionMode to " + PatternDetectionMode);
+        }
+
+        if(matrixCodeType != Integer.MIN_VALUE) {
+            NativeInterface.arwSetMatrixCodeType(matrixCodeType);
+            GLog.info("Set MatrixCodeType to " + MatrixCodeType);
+        }
+    }
 
+    void apply_script(AREngineActivity activity) {
         if(script != null && script.length > 0){
             HashMap<String, Object> context = new HashMap<>();
             context.put("activity", activity);
             context.put("config", this);
+            context.put("batch", SceneBatch.getInstance());
             Scripting.execute(script, context);
         }
     }
@@ -52,34 +161,115 @@ public class ARSceneConfig {
             HashMap<String, Object> context = new HashMap<>();
             context.put("activity", activity);
             context.put("config", this);
+            context.put("batch", SceneBatch.getInstance());
             context.put("world", world);
             Scripting.execute(script_world, context);
         }
     }
 
+    /**
+     * Allowed bytes allocated per rendered frame in debug builds, -1 for none.
+     */
+    public long getFrameAllocationBudget() {
+        return FrameAllocationBudget;
+    }
+
+    /**
+     * Skip rendering camera frames in which no marker moved, see ArJcptRenderer.needsRender.
+     */
+    public boolean isSkipUnchangedFrames() {
+        return SkipUnchangedFrames;
+    }
+
+    public float getChangeToleranceTranslation() {
+        return ChangeToleranceTranslation;
+    }
+
+    public float getChangeToleranceRotation() {
+        return ChangeToleranceRotation;
+    }
+
+    /**
+     * Hide objects outside of the camera frustum before rendering.
+     */
+    public boolean isFrustumCulling() {
+        return FrustumCulling;
+    }
+
+    /**
+     * Bytes of texture pixel data kept in memory across onPause, see TextureCache.
+     */
+    public long getTextureCacheBudget() {
+        return TextureCacheBudget;
+    }
+
+    /**
+     * Megabytes on disk for cached textures over the budget, 0 for none.
+     */
+    public int getTextureCacheDiskSize() {
+        return TextureCacheDiskSize;
+    }
+
+    public boolean isTextureCompression() {
+        return TextureCompression;
+    }
+
+    /**
+     * Register markers and build their objects over several frames, see SceneBuilder.
+     */
+    public boolean isIncrementalBuild() {
+        return IncrementalBuild;
+    }
+
+    /**
+     * Milliseconds per camera frame for the incremental build.
+     */
+    public float getBuildBudget() {
+        return BuildBudget;
+    }
+
+    /**
+     * Draw marker gizmos with the DebugLineRenderer in one draw call instead of jPCT objects.
+     */
+    public boolean isBatchedGizmos() {
+        return BatchedGizmos;
+    }
+
+    /**
+     * Watch arapp.json and apply changes to the running scene, see ConfigReloader.
+     */
+    public boolean isHotReload() {
+        return HotReload;
+    }
+
+    /**
+     * Markers registered with ARToolKit at the same time, 0 for all, see MarkerPager.
+     */
+    public int getMaxActiveMarkers() {
+        return MaxActiveMarkers;
+    }
+
+    /**
+     * Milliseconds per rendered frame for the onFrame, onVisible and onHidden scripts, see ScriptHooks.
+     */
+    public float getScriptBudget() {
+        return ScriptBudget;
+    }
+
+    /**
+     * Instructions per script call before it is aborted.
+     */
+    public int getScriptInstructionLimit() {
+        return ScriptInstructionLimit;
+    }
+
     public int getPatternDetectionMode() {
-        try {
-            int r = Parsing.parse(PatternDetectionMode, Integer.MIN_VALUE);
-            if(r == Integer.MIN_VALUE)
-                r = NativeInterface.class.getField(PatternDetectionMode).getInt(null);
-            GLog.info("Set PatternDetectionMode to " + PatternDetectionMode);
-            return r;
-        }catch (Exception ex) {
-            GLog.warn("Can't find '" + PatternDetectionMode + "' PatternDetectionMode");
-            return Integer.MIN_VALUE;
-        }
+        resolve();
+        return patternDetectionMode;
     }
 
     public int getMatrixCodeType() {
-        try {
-            int r = Parsing.parse(MatrixCodeType, Integer.MIN_VALUE);
-            if(r == Integer.MIN_VALUE)
-                r =  NativeInterface.class.getField(MatrixCodeType).getInt(null);
-            GLog.info("Set MatrixCodeType to " + MatrixCodeType);
-            return r;
-        }catch (Exception ex) {
-            GLog.warn("Can't find '" + MatrixCodeType + "' MatrixCodeType.");
-            return Integer.MIN_VALUE;
-        }
+        resolve();
+        return matrixCodeType;
     }
 }
@@ -0,0 +1,188 @@
+package gl.kev.ar.arengine.config;
+
+import org.artoolkit.ar.jpct.MarkerRange;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Created by kevingliewe on 18.10.26.
+ *
+ * Structural difference between two scene configs, used by the ConfigReloader.
+ *
+ * Markers are matched by name, or by their marker string if they have no name. A matched marker
+ * is rebuilt if its marker string, script, gizmo or models changed, because its script may hold on
+ * to the old objects. If only tags, options or lerping changed, the running marker is updated.
+ *
+ * The neighbours of the markers and MaxActiveMarkers count as settings, they only change the
+ * MarkerPager. The pager is created again whenever settings changed or marker objects were replaced.
+ */
+public class ConfigDiff {
+
+    final List<ARMarker> added = new ArrayList<>();
+    final List<ARMarker> removed = new ArrayList<>();
+    // Pairs of old and new marker at the same index
+    final List<ARMarker> rebuiltFrom = new ArrayList<>();
+    final List<ARMarker> rebuiltTo = new ArrayList<>();
+    final List<ARMarker> updatedFrom = new ArrayList<>();
+    final List<ARMarker> updatedTo = new ArrayList<>();
+    final List<ARMarker> unchangedFrom = new ArrayList<>();
+    final List<ARMarker> unchangedTo = new ArrayList<>();
+
+    boolean trackerChanged;
+    boolean sceneScriptChanged;
+    boolean worldScriptChanged;
+    boolean settingsChanged;
+    boolean pagerChanged;
+
+    public static ConfigDiff compute(ARSceneConfig from, ARSceneConfig to) {
+        ConfigDiff diff = new ConfigDiff();
+        from.resolve();
+        to.resolve();
+
+        boolean neighboursChanged = false;
+        Map<String, ArrayDeque<ARMarker>> old = new HashMap<>();
+        if(from.marker != null)
+            for(ARMarker m : from.marker) {
+                ArrayDeque<ARMarker> markers = old.get(key(m));
+                if(markers == null)
+                    old.put(key(m), markers = new ArrayDeque<>());
+                markers.add(m);
+            }
+
+        if(to.marker != null)
+            for(ARMarker m : to.marker) {
+                ArrayDeque<ARMarker> markers = old.get(key(m));
+                ARMarker o = markers != null ? markers.poll() : null;
+                if(!Arrays.equals(o != null ? o.neighbours : null, m.neighbours))
+                    neighboursChanged = true;
+                if(o == null) {
+                    diff.added.add(m);
+                } else if(needsRebuild(o, m)) {
+                    diff.rebuiltFrom.add(o);
+                    diff.rebuiltTo.add(m);
+                } else if(needsUpdate(o, m)) {
+                    diff.updatedFrom.add(o);
+                    diff.updatedTo.add(m);
+                } else {
+                    diff.unchangedFrom.add(o);
+                    diff.unchangedTo.add(m);
+                }
+            }
+
+        for(ArrayDeque<ARMarker> markers : old.values())
+            diff.removed.addAll(markers);
+        for(ARMarker m : diff.removed)
+            if(m.neighbours != null)
+                neighboursChanged = true;
+
+        diff.trackerChanged = from.patternDetectionMode != to.patternDetectionMode
+                || from.matrixCodeType != to.matrixCodeType;
+        diff.sceneScriptChanged = !Arrays.equals(from.script, to.script);
+        diff.worldScriptChanged = !Arrays.equals(from.script_world, to.script_world);
+        diff.settingsChanged = from.SkipUnchangedFrames != to.SkipUnchangedFrames
+                || from.ChangeToleranceTranslation != to.ChangeToleranceTranslation
+                || from.ChangeToleranceRotation != to.ChangeToleranceRotation
+                || from.FrustumCulling != to.FrustumCulling
+                || from.TextureCacheBudget != to.TextureCacheBudget
+                || from.TextureCacheDiskSize != to.TextureCacheDiskSize
+                || from.TextureCompression != to.TextureCompression
+                || from.IncrementalBuild != to.IncrementalBuild
+                || from.BuildBudget != to.BuildBudget
+                || from.BatchedGizmos != to.BatchedGizmos
+                || from.ScriptBudget != to.ScriptBudget
+                || from.ScriptInstructionLimit != to.ScriptInstructionLimit
+                || from.MaxActiveMarkers != to.MaxActiveMarkers
+                || neighboursChanged;
+        // The pager holds on to the marker objects
+        diff.pagerChanged = diff.settingsChanged || !diff.added.isEmpty() || !diff.removed.isEmpty()
+                || !diff.rebuiltTo.isEmpty();
+        return diff;
+    }
+
+    private static String key(ARMarker m) {
+        return m.name != null ? "name:" + m.name : "marker:" + m.marker;
+    }
+
+    private static boolean needsRebuild(ARMarker o, ARMarker m) {
+        return !equal(o.marker, m.marker)
+                || !Arrays.equals(o.script, m.script)
+                || !Arrays.equals(o.onFrame, m.onFrame)
+                || !Arrays.equals(o.onVisible, m.onVisible)
+                || !Arrays.equals(o.onHidden, m.onHidden)
+                || o.gizmo != m.gizmo
+                || !Arrays.equals(ConfigSnapshot.encode(o.models), ConfigSnapshot.encode(m.models));
+    }
+
+    private static boolean needsUpdate(ARMarker o, ARMarker m) {
+        return o.lerping != m.lerping
+                || !Arrays.equals(ConfigSnapshot.encode(o.tags), ConfigSnapshot.encode(m.tags))
+                || optionsChanged(o, m);
+    }
+
+    static boolean optionsChanged(ARMarker o, ARMarker m) {
+        if(o.options == null || m.options == null)
+            return o.options != m.options;
+        return !Arrays.equals(o.options.intOptions, m.options.intOptions)
+                || !Arrays.equals(o.options.intValues, m.options.intValues)
+                || !Arrays.equals(o.options.floatOptions, m.options.floatOptions)
+                || !Arrays.equals(o.options.floatValues, m.options.floatValues)
+                || !Arrays.equals(o.options.boolOptions, m.options.boolOptions)
+                || !Arrays.equals(o.options.boolValues, m.options.boolValues);
+    }
+
+    private static boolean equal(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    /**
+     * @return true if applying the new config would change nothing.
+     */
+    public boolean isEmpty() {
+        return added.isEmpty() && removed.isEmpty() && rebuiltTo.isEmpty() && updatedTo.isEmpty()
+                && !trackerChanged && !sceneScriptChanged && !worldScriptChanged && !settingsChanged;
+    }
+
+    /**
+     * @return true if a marker range was added, removed or changed. Ranges are registered up front
+     * and are not updated in the running scene.
+     */
+    public boolean hasRangeChanges() {
+        return hasRange(added) || hasRange(removed) || hasRange(rebuiltTo) || hasRange(updatedTo);
+    }
+
+    private static boolean hasRange(List<ARMarker> markers) {
+        for(ARMarker m : markers)
+            if(MarkerRange.isRange(m.marker))
+                return true;
+        return false;
+    }
+
+    public int getAddedCount() {
+        return added.size();
+    }
+
+    public int getRemovedCount() {
+        return removed.size();
+    }
+
+    public int getRebuiltCount() {
+        return rebuiltTo.size();
+    }
+
+    public int getUpdatedCount() {
+        return updatedTo.size();
+    }
+
+    @Override
+    public String toString() {
+        return "added " + added.size() + ", removed " + removed.size() + ", rebuilt " + rebuiltTo.size()
+                + ", updated " + updatedTo.size() + (trackerChanged ? ", tracker" : "")
+                + (sceneScriptChanged ? ", script" : "") + (worldScriptChanged ? ", script_world" : "")
+                + (settingsChanged ? ", settings" : "");
+    }
+}
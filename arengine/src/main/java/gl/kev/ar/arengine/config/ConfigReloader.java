@@ -0,0 +1,249 @@
+package gl.kev.ar.arengine.config;
+
+import android.os.FileObserver;
+
+import com.threed.jpct.World;
+
+import net.gliewe.generic.function.IFuncR0;
+import net.gliewe.generic.tasks.Task;
+
+import org.artoolkit.ar.jpct.ArJcptRenderer;
+import org.artoolkit.ar.jpct.SceneBuilder;
+import org.artoolkit.ar.jpct.SceneUpdate;
+import org.artoolkit.ar.jpct.TrackableObject3d;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import gl.kev.ar.arengine.AREngineActivity;
+import gl.kev.ar.arengine.helper.math.Position;
+import gl.kev.logging.GLog;
+
+/**
+ * Created by kevingliewe on 18.10.26.
+ *
+ * Watches the config file and applies changes to the running scene instead of restarting the activity.
+ *
+ * A change is loaded in the background and compared with the running config, see ConfigDiff.
+ * Added and rebuilt markers are created and built right there, then everything is handed to the
+ * renderer as one SceneUpdate, which swaps it in between two frames. Unchanged markers keep their
+ * objects and registration. A config that can't be parsed is logged and the scene stays as it is.
+ *
+ * Unlike at start, where they run on the thread that delivers camera frames, the scripts and model
+ * loads of new markers run on the reload thread, so a reload does not stall the tracking. Only the
+ * ARToolKit registration is done on the tracker thread, see SceneUpdate.
+ */
+public class ConfigReloader {
+
+    // Editors write files in several steps
+    private static final long DEBOUNCE = 200;
+
+    private final AREngineActivity mActivity;
+    private final File mFile;
+    private final FileObserver mObserver;
+    private ARSceneConfig mLive;
+
+    private Task<Boolean> mTask;
+    private boolean mChanged = false;
+    private volatile int mReloads = 0;
+
+    public ConfigReloader(AREngineActivity activity, ARSceneConfig live, File file) {
+        mActivity = activity;
+        mLive = live;
+        mFile = file;
+        final String name = file.getName();
+        mObserver = new FileObserver(file.getParent(), FileObserver.CLOSE_WRITE | FileObserver.MOVED_TO) {
+            @Override
+            public void onEvent(int event, String path) {
+                if(name.equals(path))
+                    reload();
+            }
+        };
+    }
+
+    public void start() {
+        mObserver.startWatching();
+    }
+
+    public void stop() {
+        mObserver.stopWatching();
+    }
+
+    /**
+     * Loads the file again and applies the changes. Can be called from any thread.
+     */
+    public synchronized void reload() {
+        mChanged = true;
+        if(mTask != null)
+            return;
+
+        mTask = new Task<>(new IFuncR0<Boolean>() {
+            @Override
+            public Boolean call() {
+                while(true) {
+                    try {
+                        Thread.sleep(DEBOUNCE);
+                    } catch (InterruptedException e) { }
+
+                    synchronized (ConfigReloader.this) {
+                        if(!mChanged) {
+                            mTask = null;
+                            return true;
+                        }
+                        mChanged = false;
+                    }
+
+                    try {
+                        reloadNow();
+                    } catch (Exception ex) {
+                        GLog.exception("Can't reload config " + mFile, ex);
+                    }
+                }
+            }
+        }).start();
+    }
+
+    public int getReloads() {
+        return mReloads;
+    }
+
+    private void reloadNow() throws Exception {
+        ARSceneConfig config = mActivity.loadConfigFile(mFile);
+        if(config == null)
+            return;
+
+        ConfigDiff diff = ConfigDiff.compute(mLive, config);
+        GLog.info("Config changed: " + diff);
+        if(diff.hasRangeChanges())
+            GLog.warn("Marker ranges changed, they are only applied on restart");
+        SceneUpdate update = prepare(diff, config);
+
+        ArJcptRenderer renderer = mActivity.getArJcptRenderer();
+        if(!update.isEmpty()) {
+            while(!renderer.updateScene(update))
+                Thread.sleep(20);
+            while(renderer.isUpdatePending())
+                Thread.sleep(20);
+            if(!update.isApplied())
+                GLog.warn("Config update was dropped, the scene was configured again");
+        }
+
+        mLive = config;
+        mActivity.onConfigReloaded(config);
+        mReloads++;
+    }
+
+    private SceneUpdate prepare(ConfigDiff diff, final ARSceneConfig config) {
+        SceneUpdate update = new SceneUpdate();
+
+        for(ARMarker m : diff.removed)
+            if(m.trackableObject != null)
+                update.remove(m.trackableObject);
+
+        for(int i = 0; i < diff.rebuiltTo.size(); i++) {
+            ARMarker from = diff.rebuiltFrom.get(i);
+            if(from.trackableObject != null)
+                update.remove(from.trackableObject);
+            create(update, diff.rebuiltTo.get(i));
+        }
+
+        for(ARMarker m : diff.added)
+            create(update, m);
+
+        for(int i = 0; i < diff.unchangedTo.size(); i++)
+            diff.unchangedTo.get(i).trackableObject = diff.unchangedFrom.get(i).trackableObject;
+
+        for(int i = 0; i < diff.updatedTo.size(); i++) {
+            ARMarker from = diff.updatedFrom.get(i);
+            ARMarker to = diff.updatedTo.get(i);
+            to.trackableObject = from.trackableObject;
+            if(to.trackableObject != null)
+                update(update, from, to);
+        }
+
+        if(diff.trackerChanged)
+            update.runOnTracker(new Runnable() {
+                @Override
+                public void run() {
+                    config.apply_tracker();
+                }
+            });
+
+        if(diff.sceneScriptChanged)
+            update.runOnTracker(new Runnable() {
+                @Override
+                public void run() {
+                    config.apply_script(mActivity);
+                }
+            });
+
+        if(diff.worldScriptChanged)
+            update.runOnRender(new Runnable() {
+                @Override
+                public void run() {
+                    World world = mActivity.getArJcptRenderer().getWorld();
+                    config.apply_configWorld(mActivity, world);
+                }
+            });
+
+        if(diff.settingsChanged)
+            update.runOnRender(new Runnable() {
+                @Override
+                public void run() {
+                    mActivity.applyRendererSettings(config);
+                }
+            });
+
+        if(diff.pagerChanged)
+            update.runOnTracker(new Runnable() {
+                @Override
+                public void run() {
+                    // The pager runs on this thread, see ArJcptRenderer.needsRender
+                    mActivity.getArJcptRenderer().setMarkerPager(config.createMarkerPager());
+                }
+            });
+
+        return update;
+    }
+
+    /**
+     * Creates the objects of a marker, like at start, but not yet in the running scene.
+     * Runs the marker scripts and loads the models on the reload thread.
+     */
+    private void create(SceneUpdate update, ARMarker m) {
+        List<TrackableObject3d> list = new ArrayList<>();
+        m.apply(mActivity, list);
+        for(int i = 0; i < list.size(); i++) {
+            SceneBuilder.build(list.get(i));
+            update.add(list.get(i));
+        }
+    }
+
+    private void update(SceneUpdate update, ARMarker from, final ARMarker to) {
+        final TrackableObject3d trackableObject = to.trackableObject;
+
+        if(ConfigDiff.optionsChanged(from, to))
+            update.runOnTracker(new Runnable() {
+                @Override
+                public void run() {
+                    // Removed options keep their value in ARToolKit until the marker is registered again
+                    trackableObject.setOptions(to.options);
+                    if(to.options != null)
+                        to.options.apply(trackableObject.getmMarkerId());
+                }
+            });
+
+        update.runOnRender(new Runnable() {
+            @Override
+            public void run() {
+                trackableObject.lerping = to.lerping;
+                trackableObject.getTags().clear();
+                if(to.tags != null)
+                    for(ARTag tag : to.tags)
+                        trackableObject.getTags().put(tag.name, new Position(tag.x, tag.y, tag.z));
+                trackableObject.markChanged();
+            }
+        });
+    }
+}
@@ -0,0 +1,487 @@
+package gl.kev.ar.arengine.config;
+
+import com.google.gson.Gson;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import gl.kev.logging.GLog;
+
+/**
+ * Created by kevingliewe on 18.10.26.
+ *
+ * Compiles an ARSceneConfig into a binary snapshot with the option names already resolved to
+ * NativeInterface constants, and loads it through a memory mapped file on the next start.
+ *
+ * The snapshot is keyed by the modification time, length and CRC32 of the JSON source. If time and
+ * length match, the source is not read at all. Otherwise the source is hashed and, if it changed,
+ * parsed with Gson and compiled again. Any invalid or outdated snapshot falls back to the JSON.
+ *
+ * Scripts are stored as source. Their compiled form depends on the Rhino version and the
+ * optimization level of the context that runs them, not on the config, so it is cached separately
+ * by ScriptCache, which also shares it between configs with the same script.
+ */
+public class ConfigSnapshot {
+
+    private static final int MAGIC = 0x41524353; // "ARCS"
+    // Increment when the layout or the config classes change
+    private static final int VERSION = 6;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    public interface Source {
+        InputStream open() throws IOException;
+    }
+
+    /**
+     * @param snapshot File of the snapshot, e.g. in the cache dir. Written if missing or outdated.
+     * @param time     Modification time of the source.
+     * @param length   Length of the source in bytes, -1 if unknown.
+     * @return The config, null if the source can't be parsed.
+     */
+    public static ARSceneConfig load(File snapshot, long time, long length, Source source) throws IOException {
+        ByteBuffer buffer = map(snapshot);
+        if(buffer != null && buffer.getLong(8) == time && buffer.getLong(16) == length) {
+            ARSceneConfig config = read(buffer);
+            if(config != null)
+                return config;
+        }
+
+        byte[] json = readFully(source.open());
+        CRC32 crc = new CRC32();
+        crc.update(json, 0, json.length);
+
+        if(buffer != null && buffer.getLong(24) == crc.getValue()) {
+            // Touched but unchanged
+            ARSceneConfig config = read(buffer);
+            if(config != null) {
+                write(snapshot, config, time, length, crc.getValue());
+                return config;
+            }
+        }
+
+        GLog.debug("Compiling config snapshot " + snapshot);
+        ARSceneConfig config = new Gson().fromJson(new InputStreamReader(new ByteArrayInputStream(json), UTF8), ARSceneConfig.class);
+        if(config == null)
+            return null;
+        config.resolve();
+        write(snapshot, config, time, length, crc.getValue());
+        return config;
+    }
+
+    private static ByteBuffer map(File snapshot) {
+        if(!snapshot.exists())
+            return null;
+        RandomAccessFile file = null;
+        try {
+            file = new RandomAccessFile(snapshot, "r");
+            FileChannel channel = file.getChannel();
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if(buffer.capacity() < 32 || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION)
+                return null;
+            return buffer;
+        } catch (IOException e) {
+            GLog.exception("Can't map config snapshot " + snapshot, e);
+            return null;
+        } finally {
+            // The mapping stays valid after the file is closed
+            close(file);
+        }
+    }
+
+    private static ARSceneConfig read(ByteBuffer buffer) {
+        try {
+            buffer.position(32);
+            return readConfig(buffer);
+        } catch (RuntimeException e) {
+            // Truncated or corrupt, compile again
+            GLog.exception("Invalid config snapshot", e);
+            return null;
+        }
+    }
+
+    public static void write(File snapshot, ARSceneConfig config, long time, long length, long crc) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(4096);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeLong(time);
+        out.writeLong(length);
+        out.writeLong(crc);
+        writeConfig(out, config);
+        out.flush();
+
+        // Write and rename, so a crash never leaves half a snapshot behind
+        File tmp = new File(snapshot.getPath() + ".tmp");
+        OutputStream os = new BufferedOutputStream(new FileOutputStream(tmp));
+        try {
+            bytes.writeTo(os);
+        } finally {
+            os.close();
+        }
+        if(!tmp.renameTo(snapshot)) {
+            snapshot.delete();
+            if(!tmp.renameTo(snapshot))
+                throw new IOException("Can't write config snapshot " + snapshot);
+        }
+    }
+
+    static void writeConfig(DataOutputStream out, ARSceneConfig c) throws IOException {
+        c.resolve();
+        writeStrings(out, c.script);
+        writeStrings(out, c.script_world);
+        out.writeInt(c.patternDetectionMode);
+        out.writeInt(c.matrixCodeType);
+        // Only for the log of apply_tracker
+        writeString(out, c.PatternDetectionMode);
+        writeString(out, c.MatrixCodeType);
+        out.writeLong(c.FrameAllocationBudget);
+        out.writeBoolean(c.SkipUnchangedFrames);
+        out.writeFloat(c.ChangeToleranceTranslation);
+        out.writeFloat(c.ChangeToleranceRotation);
+        out.writeBoolean(c.FrustumCulling);
+        out.writeLong(c.TextureCacheBudget);
+        out.writeInt(c.TextureCacheDiskSize);
+        out.writeBoolean(c.TextureCompression);
+        out.writeBoolean(c.IncrementalBuild);
+        out.writeFloat(c.BuildBudget);
+        out.writeBoolean(c.BatchedGizmos);
+        out.writeBoolean(c.HotReload);
+        out.writeInt(c.MaxActiveMarkers);
+        out.writeFloat(c.ScriptBudget);
+        out.writeInt(c.ScriptInstructionLimit);
+
+        // Option blocks shared by several markers are written once
+        Map<ARMarkerOptions, Integer> options = new IdentityHashMap<>();
+        if(c.marker != null)
+            for(ARMarker m : c.marker)
+                if(m.options != null && !options.containsKey(m.options))
+                    options.put(m.options, options.size());
+        out.writeInt(options.size());
+        ARMarkerOptions[] blocks = new ARMarkerOptions[options.size()];
+        for(Map.Entry<ARMarkerOptions, Integer> entry : options.entrySet())
+            blocks[entry.getValue()] = entry.getKey();
+        for(ARMarkerOptions o : blocks)
+            writeOptions(out, o);
+
+        out.writeInt(c.marker != null ? c.marker.length : -1);
+        if(c.marker != null)
+            for(ARMarker m : c.marker)
+                writeMarker(out, m, m.options != null ? options.get(m.options) : -1);
+    }
+
+    static ARSceneConfig readConfig(ByteBuffer in) {
+        ARSceneConfig c = new ARSceneConfig();
+        c.script = readStrings(in);
+        c.script_world = readStrings(in);
+        c.patternDetectionMode = in.getInt();
+        c.matrixCodeType = in.getInt();
+        c.PatternDetectionMode = readString(in);
+        c.MatrixCodeType = readString(in);
+        c.resolved = true;
+        c.FrameAllocationBudget = in.getLong();
+        c.SkipUnchangedFrames = readBoolean(in);
+        c.ChangeToleranceTranslation = in.getFloat();
+        c.ChangeToleranceRotation = in.getFloat();
+        c.FrustumCulling = readBoolean(in);
+        c.TextureCacheBudget = in.getLong();
+        c.TextureCacheDiskSize = in.getInt();
+        c.TextureCompression = readBoolean(in);
+        c.IncrementalBuild = readBoolean(in);
+        c.BuildBudget = in.getFloat();
+        c.BatchedGizmos = readBoolean(in);
+        c.HotReload = readBoolean(in);
+        c.MaxActiveMarkers = in.getInt();
+        c.ScriptBudget = in.getFloat();
+        c.ScriptInstructionLimit = in.getInt();
+
+        ARMarkerOptions[] options = new ARMarkerOptions[in.getInt()];
+        for(int i = 0; i < options.length; i++)
+            options[i] = readOptions(in);
+
+        int markers = in.getInt();
+        if(markers >= 0) {
+            c.marker = new ARMarker[markers];
+            for(int i = 0; i < markers; i++)
+                c.marker[i] = readMarker(in, options);
+        }
+        return c;
+    }
+
+    private static void writeMarker(DataOutputStream out, ARMarker m, int options) throws IOException {
+        writeString(out, m.name);
+        writeString(out, m.marker);
+        writeStrings(out, m.script);
+        writeStrings(out, m.onFrame);
+        writeStrings(out, m.onVisible);
+        writeStrings(out, m.onHidden);
+        out.writeBoolean(m.gizmo);
+        out.writeBoolean(m.lerping);
+
+        writeModels(out, m.models);
+        writeTags(out, m.tags);
+        writeStrings(out, m.neighbours);
+        out.writeInt(options);
+    }
+
+    private static void writeOptions(DataOutputStream out, ARMarkerOptions o) throws IOException {
+        o.resolve();
+        out.writeInt(o.intOptions.length);
+        for(int i = 0; i < o.intOptions.length; i++) {
+            out.writeInt(o.intOptions[i]);
+            out.writeInt(o.intValues[i]);
+        }
+        out.writeInt(o.floatOptions.length);
+        for(int i = 0; i < o.floatOptions.length; i++) {
+            out.writeInt(o.floatOptions[i]);
+            out.writeFloat(o.floatValues[i]);
+        }
+        out.writeInt(o.boolOptions.length);
+        for(int i = 0; i < o.boolOptions.length; i++) {
+            out.writeInt(o.boolOptions[i]);
+            out.writeBoolean(o.boolValues[i]);
+        }
+    }
+
+    private static void writeModels(DataOutputStream out, ARModel[] models) throws IOException {
+        out.writeInt(models != null ? models.length : -1);
+        if(models != null)
+            for(ARModel model : models)
+                writeModel(out, model);
+    }
+
+    private static void writeTags(DataOutputStream out, ARTag[] tags) throws IOException {
+        out.writeInt(tags != null ? tags.length : -1);
+        if(tags != null)
+            for(ARTag tag : tags) {
+                writeString(out, tag.name);
+                out.writeFloat(tag.x);
+                out.writeFloat(tag.y);
+                out.writeFloat(tag.z);
+            }
+    }
+
+    /**
+     * @return The models in snapshot encoding, equal arrays mean equal models.
+     */
+    static byte[] encode(ARModel[] models) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        try {
+            writeModels(new DataOutputStream(bytes), models);
+        } catch (IOException e) {
+            // Not thrown by a ByteArrayOutputStream
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    static byte[] encode(ARTag[] tags) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        try {
+            writeTags(new DataOutputStream(bytes), tags);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static ARMarker readMarker(ByteBuffer in, ARMarkerOptions[] shared) {
+        ARMarker m = new ARMarker();
+        m.name = readString(in);
+        m.marker = readString(in);
+        m.script = readStrings(in);
+        m.onFrame = readStrings(in);
+        m.onVisible = readStrings(in);
+        m.onHidden = readStrings(in);
+        m.gizmo = readBoolean(in);
+        m.lerping = readBoolean(in);
+
+        int models = in.getInt();
+        if(models >= 0) {
+            m.models = new ARModel[models];
+            for(int i = 0; i < models; i++)
+                m.models[i] = readModel(in);
+        }
+
+        int tags = in.getInt();
+        if(tags >= 0) {
+            m.tags = new ARTag[tags];
+            for(int i = 0; i < tags; i++) {
+                ARTag tag = new ARTag();
+                tag.name = readString(in);
+                tag.x = in.getFloat();
+                tag.y = in.getFloat();
+                tag.z = in.getFloat();
+                m.tags[i] = tag;
+            }
+        }
+
+        m.neighbours = readStrings(in);
+
+        int options = in.getInt();
+        if(options >= 0)
+            m.options = shared[options];
+        return m;
+    }
+
+    private static ARMarkerOptions readOptions(ByteBuffer in) {
+        ARMarkerOptions o = new ARMarkerOptions();
+        int n = in.getInt();
+        int[] intOptions = new int[n];
+        o.intValues = new int[n];
+        for(int i = 0; i < n; i++) {
+            intOptions[i] = in.getInt();
+            o.intValues[i] = in.getInt();
+        }
+        n = in.getInt();
+        o.floatOptions = new int[n];
+        o.floatValues = new float[n];
+        for(int i = 0; i < n; i++) {
+            o.floatOptions[i] = in.getInt();
+            o.floatValues[i] = in.getFloat();
+        }
+        n = in.getInt();
+        o.boolOptions = new int[n];
+        o.boolValues = new boolean[n];
+        for(int i = 0; i < n; i++) {
+            o.boolOptions[i] = in.getInt();
+            o.boolValues[i] = readBoolean(in);
+        }
+        o.intOptions = intOptions;
+        return o;
+    }
+
+    private static void writeModel(DataOutputStream out, ARModel m) throws IOException {
+        writeString(out, m.model);
+        writeStrings(out, m.script);
+        writeStrings(out, m.onFrame);
+        writeStrings(out, m.onVisible);
+        writeStrings(out, m.onHidden);
+        out.writeDouble(m.scale);
+        out.writeDouble(m.x);
+        out.writeDouble(m.y);
+        out.writeDouble(m.z);
+        out.writeDouble(m.rx);
+        out.writeDouble(m.ry);
+        out.writeDouble(m.rz);
+        out.writeInt(m.transparency);
+        out.writeDouble(m.lodHysteresis);
+
+        out.writeInt(m.lod != null ? m.lod.length : -1);
+        if(m.lod != null)
+            for(ARModelLod lod : m.lod) {
+                writeString(out, lod.model);
+                out.writeDouble(lod.distance);
+                out.writeBoolean(lod.lazy);
+            }
+    }
+
+    private static ARModel readModel(ByteBuffer in) {
+        ARModel m = new ARModel();
+        m.model = readString(in);
+        m.script = readStrings(in);
+        m.onFrame = readStrings(in);
+        m.onVisible = readStrings(in);
+        m.onHidden = readStrings(in);
+        m.scale = in.getDouble();
+        m.x = in.getDouble();
+        m.y = in.getDouble();
+        m.z = in.getDouble();
+        m.rx = in.getDouble();
+        m.ry = in.getDouble();
+        m.rz = in.getDouble();
+        m.transparency = in.getInt();
+        m.lodHysteresis = in.getDouble();
+
+        int levels = in.getInt();
+        if(levels >= 0) {
+            m.lod = new ARModelLod[levels];
+            for(int i = 0; i < levels; i++) {
+                ARModelLod lod = new ARModelLod();
+                lod.model = readString(in);
+                lod.distance = in.getDouble();
+                lod.lazy = readBoolean(in);
+                m.lod[i] = lod;
+            }
+        }
+        return m;
+    }
+
+    // Strings are written as byte length (-1 for null) and UTF-8, scripts may exceed writeUTF's 64k
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        if(s == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = s.getBytes(UTF8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer in) {
+        int length = in.getInt();
+        if(length < 0)
+            return null;
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, UTF8);
+    }
+
+    private static void writeStrings(DataOutputStream out, String[] strings) throws IOException {
+        out.writeInt(strings != null ? strings.length : -1);
+        if(strings != null)
+            for(String s : strings)
+                writeString(out, s);
+    }
+
+    private static String[] readStrings(ByteBuffer in) {
+        int length = in.getInt();
+        if(length < 0)
+            return null;
+        String[] strings = new String[length];
+        for(int i = 0; i < length; i++)
+            strings[i] = readString(in);
+        return strings;
+    }
+
+    private static boolean readBoolean(ByteBuffer in) {
+        return in.get() != 0;
+    }
+
+    private static byte[] readFully(InputStream in) throws IOException {
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(8192);
+            byte[] buffer = new byte[8192];
+            int read;
+            while((read = in.read(buffer)) > 0)
+                out.write(buffer, 0, read);
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+
+    private static void close(RandomAccessFile file) {
+        if(file == null)
+            return;
+        try {
+            file.close();
+        } catch (IOException e) { }
+    }
+}
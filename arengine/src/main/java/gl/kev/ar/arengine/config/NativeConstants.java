@@ -0,0 +1,93 @@
+package gl.kev.ar.arengine.config;
+
+import org.artoolkit.ar.base.NativeInterface;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import gl.kev.logging.GLog;
+
+/**
+ * Created by kevingliewe on 18.10.26.
+ *
+ * Names of the NativeInterface constants that can be used in the config, grouped by what they are
+ * used for. Replaces the lookup by reflection. Generated from NativeInterface, NativeConstantsTest
+ * fails if a constant is missing.
+ */
+public class NativeConstants {
+
+    public static final Map<String, Integer> MARKER_OPTIONS = table(
+            "ARW_MARKER_OPTION_FILTERED", NativeInterface.ARW_MARKER_OPTION_FILTERED,
+            "ARW_MARKER_OPTION_FILTER_SAMPLE_RATE", NativeInterface.ARW_MARKER_OPTION_FILTER_SAMPLE_RATE,
+            "ARW_MARKER_OPTION_FILTER_CUTOFF_FREQ", NativeInterface.ARW_MARKER_OPTION_FILTER_CUTOFF_FREQ,
+            "ARW_MARKER_OPTION_SQUARE_USE_CONT_POSE_ESTIMATION", NativeInterface.ARW_MARKER_OPTION_SQUARE_USE_CONT_POSE_ESTIMATION,
+            "ARW_MARKER_OPTION_SQUARE_CONFIDENCE", NativeInterface.ARW_MARKER_OPTION_SQUARE_CONFIDENCE,
+            "ARW_MARKER_OPTION_SQUARE_CONFIDENCE_CUTOFF", NativeInterface.ARW_MARKER_OPTION_SQUARE_CONFIDENCE_CUTOFF);
+
+    public static final Map<String, Integer> LABELING_MODES = table(
+            "AR_LABELING_WHITE_REGION", NativeInterface.AR_LABELING_WHITE_REGION,
+            "AR_LABELING_BLACK_REGION", NativeInterface.AR_LABELING_BLACK_REGION);
+
+    public static final Map<String, Integer> PATTERN_DETECTION_MODES = table(
+            "AR_TEMPLATE_MATCHING_COLOR", NativeInterface.AR_TEMPLATE_MATCHING_COLOR,
+            "AR_TEMPLATE_MATCHING_MONO", NativeInterface.AR_TEMPLATE_MATCHING_MONO,
+            "AR_MATRIX_CODE_DETECTION", NativeInterface.AR_MATRIX_CODE_DETECTION,
+            "AR_TEMPLATE_MATCHING_COLOR_AND_MATRIX", NativeInterface.AR_TEMPLATE_MATCHING_COLOR_AND_MATRIX,
+            "AR_TEMPLATE_MATCHING_MONO_AND_MATRIX", NativeInterface.AR_TEMPLATE_MATCHING_MONO_AND_MATRIX);
+
+    public static final Map<String, Integer> MATRIX_CODE_TYPES = table(
+            "AR_MATRIX_CODE_3x3", NativeInterface.AR_MATRIX_CODE_3x3,
+            "AR_MATRIX_CODE_3x3_PARITY65", NativeInterface.AR_MATRIX_CODE_3x3_PARITY65,
+            "AR_MATRIX_CODE_3x3_HAMMING63", NativeInterface.AR_MATRIX_CODE_3x3_HAMMING63,
+            "AR_MATRIX_CODE_4x4", NativeInterface.AR_MATRIX_CODE_4x4,
+            "AR_MATRIX_CODE_4x4_BCH_13_9_3", NativeInterface.AR_MATRIX_CODE_4x4_BCH_13_9_3,
+            "AR_MATRIX_CODE_4x4_BCH_13_5_5", NativeInterface.AR_MATRIX_CODE_4x4_BCH_13_5_5,
+            "AR_MATRIX_CODE_5x5_BCH_22_12_5", NativeInterface.AR_MATRIX_CODE_5x5_BCH_22_12_5,
+            "AR_MATRIX_CODE_5x5_BCH_22_7_7", NativeInterface.AR_MATRIX_CODE_5x5_BCH_22_7_7,
+            "AR_MATRIX_CODE_5x5", NativeInterface.AR_MATRIX_CODE_5x5,
+            "AR_MATRIX_CODE_6x6", NativeInterface.AR_MATRIX_CODE_6x6,
+            "AR_MATRIX_CODE_GLOBAL_ID", NativeInterface.AR_MATRIX_CODE_GLOBAL_ID);
+
+    public static final Map<String, Integer> IMAGE_PROC_MODES = table(
+            "AR_IMAGE_PROC_FRAME_IMAGE", NativeInterface.AR_IMAGE_PROC_FRAME_IMAGE,
+            "AR_IMAGE_PROC_FIELD_IMAGE", NativeInterface.AR_IMAGE_PROC_FIELD_IMAGE);
+
+    // Values of int options may be any constant
+    public static final Map<String, Integer> ALL = all(MARKER_OPTIONS, LABELING_MODES, PATTERN_DETECTION_MODES,
+            MATRIX_CODE_TYPES, IMAGE_PROC_MODES);
+
+    private static Map<String, Integer> table(Object... entries) {
+        Map<String, Integer> table = new LinkedHashMap<>();
+        for(int i = 0; i < entries.length; i += 2)
+            table.put((String) entries[i], (Integer) entries[i + 1]);
+        return Collections.unmodifiableMap(table);
+    }
+
+    @SafeVarargs
+    private static Map<String, Integer> all(Map<String, Integer>... tables) {
+        Map<String, Integer> all = new LinkedHashMap<>();
+        for(Map<String, Integer> table : tables)
+            all.putAll(table);
+        return Collections.unmodifiableMap(all);
+    }
+
+    /**
+     * Resolves a number or a constant name from the table.
+     * @param what Used in the error, e.g. "marker option".
+     * @return The value, Integer.MIN_VALUE after logging an error if the name is unknown.
+     */
+    public static int resolve(String name, Map<String, Integer> table, String what) {
+        if(name == null)
+            return Integer.MIN_VALUE;
+        Integer value = table.get(name);
+        if(value != null)
+            return value;
+        try {
+            return Integer.parseInt(name.trim());
+        } catch (NumberFormatException ex) {
+            GLog.error("Unknown " + what + " '" + name + "', use a number or one of " + table.keySet(), null);
+            return Integer.MIN_VALUE;
+        }
+    }
+}
@@ -0,0 +1,285 @@
+package gl.kev.ar.arengine.helper;
+
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.Script;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import gl.kev.logging.GLog;
+
+/**
+ * Created by kevingliewe on 18.10.26.
+ *
+ * Compiled config scripts, kept in memory and serialized to a directory so the next start does not
+ * parse them again.
+ *
+ * Scripts are keyed by the SHA-1 of their source, the Rhino version and the optimization level.
+ * Only interpreted scripts (optimization level -1, as used by Scripting) are written to disk, their
+ * bytecode is serializable. A file that can't be read or doesn't match the key is deleted and the
+ * script is compiled from source.
+ *
+ * An edited script gets a new key, so the files of old versions are left behind. They are pruned
+ * when the directory is set: the least recently used files are deleted down to {@link #MAX_DISK_BYTES}
+ * by a background thread, the directory is set during onCreate.
+ */
+public class ScriptCache {
+
+    private static final int MAX_SCRIPTS = 256;
+    static final long MAX_DISK_BYTES = 4 * 1024 * 1024;
+    // Temporary files younger than this may still be written by compile
+    private static final long TMP_AGE_MILLIS = 60000;
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static final ScriptCache instance = new ScriptCache(null);
+
+    public static ScriptCache getInstance() {
+        return instance;
+    }
+
+    private File mDirectory;
+    private Thread mPrune;
+    private final Map<String, Script> mScripts = new LinkedHashMap<String, Script>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Script> eldest) {
+            return size() > MAX_SCRIPTS;
+        }
+    };
+
+    private long mHits = 0;
+    private long mDiskHits = 0;
+    private long mMisses = 0;
+    private long mDiskErrors = 0;
+
+    /**
+     * @param directory Where compiled scripts are stored, null to keep them in memory only.
+     */
+    public ScriptCache(File directory) {
+        setDirectory(directory);
+    }
+
+    public synchronized void setDirectory(File directory) {
+        mDirectory = directory;
+        if (directory != null && !directory.isDirectory() && !directory.mkdirs())
+            GLog.warn("Can't create script cache " + directory);
+        else if (directory != null)
+            startPrune(directory);
+    }
+
+    private void startPrune(final File directory) {
+        mPrune = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                prune(directory, MAX_DISK_BYTES);
+            }
+        }, "ScriptCache prune");
+        mPrune.setPriority(Thread.MIN_PRIORITY);
+        mPrune.start();
+    }
+
+    /**
+     * Waits until the last prune started by {@link #setDirectory(File)} finished.
+     */
+    void awaitPrune() throws InterruptedException {
+        Thread prune;
+        synchronized (this) {
+            prune = mPrune;
+        }
+        if (prune != null)
+            prune.join();
+    }
+
+    /**
+     * Deletes the least recently used files until the rest fits into maxBytes, and leftover
+     * temporary files.
+     */
+    static void prune(File directory, long maxBytes) {
+        long now = System.currentTimeMillis();
+        File[] files = directory.listFiles();
+        if (files == null)
+            return;
+
+        final long[] modified = new long[files.length];
+        Integer[] order = new Integer[files.length];
+        for (int i = 0; i < files.length; i++) {
+            modified[i] = files[i].lastModified();
+            order[i] = i;
+        }
+        // Most recently used first
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                // Long.compare needs API 19
+                return modified[b] < modified[a] ? -1 : (modified[b] == modified[a] ? 0 : 1);
+            }
+        });
+
+        long bytes = 0;
+        int deleted = 0;
+        boolean full = false;
+        for (Integer i : order) {
+            File file = files[i];
+            if (file.getName().endsWith(".tmp")) {
+                if (modified[i] < now - TMP_AGE_MILLIS && file.delete())
+                    deleted++;
+                continue;
+            }
+            // Everything older than the first file that doesn't fit goes as well
+            full = full || bytes + file.length() > maxBytes;
+            if (full) {
+                if (file.delete())
+                    deleted++;
+                continue;
+            }
+            bytes += file.length();
+        }
+        if (deleted > 0)
+            GLog.debug("Pruned " + deleted + " cached scripts, " + bytes + " bytes left");
+    }
+
+    /**
+     * Compiled script of the source, from memory, disk or compiled now.
+     * @param cx Entered context, its optimization level and Rhino version are part of the key.
+     */
+    public Script compile(Context cx, String source, String name) {
+        String key = key(cx, source);
+        synchronized (this) {
+            Script script = mScripts.get(key);
+            if (script != null) {
+                mHits++;
+                return script;
+            }
+        }
+
+        boolean serializable = cx.getOptimizationLevel() < 0;
+        File file = file(key);
+        if (serializable && file != null && file.exists()) {
+            Script script = read(file, key);
+            if (script != null) {
+                // The modification time is the last use for prune
+                file.setLastModified(System.currentTimeMillis());
+                synchronized (this) {
+                    mDiskHits++;
+                    mScripts.put(key, script);
+                }
+                return script;
+            }
+        }
+
+        Script script = cx.compileString(source, name, 1, null);
+        synchronized (this) {
+            mMisses++;
+            mScripts.put(key, script);
+        }
+        if (serializable && file != null)
+            write(file, key, script);
+        return script;
+    }
+
+    private static String key(Context cx, String source) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            digest.update(cx.getImplementationVersion().getBytes(UTF8));
+            digest.update((byte) cx.getOptimizationLevel());
+            byte[] hash = digest.digest(source.getBytes(UTF8));
+            StringBuilder sb = new StringBuilder(hash.length * 2);
+            for (byte b : hash)
+                sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform has SHA-1
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private synchronized File file(String key) {
+        return mDirectory != null ? new File(mDirectory, key + ".js.bin") : null;
+    }
+
+    private Script read(File file, String key) {
+        ObjectInputStream in = null;
+        try {
+            in = new ObjectInputStream(new BufferedInputStream(new FileInputStream(file)));
+            // The name is the key, the key inside catches truncated or foreign files
+            if (!key.equals(in.readUTF()))
+                throw new IOException("Key mismatch");
+            Object script = in.readObject();
+            if (!(script instanceof Script))
+                throw new IOException("No script");
+            return (Script) script;
+        } catch (Exception ex) {
+            GLog.warn("Dropping cached script " + file.getName() + ": " + ex);
+            synchronized (this) {
+                mDiskErrors++;
+            }
+            file.delete();
+            return null;
+        } finally {
+            close(in);
+        }
+    }
+
+    private void write(File file, String key, Script script) {
+        File tmp = new File(file.getPath() + ".tmp");
+        ObjectOutputStream out = null;
+        try {
+            out = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+            out.writeUTF(key);
+            out.writeObject(script);
+            out.close();
+            out = null;
+            if (!tmp.renameTo(file))
+                throw new IOException("Can't rename " + tmp);
+        } catch (Exception ex) {
+            GLog.warn("Can't cache script " + file.getName() + ": " + ex);
+            tmp.delete();
+        } finally {
+            close(out);
+        }
+    }
+
+    private static void close(Closeable closeable) {
+        if (closeable == null)
+            return;
+        try {
+            closeable.close();
+        } catch (IOException e) { }
+    }
+
+    /**
+     * Forgets the scripts in memory, the files stay.
+     */
+    public synchronized void clearMemory() {
+        mScripts.clear();
+    }
+
+    public synchronized long getHits() {
+        return mHits;
+    }
+
+    public synchronized long getDiskHits() {
+        return mDiskHits;
+    }
+
+    public synchronized long getMisses() {
+        return mMisses;
+    }
+
+    public synchronized long getDiskErrors() {
+        return mDiskErrors;
+    }
+}
@@ -0,0 +1,417 @@
+package gl.kev.ar.arengine.helper;
+
+import com.threed.jpct.Object3D;
+
+import org.artoolkit.ar.jpct.TrackableObject3d;
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.ContextFactory;
+import org.mozilla.javascript.Function;
+import org.mozilla.javascript.Scriptable;
+import org.mozilla.javascript.ScriptableObject;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import gl.kev.ar.arengine.helper.jpct.FrustumCuller;
+import gl.kev.logging.GLog;
+
+/**
+ * Created by kevingliewe on 18.10.26.
+ *
+ * Scripts that run every rendered frame or when a marker becomes visible or hidden.
+ *
+ * Each hook is compiled once into a Rhino Function with the arguments (marker, node, frame), node is
+ * null for marker hooks. The arguments are wrapped once, so a call allocates nothing on our side.
+ * The scopes of the hooks inherit the sealed standard objects of {@link Scripting}.
+ * {@link #run()} is called by ArJcptRenderer.draw and stops after the frame budget, the remaining
+ * hooks run first in the next frame. A call that executes more than the instruction limit is
+ * aborted and the hook runs less often, after several aborts in a row it is disabled.
+ *
+ * Hooks can be added and removed from any thread, the changes are picked up by the next run.
+ *
+ * Hooks may move their node, so its cached bounds are dropped from the FrustumCuller after every call.
+ */
+public class ScriptHooks {
+
+    public static final int ON_FRAME = 0;
+    public static final int ON_VISIBLE = 1;
+    public static final int ON_HIDDEN = 2;
+    private static final String[] EVENTS = { "onFrame", "onVisible", "onHidden" };
+
+    // Instructions between two checks of the limit
+    private static final int INSTRUCTION_STEP = 1000;
+    // Frames between two calls of a throttled hook at most
+    private static final int MAX_INTERVAL = 32;
+
+    /**
+     * Passed to every hook, read only for scripts.
+     */
+    public static class Frame {
+        public long index;
+        // Seconds since the first frame and since the previous one
+        public double time;
+        public double dt;
+    }
+
+    public static class Hook {
+        private final String mName;
+        private final int mEvent;
+        private final TrackableObject3d mMarker;
+        // Moved by the script, the node or else the marker's children
+        private final Object3D mMoved;
+        private final Function mFunction;
+        private final Scriptable mScope;
+        private final Object[] mArgs;
+
+        private boolean mVisible = false;
+        private int mInterval = 1;
+        private int mWait = 0;
+        private int mOverruns = 0;
+        private boolean mDisabled = false;
+
+        private long mCalls = 0;
+        private long mNanos = 0;
+        private long mMaxNanos = 0;
+        private long mAborted = 0;
+        private long mSkipped = 0;
+
+        private Hook(String name, int event, TrackableObject3d marker, Object node, Function function, Scriptable scope, Object[] args) {
+            mName = name;
+            mEvent = event;
+            mMarker = marker;
+            mMoved = node instanceof Object3D ? (Object3D) node : marker;
+            mFunction = function;
+            mScope = scope;
+            mArgs = args;
+        }
+
+        public String getName() {
+            return mName;
+        }
+
+        public long getCalls() {
+            return mCalls;
+        }
+
+        /**
+         * @return Nanoseconds spent in the script, including aborted calls.
+         */
+        public long getNanos() {
+            return mNanos;
+        }
+
+        public long getMaxNanos() {
+            return mMaxNanos;
+        }
+
+        /**
+         * @return Calls aborted by the instruction limit.
+         */
+        public long getAborted() {
+            return mAborted;
+        }
+
+        /**
+         * @return Frames in which the hook was due but skipped by the budget or throttling.
+         */
+        public long getSkipped() {
+            return mSkipped;
+        }
+
+        public boolean isDisabled() {
+            return mDisabled;
+        }
+
+        @Override
+        public String toString() {
+            return mName + ": " + mCalls + " calls, avg " + (mCalls > 0 ? mNanos / mCalls / 1000 : 0)
+                    + " us, max " + mMaxNanos / 1000 + " us, " + mAborted + " aborted, " + mSkipped + " skipped"
+                    + (mDisabled ? ", disabled" : "");
+        }
+    }
+
+    private static class BudgetExceededError extends Error {
+        private static final long serialVersionUID = 1L;
+
+        BudgetExceededError() {
+            super("Instruction limit exceeded");
+        }
+    }
+
+    // Thrown from inside the interpreter, one instance so aborting allocates nothing
+    private static final BudgetExceededError BUDGET_EXCEEDED = new BudgetExceededError();
+
+    private class HookContextFactory extends ContextFactory {
+        @Override
+        protected Context makeContext() {
+            Context cx = super.makeContext();
+            // Instructions are only counted by the interpreter
+            cx.setOptimizationLevel(-1);
+            cx.setInstructionObserverThreshold(INSTRUCTION_STEP);
+            return cx;
+        }
+
+        @Override
+        protected void observeInstructionCount(Context cx, int instructionCount) {
+            mInstructions += instructionCount;
+            if (mInstructions > mInstructionLimit)
+                throw BUDGET_EXCEEDED;
+        }
+    }
+
+    private final HookContextFactory mFactory = new HookContextFactory();
+    private final FrustumCuller mCuller;
+
+    private final List<Hook> mHooks = new ArrayList<>();
+    private final List<Hook> mAdded = new ArrayList<>();
+    private final List<TrackableObject3d> mRemoved = new ArrayList<>();
+    private boolean mCleared = false;
+
+    private final Frame mFrame = new Frame();
+    private long mStart = -1;
+    private long mLast;
+    private int mNext = 0;
+    private volatile boolean mAnimating = false;
+
+    private volatile long mBudgetNanos = 2000000;
+    private volatile int mInstructionLimit = 100000;
+    private int mInstructions;
+
+    public ScriptHooks() {
+        this(null);
+    }
+
+    /**
+     * @param culler Culler of the rendered scene, may be null.
+     */
+    public ScriptHooks(FrustumCuller culler) {
+        mCuller = culler;
+    }
+
+    /**
+     * @param millis Time per frame for all hooks.
+     * @param instructions Instructions per call, a call over the limit is aborted.
+     */
+    public void setBudget(float millis, int instructions) {
+        mBudgetNanos = (long) (millis * 1000000);
+        mInstructionLimit = instructions;
+    }
+
+    /**
+     * Compiles a hook, can be called from any thread.
+     * @param name Reported in the metrics and errors.
+     * @param event ON_FRAME, ON_VISIBLE or ON_HIDDEN.
+     * @param body Statements of the function, the lines are joined.
+     * @param marker Its visibility triggers the hook.
+     * @param node Passed to the script, e.g. a model of the marker, may be null.
+     * @param context Additional variables of the script.
+     * @return The hook, null if the script can't be compiled.
+     */
+    public Hook add(String name, int event, String[] body, TrackableObject3d marker, Object node, Map<String, Object> context) {
+        StringBuilder source = new StringBuilder("function ").append(EVENTS[event]).append("(marker, node, frame) {\n");
+        for (String line : body)
+            source.append(line).append('\n');
+        source.append('}');
+        Context cx = mFactory.enterContext();
+        try {
+            Scriptable shared = Scripting.getSharedScope(cx);
+            Scriptable scope = cx.newObject(shared);
+            scope.setPrototype(shared);
+            scope.setParentScope(null);
+            if (context != null)
+                for (String key : context.keySet())
+                    ScriptableObject.putProperty(scope, key, Scripting.wrap(context.get(key), shared));
+
+            Function function = cx.compileFunction(scope, source.toString(), name + "." + EVENTS[event], 1, null);
+            Object[] args = new Object[] {
+                    Scripting.wrap(marker, shared),
+                    node != null ? Scripting.wrap(node, shared) : null,
+                    Scripting.wrap(mFrame, shared)
+            };
+            Hook hook = new Hook(name, event, marker, node, function, scope, args);
+            synchronized (mAdded) {
+                mAdded.add(hook);
+            }
+            return hook;
+        } catch (Exception ex) {
+            GLog.exception("Can't compile " + EVENTS[event] + " of " + name, ex);
+            return null;
+        } finally {
+            Context.exit();
+        }
+    }
+
+    /**
+     * Removes the hooks of a marker, e.g. when it left the scene.
+     */
+    public void remove(TrackableObject3d marker) {
+        synchronized (mAdded) {
+            mRemoved.add(marker);
+        }
+    }
+
+    /**
+     * Removes all hooks, e.g. before the scene is configured again.
+     */
+    public void clear() {
+        synchronized (mAdded) {
+            mAdded.clear();
+            mRemoved.clear();
+            mCleared = true;
+        }
+    }
+
+    /**
+     * Runs the due hooks within the frame budget, on the render thread after the markers were updated.
+     */
+    public void run() {
+        takeChanges();
+        if (mHooks.isEmpty()) {
+            mAnimating = false;
+            return;
+        }
+
+        long now = System.nanoTime();
+        if (mStart < 0)
+            mStart = mLast = now;
+        mFrame.index++;
+        mFrame.time = (now - mStart) / 1e9;
+        mFrame.dt = (now - mLast) / 1e9;
+        mLast = now;
+
+        long deadline = now + mBudgetNanos;
+        int count = mHooks.size();
+        int start = mNext % count;
+        boolean outOfTime = false;
+        boolean animating = false;
+        Context cx = mFactory.enterContext();
+        try {
+            for (int n=0; n<count; n++) {
+                int i = (start + n) % count;
+                Hook hook = mHooks.get(i);
+                if (!isDue(hook))
+                    continue;
+                // Skipped hooks are still due in the next frame
+                animating = true;
+                if (outOfTime) {
+                    hook.mSkipped++;
+                    continue;
+                }
+                if (hook.mWait > 0) {
+                    hook.mWait--;
+                    hook.mSkipped++;
+                    continue;
+                }
+
+                call(cx, hook);
+                if (System.nanoTime() > deadline) {
+                    // The next frame starts with the hooks skipped in this one
+                    outOfTime = true;
+                    mNext = i + 1;
+                }
+            }
+        } finally {
+            Context.exit();
+        }
+        mAnimating = animating;
+    }
+
+    /**
+     * @return true if a hook was due in the last run, so the next frame should be rendered
+     * even if no marker moved. Can be called from any thread.
+     */
+    public boolean isAnimating() {
+        return mAnimating;
+    }
+
+    /**
+     * onFrame is due while the marker is visible, onVisible and onHidden once per change.
+     * A change stays due until the hook ran.
+     */
+    private static boolean isDue(Hook hook) {
+        if (hook.mDisabled)
+            return false;
+        boolean visible = hook.mMarker.getVisibility();
+        switch (hook.mEvent) {
+            case ON_FRAME:
+                return visible;
+            case ON_VISIBLE:
+                if (!visible)
+                    hook.mVisible = false;
+                return visible && !hook.mVisible;
+            default:
+                if (visible)
+                    hook.mVisible = true;
+                return !visible && hook.mVisible;
+        }
+    }
+
+    private void call(Context cx, Hook hook) {
+        mInstructions = 0;
+        long start = System.nanoTime();
+        try {
+            hook.mFunction.call(cx, hook.mScope, hook.mScope, hook.mArgs);
+            hook.mOverruns = 0;
+            hook.mInterval = 1;
+        } catch (BudgetExceededError ex) {
+            hook.mAborted++;
+            hook.mOverruns++;
+            if (hook.mInterval >= MAX_INTERVAL) {
+                hook.mDisabled = true;
+                GLog.error("Script " + hook.mName + " exceeded " + mInstructionLimit + " instructions " + hook.mOverruns + " times, disabled", null);
+            } else {
+                hook.mInterval *= 2;
+            }
+        } catch (Exception ex) {
+            GLog.exception("Exception in script " + hook.mName, ex);
+        }
+        long nanos = System.nanoTime() - start;
+        hook.mCalls++;
+        hook.mNanos += nanos;
+        if (nanos > hook.mMaxNanos)
+            hook.mMaxNanos = nanos;
+        hook.mWait = hook.mInterval - 1;
+
+        if (hook.mEvent == ON_VISIBLE)
+            hook.mVisible = true;
+        else if (hook.mEvent == ON_HIDDEN)
+            hook.mVisible = false;
+
+        // Also after an abort, the script may have moved the node before
+        if (mCuller != null)
+            mCuller.invalidate(hook.mMoved);
+    }
+
+    private void takeChanges() {
+        synchronized (mAdded) {
+            if (mCleared) {
+                mHooks.clear();
+                mCleared = false;
+            }
+            if (!mRemoved.isEmpty()) {
+                for (int i=mHooks.size()-1; i>=0; i--)
+                    if (mRemoved.contains(mHooks.get(i).mMarker))
+                        mHooks.remove(i);
+                mRemoved.clear();
+            }
+            if (!mAdded.isEmpty()) {
+                mHooks.addAll(mAdded);
+                mAdded.clear();
+            }
+        }
+    }
+
+    /**
+     * Metrics of all hooks, only consistent on the render thread.
+     */
+    public List<Hook> getHooks() {
+        return Collections.unmodifiableList(mHooks);
+    }
+
+    public void logMetrics() {
+        for (int i=0; i<mHooks.size(); i++)
+            GLog.info("Script hook " + mHooks.get(i));
+    }
+}
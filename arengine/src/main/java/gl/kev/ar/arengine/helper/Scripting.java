@@ -4,6 +4,7 @@ import android.content.ContentProvider;
 import android.text.TextUtils;
 
 import org.mozilla.javascript.Context;
+import org.mozilla.javascript.ContextFactory;
 import org.mozilla.javascript.NativeArray;
 import org.mozilla.javascript.NativeJavaObject;
 import org.mozilla.javascript.NativeObject;
@@ -11,6 +12,7 @@ import org.mozilla.javascript.Scriptable;
 import org.mozilla.javascript.ScriptableObject;
 
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.Map;
 
 import gl.kev.logging.GLog;
@@ -22,6 +24,35 @@ import gl.kev.logging.GLog;
 // http://www.javased.com/?api=org.mozilla.javascript.NativeJavaObject
 
 public class Scripting {
+
+    /**
+     * Contexts with the settings of all config scripts.
+     */
+    private static class ScriptingContextFactory extends ContextFactory {
+        @Override
+        protected Context makeContext() {
+            Context cx = super.makeContext();
+            cx.setOptimizationLevel(-1);
+            return cx;
+        }
+
+        Context create() {
+            return makeContext();
+        }
+    }
+
+    private static final ScriptingContextFactory factory = new ScriptingContextFactory();
+
+    // One context per thread, entered again for every script, e.g. by the model loading tasks
+    private static final ThreadLocal<Context> contexts = new ThreadLocal<>();
+
+    // Standard objects, sealed so all threads can use them as prototype of their scope
+    private static volatile ScriptableObject sharedScope;
+
+    // Wrappers of values passed again and again, e.g. the activity and the model loader
+    private static final int MAX_WRAPPERS = 64;
+    private static final Map<Object, Object> wrappers = new IdentityHashMap<>();
+
     public static Object execute(String[] script, Map<String, Object> context) {
         return execute(TextUtils.join("\n", script), context);
     }
@@ -29,15 +60,18 @@ public class Scripting {
     public static Object execute(String script, Map<String, Object> context) {
 
         try {
-            Context cx = Context.enter();
-            cx.setOptimizationLevel(-1);
-            Scriptable scope = cx.initStandardObjects();
+            Context cx = enter();
+            Scriptable shared = getSharedScope(cx);
+            Scriptable scope = cx.newObject(shared);
+            scope.setPrototype(shared);
+            scope.setParentScope(null);
 
             for (String name : context.keySet()) {
-                ScriptableObject.putProperty(scope, name, Context.javaToJS(context.get(name), scope));
+                ScriptableObject.putProperty(scope, name, wrap(context.get(name), shared));
             }
 
-            return jsToJava(cx.evaluateString(scope, script, "EvaluationScript", 1, null));
+            // Compiled once, also across starts, see ScriptCache
+            return jsToJava(ScriptCache.getInstance().compile(cx, script, "EvaluationScript").exec(cx, scope));
         }catch (Exception ex) {
             GLog.exception("Exception during Script", ex);
         } finally {
@@ -46,6 +80,55 @@ public class Scripting {
         return null;
     }
 
+    private static Context enter() {
+        Context cx = contexts.get();
+        if (cx == null) {
+            cx = factory.create();
+            contexts.set(cx);
+        }
+        return factory.enterContext(cx);
+    }
+
+    static Scriptable getSharedScope(Context cx) {
+        ScriptableObject scope = sharedScope;
+        if (scope == null) {
+            synchronized (Scripting.class) {
+                scope = sharedScope;
+                if (scope == null) {
+                    scope = cx.initStandardObjects(null, true);
+                    scope.sealObject();
+                    sharedScope = scope;
+                }
+            }
+        }
+        return scope;
+    }
+
+    static Object wrap(Object value, Scriptable shared) {
+        if (value == null || value instanceof String || value instanceof Number || value instanceof Boolean)
+            return Context.javaToJS(value, shared);
+
+        synchronized (wrappers) {
+            Object wrapper = wrappers.get(value);
+            if (wrapper == null) {
+                if (wrappers.size() >= MAX_WRAPPERS)
+                    wrappers.clear();
+                wrapper = Context.javaToJS(value, shared);
+                wrappers.put(value, wrapper);
+            }
+            return wrapper;
+        }
+    }
+
+    /**
+     * Forgets the cached wrappers, e.g. when the activity is destroyed.
+     */
+    public static void clearWrappers() {
+        synchronized (wrappers) {
+            wrappers.clear();
+        }
+    }
+
     public static Object jsToJava(Object jsObject)
     {
         if (jsObject == null) return null;
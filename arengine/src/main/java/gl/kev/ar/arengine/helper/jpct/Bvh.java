@@ -0,0 +1,196 @@
+package gl.kev.ar.arengine.helper.jpct;
+
+import org.joml.RayAabIntersection;
+
+import java.util.Arrays;
+
+/**
+ * Created by kevingliewe on 18.10.26.
+ *
+ * Bounding volume hierarchy over axis aligned boxes, stored in flat arrays.
+ * Primitives are given as boxes [minX, minY, minZ, maxX, maxY, maxZ] per index.
+ *
+ * {@link #build(float[], int)} splits at the median of the longest axis of the centroids.
+ * {@link #refit(float[])} keeps the tree and only recomputes the node boxes, which is enough
+ * while the primitives move but stay the same.
+ *
+ * Not thread safe.
+ */
+public class Bvh {
+    private static final int LEAF_SIZE = 4;
+
+    // Per node: box, first child (or first primitive for leaves) and primitive count (0 for inner nodes)
+    private float[] mNodeBounds = new float[0];
+    private int[] mNodeStart = new int[0];
+    private int[] mNodeCount = new int[0];
+    private int mNodes = 0;
+
+    // Primitive indices in leaf order
+    private int[] mPrimitives = new int[0];
+    private int mPrimitiveCount = 0;
+
+    private float[] mCentroids = new float[0];
+    private int[] mStack = new int[64];
+    private int[] mHits = new int[16];
+
+    /**
+     * @param boxes Six floats per primitive.
+     */
+    public void build(float[] boxes, int count) {
+        mPrimitiveCount = count;
+        if(mPrimitives.length < count) {
+            mPrimitives = new int[count];
+            mCentroids = new float[count * 3];
+        }
+        for(int i = 0 ; i < count ; i++) {
+            mPrimitives[i] = i;
+            mCentroids[i * 3] = (boxes[i * 6] + boxes[i * 6 + 3]) * 0.5f;
+            mCentroids[i * 3 + 1] = (boxes[i * 6 + 1] + boxes[i * 6 + 4]) * 0.5f;
+            mCentroids[i * 3 + 2] = (boxes[i * 6 + 2] + boxes[i * 6 + 5]) * 0.5f;
+        }
+
+        // A binary tree with leaves of at least one primitive has less than 2 * count nodes
+        int capacity = Math.max(1, 2 * count);
+        if(mNodeStart.length < capacity) {
+            mNodeBounds = new float[capacity * 6];
+            mNodeStart = new int[capacity];
+            mNodeCount = new int[capacity];
+        }
+        mNodes = 0;
+        if(count == 0)
+            return;
+
+        int root = mNodes++;
+        split(root, 0, count);
+        refit(boxes);
+    }
+
+    private void split(int node, int start, int count) {
+        if(count <= LEAF_SIZE) {
+            mNodeStart[node] = start;
+            mNodeCount[node] = count;
+            return;
+        }
+
+        // Longest axis of the centroid bounds
+        float minX = Float.POSITIVE_INFINITY, minY = minX, minZ = minX;
+        float maxX = Float.NEGATIVE_INFINITY, maxY = maxX, maxZ = maxX;
+        for(int i = start ; i < start + count ; i++) {
+            int c = mPrimitives[i] * 3;
+            minX = Math.min(minX, mCentroids[c]); maxX = Math.max(maxX, mCentroids[c]);
+            minY = Math.min(minY, mCentroids[c + 1]); maxY = Math.max(maxY, mCentroids[c + 1]);
+            minZ = Math.min(minZ, mCentroids[c + 2]); maxZ = Math.max(maxZ, mCentroids[c + 2]);
+        }
+        float ex = maxX - minX, ey = maxY - minY, ez = maxZ - minZ;
+        int axis = ex >= ey && ex >= ez ? 0 : (ey >= ez ? 1 : 2);
+
+        int half = count / 2;
+        select(start, start + count - 1, start + half, axis);
+
+        int left = mNodes;
+        mNodes += 2;
+        mNodeStart[node] = left;
+        mNodeCount[node] = 0;
+        split(left, start, half);
+        split(left + 1, start + half, count - half);
+    }
+
+    /**
+     * Partial sort so that the primitive at k has the k-th smallest centroid on the axis (quickselect).
+     */
+    private void select(int lo, int hi, int k, int axis) {
+        while(hi > lo) {
+            float pivot = mCentroids[mPrimitives[(lo + hi) >>> 1] * 3 + axis];
+            int i = lo, j = hi;
+            while(i <= j) {
+                while(mCentroids[mPrimitives[i] * 3 + axis] < pivot) i++;
+                while(mCentroids[mPrimitives[j] * 3 + axis] > pivot) j--;
+                if(i <= j) {
+                    int t = mPrimitives[i]; mPrimitives[i] = mPrimitives[j]; mPrimitives[j] = t;
+                    i++;
+                    j--;
+                }
+            }
+            if(k <= j)
+                hi = j;
+            else if(k >= i)
+                lo = i;
+            else
+                return;
+        }
+    }
+
+    /**
+     * Recomputes all node boxes from the primitive boxes, the tree itself is kept.
+     * Children always have higher indices than their parent, so one backwards pass is enough.
+     */
+    public void refit(float[] boxes) {
+        for(int n = mNodes - 1 ; n >= 0 ; n--) {
+            int b = n * 6;
+            if(mNodeCount[n] > 0) {
+                float minX = Float.POSITIVE_INFINITY, minY = minX, minZ = minX;
+                float maxX = Float.NEGATIVE_INFINITY, maxY = maxX, maxZ = maxX;
+                for(int i = mNodeStart[n] ; i < mNodeStart[n] + mNodeCount[n] ; i++) {
+                    int p = mPrimitives[i] * 6;
+                    minX = Math.min(minX, boxes[p]); minY = Math.min(minY, boxes[p + 1]); minZ = Math.min(minZ, boxes[p + 2]);
+                    maxX = Math.max(maxX, boxes[p + 3]); maxY = Math.max(maxY, boxes[p + 4]); maxZ = Math.max(maxZ, boxes[p + 5]);
+                }
+                mNodeBounds[b] = minX; mNodeBounds[b + 1] = minY; mNodeBounds[b + 2] = minZ;
+                mNodeBounds[b + 3] = maxX; mNodeBounds[b + 4] = maxY; mNodeBounds[b + 5] = maxZ;
+            } else {
+                int l = mNodeStart[n] * 6, r = l + 6;
+                for(int a = 0 ; a < 3 ; a++) {
+                    mNodeBounds[b + a] = Math.min(mNodeBounds[l + a], mNodeBounds[r + a]);
+                    mNodeBounds[b + 3 + a] = Math.max(mNodeBounds[l + 3 + a], mNodeBounds[r + 3 + a]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Collects the primitives of all leaves whose box is hit by the ray.
+     * @return Number of hits, the indices are in {@link #getHits()}.
+     */
+    public int collect(RayAabIntersection ray) {
+        int hits = 0;
+        if(mNodes == 0)
+            return 0;
+
+        int top = 0;
+        mStack[top++] = 0;
+        while(top > 0) {
+            int n = mStack[--top];
+            int b = n * 6;
+            if(!ray.test(mNodeBounds[b], mNodeBounds[b + 1], mNodeBounds[b + 2], mNodeBounds[b + 3], mNodeBounds[b + 4], mNodeBounds[b + 5]))
+                continue;
+
+            if(mNodeCount[n] > 0) {
+                if(mHits.length < hits + mNodeCount[n])
+                    mHits = Arrays.copyOf(mHits, Math.max(mHits.length * 2, hits + mNodeCount[n]));
+                for(int i = mNodeStart[n] ; i < mNodeStart[n] + mNodeCount[n] ; i++)
+                    mHits[hits++] = mPrimitives[i];
+            } else {
+                if(mStack.length < top + 2)
+                    mStack = Arrays.copyOf(mStack, mStack.length * 2);
+                mStack[top++] = mNodeStart[n];
+                mStack[top++] = mNodeStart[n] + 1;
+            }
+        }
+        return hits;
+    }
+
+    /**
+     * Primitive indices of the last {@link #collect(RayAabIntersection)}, only valid until the next call.
+     */
+    public int[] getHits() {
+        return mHits;
+    }
+
+    public int getNodeCount() {
+        return mNodes;
+    }
+
+    public int getPrimitiveCount() {
+        return mPrimitiveCount;
+    }
+}
@@ -0,0 +1,23 @@
+package gl.kev.ar.arengine.helper.jpct;
+
+import com.threed.jpct.Matrix;
+
+/**
+ * Created by kevingliewe on 18.10.26.
+ *
+ * Object that keeps its jPCT world transformation cached and only recomputes it
+ * when its own transformation or one of its parents changed.
+ */
+public interface CachedWorldTransform {
+
+    /**
+     * @return The cached world transformation, same layout as Object3D.getWorldTransformation.
+     *         It is owned by the object and must not be modified.
+     */
+    Matrix getWorldMatrix();
+
+    /**
+     * @return Counter that changes whenever the matrix returned by {@link #getWorldMatrix()} changes.
+     */
+    int getWorldVersion();
+}
@@ -0,0 +1,334 @@
+package gl.kev.ar.arengine.helper.jpct;
+
+import com.threed.jpct.Camera;
+import com.threed.jpct.Matrix;
+import com.threed.jpct.Mesh;
+import com.threed.jpct.Object3D;
+import com.threed.jpct.SimpleVector;
+
+import org.artoolkit.ar.jpct.TrackableObject3d;
+import org.joml.FrustumIntersection;
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+/**
+ * Created by kevingliewe on 18.10.26.
+ *
+ * Hierarchical view frustum culling for the objects of TrackableObject3d and Node3D subtrees.
+ *
+ * Every node caches the bounding box of its whole subtree in its own object space, so a node
+ * costs one box transformation per frame. A subtree fully inside the frustum is not descended,
+ * a subtree fully outside is hidden as a whole. The plane that culled a node is tried first
+ * in the next frame (plane coherency).
+ *
+ * Visibility is only propagated on changes (see TrackableObject3d.setVisibility), so the culler
+ * remembers the objects it hid and shows them again once they are no longer culled.
+ *
+ * World transformations come from {@link CachedWorldTransform} where available.
+ *
+ * The cached boxes assume that children do not move relative to their node. Call
+ * {@link #invalidate(Object3D)} or {@link #invalidateAll()} after changing a child's transformation.
+ */
+public class FrustumCuller {
+    private static final int ALL_PLANES = FrustumIntersection.PLANE_MASK_NX | FrustumIntersection.PLANE_MASK_PX
+            | FrustumIntersection.PLANE_MASK_NY | FrustumIntersection.PLANE_MASK_PY
+            | FrustumIntersection.PLANE_MASK_NZ | FrustumIntersection.PLANE_MASK_PZ;
+
+    /**
+     * Cached data per node.
+     */
+    private static class Bounds {
+        // Subtree box in object space of the node
+        float minX, minY, minZ, maxX, maxY, maxZ;
+        boolean empty = true;
+        int plane = FrustumIntersection.PLANE_NX;
+        // Hidden by the culler, and the last frame that decided so
+        boolean culled = false;
+        int culledFrame;
+
+        void add(float x0, float y0, float z0, float x1, float y1, float z1) {
+            if(empty) {
+                minX = x0; minY = y0; minZ = z0;
+                maxX = x1; maxY = y1; maxZ = z1;
+                empty = false;
+                return;
+            }
+            minX = Math.min(minX, x0); minY = Math.min(minY, y0); minZ = Math.min(minZ, z0);
+            maxX = Math.max(maxX, x1); maxY = Math.max(maxY, y1); maxZ = Math.max(maxZ, z1);
+        }
+    }
+
+    private final IdentityHashMap<Object3D, Bounds> mBounds = new IdentityHashMap<>();
+    private final ArrayList<Object3D> mHidden = new ArrayList<>();
+    private int mFrame = 0;
+    private final FrustumIntersection mFrustum = new FrustumIntersection();
+
+    private float mMargin = 0.1f;
+    private int mCulledObjects = 0;
+    private int mTestedNodes = 0;
+
+    private final Matrix mJpctMatrix = new Matrix();
+    private final Matrix4f mWorld = new Matrix4f();
+    private final Matrix4f mNodeInverse = new Matrix4f();
+    private final Matrix4f mViewProjection = new Matrix4f();
+    private final Vector3f mMin = new Vector3f();
+    private final Vector3f mMax = new Vector3f();
+    private final SimpleVector mPoint = new SimpleVector();
+    private final SimpleVector mOrigin = new SimpleVector();
+    private final SimpleVector mResult = new SimpleVector();
+
+    /**
+     * @param margin Relative widening of the field of view, keeps objects at the border visible
+     *               if the jPCT projection is not exactly symmetric.
+     */
+    public void setMargin(float margin) {
+        mMargin = margin;
+    }
+
+    /**
+     * Builds the frustum from the jPCT camera. Call once per frame after the camera was placed.
+     * @param near Distance of the near plane, usually Config.nearPlane.
+     * @param far Distance of the far plane, usually Config.farPlane.
+     */
+    public void update(Camera camera, int width, int height, float near, float far) {
+        // World to camera space from the camera itself, so no assumptions about jPCT's conventions are needed.
+        SimpleVector o = transform(camera, 0, 0, 0, mOrigin);
+        SimpleVector p = transform(camera, 1, 0, 0, mResult);
+        float xx = p.x - o.x, xy = p.y - o.y, xz = p.z - o.z;
+        transform(camera, 0, 1, 0, p);
+        float yx = p.x - o.x, yy = p.y - o.y, yz = p.z - o.z;
+        transform(camera, 0, 0, 1, p);
+        float zx = p.x - o.x, zy = p.y - o.y, zz = p.z - o.z;
+
+        // jPCT camera space looks along +z, fov is 2 * tan(angle / 2)
+        float tanX = camera.getFOV() * 0.5f * (1f + mMargin);
+        float yfov = camera.getYFOV();
+        if(yfov <= 0)
+            yfov = camera.getFOV() * height / width;
+        float tanY = yfov * 0.5f * (1f + mMargin);
+
+        Matrix4f view = mWorld.set(
+                xx, xy, xz, 0,
+                yx, yy, yz, 0,
+                zx, zy, zz, 0,
+                o.x, o.y, o.z, 1);
+        mViewProjection.set(
+                1f / tanX, 0, 0, 0,
+                0, 1f / tanY, 0, 0,
+                0, 0, (far + near) / (far - near), 1,
+                0, 0, -2f * far * near / (far - near), 0)
+                .mul(view);
+        mFrustum.set(mViewProjection);
+    }
+
+    private SimpleVector transform(Camera camera, float x, float y, float z, SimpleVector dest) {
+        mPoint.set(x, y, z);
+        return camera.transform(mPoint, dest);
+    }
+
+    /**
+     * Hides the children of visible trackable objects that are outside of the frustum.
+     * @return Number of objects newly hidden in this call, objects that stay culled are not counted.
+     */
+    public int cull(List<TrackableObject3d> trackables) {
+        mCulledObjects = 0;
+        mTestedNodes = 0;
+        mFrame++;
+        for(int i = 0 ; i < trackables.size() ; i++) {
+            TrackableObject3d trackable = trackables.get(i);
+            if(!trackable.getVisibility())
+                continue;
+
+            int result = test(trackable);
+            if(result == FrustumIntersection.INSIDE)
+                continue;
+
+            List<Object3D> children = trackable.getChildren();
+            if(result == FrustumIntersection.INTERSECT) {
+                for(int c = 0 ; c < children.size() ; c++)
+                    cull(children.get(c));
+            } else {
+                // The trackable itself has no geometry and keeps its lights
+                for(int c = 0 ; c < children.size() ; c++)
+                    hide(children.get(c));
+            }
+        }
+        restore();
+        return mCulledObjects;
+    }
+
+    /**
+     * Shows the objects that were culled before but not visited in this frame,
+     * e.g. because their parent is completely inside now.
+     */
+    private void restore() {
+        for(int i = mHidden.size() - 1 ; i >= 0 ; i--) {
+            Object3D object = mHidden.get(i);
+            Bounds bounds = mBounds.get(object);
+            if(bounds != null && bounds.culledFrame == mFrame)
+                continue;
+
+            mHidden.remove(i);
+            if(bounds != null)
+                bounds.culled = false;
+            showIfParentVisible(object);
+        }
+    }
+
+    /**
+     * Hidden parents, e.g. lost markers, show their children again when they become visible.
+     */
+    private static void showIfParentVisible(Object3D object) {
+        Object3D[] parents = object.getParents();
+        if(parents == null || parents.length == 0 || parents[0].getVisibility())
+            object.setVisibility(true);
+    }
+
+    private void cull(Object3D object) {
+        Bounds bounds = mBounds.get(object);
+        if(!object.getVisibility() && (bounds == null || !bounds.culled))
+            return;
+
+        int result = test(object);
+        if(result >= 0) {
+            hide(object);
+            return;
+        }
+
+        // Show before descending, showing a Node3D shows its whole subtree
+        if(bounds != null && bounds.culled)
+            show(object, bounds);
+
+        // LodNode decides about the visibility of its levels itself
+        if(result == FrustumIntersection.INTERSECT && object instanceof Node3D && !(object instanceof LodNode)) {
+            List<Object3D> children = ((Node3D)object).getChildren();
+            for(int c = 0 ; c < children.size() ; c++)
+                cull(children.get(c));
+        }
+    }
+
+    private void show(Object3D object, Bounds bounds) {
+        bounds.culled = false;
+        mHidden.remove(object);
+        object.setVisibility(true);
+    }
+
+    private void hide(Object3D object) {
+        Bounds bounds = bounds(object);
+        // Hidden by someone else, it must not be shown again by restore()
+        if(!object.getVisibility() && !bounds.culled)
+            return;
+
+        bounds.culledFrame = mFrame;
+        if(!bounds.culled) {
+            bounds.culled = true;
+            mHidden.add(object);
+            mCulledObjects++;
+        }
+        // Node3D hides its subtree
+        object.setVisibility(false);
+    }
+
+    private int test(Object3D object) {
+        Bounds bounds = bounds(object);
+        if(bounds.empty)
+            return FrustumIntersection.INSIDE;
+
+        mTestedNodes++;
+        JpctInterop.toJoml(worldTransformation(object), mWorld)
+                .transformAab(bounds.minX, bounds.minY, bounds.minZ, bounds.maxX, bounds.maxY, bounds.maxZ, mMin, mMax);
+        int result = mFrustum.intersectAab(mMin.x, mMin.y, mMin.z, mMax.x, mMax.y, mMax.z, ALL_PLANES, bounds.plane);
+        if(result >= 0)
+            bounds.plane = result;
+        return result;
+    }
+
+    private Matrix worldTransformation(Object3D object) {
+        if(object instanceof CachedWorldTransform)
+            return ((CachedWorldTransform)object).getWorldMatrix();
+        return object.getWorldTransformation(mJpctMatrix);
+    }
+
+    private Bounds bounds(Object3D object) {
+        Bounds bounds = mBounds.get(object);
+        if(bounds != null)
+            return bounds;
+
+        bounds = new Bounds();
+        Mesh mesh = object.getMesh();
+        float[] box = mesh != null ? mesh.getBoundingBox() : null;
+        // min/max per axis: minX, maxX, minY, maxY, minZ, maxZ. Meshes without vertices report min > max.
+        if(box != null && box[0] <= box[1] && box[2] <= box[3] && box[4] <= box[5])
+            bounds.add(box[0], box[2], box[4], box[1], box[3], box[5]);
+
+        List<Object3D> children = null;
+        if(object instanceof TrackableObject3d)
+            children = ((TrackableObject3d)object).getChildren();
+        else if(object instanceof Node3D)
+            children = ((Node3D)object).getChildren();
+
+        if(children != null && children.size() > 0) {
+            // Fill the children first, the recursion uses the same scratch matrices
+            for(int c = 0 ; c < children.size() ; c++)
+                bounds(children.get(c));
+
+            Matrix4f nodeInverse = JpctInterop.toJoml(worldTransformation(object), mNodeInverse).invert();
+            for(int c = 0 ; c < children.size() ; c++) {
+                Object3D child = children.get(c);
+                Bounds childBounds = mBounds.get(child);
+                if(childBounds.empty)
+                    continue;
+                // Child box in the object space of this node
+                JpctInterop.toJoml(worldTransformation(child), mWorld);
+                nodeInverse.mul(mWorld, mWorld)
+                        .transformAab(childBounds.minX, childBounds.minY, childBounds.minZ,
+                                childBounds.maxX, childBounds.maxY, childBounds.maxZ, mMin, mMax);
+                bounds.add(mMin.x, mMin.y, mMin.z, mMax.x, mMax.y, mMax.z);
+            }
+        }
+
+        mBounds.put(object, bounds);
+        return bounds;
+    }
+
+    /**
+     * Drops the cached box of the object. Parents of the object have to be invalidated as well.
+     */
+    public void invalidate(Object3D object) {
+        Bounds bounds = mBounds.remove(object);
+        // Without its bounds the object would look hidden by someone else, show it until the next cull
+        if(bounds != null && bounds.culled) {
+            mHidden.remove(object);
+            showIfParentVisible(object);
+        }
+        Object3D[] parents = object.getParents();
+        if(parents != null)
+            for(Object3D parent : parents)
+                invalidate(parent);
+    }
+
+    public void invalidateAll() {
+        for(int i = 0 ; i < mHidden.size() ; i++)
+            showIfParentVisible(mHidden.get(i));
+        mHidden.clear();
+        mBounds.clear();
+    }
+
+    /**
+     * @return Objects newly hidden in the last {@link #cull(List)} call.
+     */
+    public int getCulledObjects() {
+        return mCulledObjects;
+    }
+
+    /**
+     * @return Box tests done in the last {@link #cull(List)} call.
+     */
+    public int getTestedNodes() {
+        return mTestedNodes;
+    }
+}
@@ -2,6 +2,8 @@ package gl.kev.ar.arengine.helper.jpct;
 
 
 import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Color;
 
 import com.threed.jpct.Matrix;
 import com.threed.jpct.Object3D;
@@ -10,15 +12,27 @@ import com.threed.jpct.SimpleVector;
 import com.threed.jpct.Texture;
 import com.threed.jpct.TextureManager;
 
+import java.util.HashMap;
+import java.util.Map;
+
 /**
  * Created by Kevin on 12.08.2016.
  */
 public class JPCTHelper {
+    private static final String GIZMO_TEXTURE = "GIZMO";
+    // Columns of the gizmo texture: red, green, blue
+    private static final float[] GIZMO_U = { 1f / 8f, 3f / 8f, 5f / 8f };
+
+    // Templates by size, width and colour, the returned objects share their mesh
+    private static final Map<String, Object3D> geometryCache = new HashMap<>();
 
     public static void init(Context context) {
-        TextureManager.getInstance().addTexture("RED", new Texture(8, 8, RGBColor.RED));
-        TextureManager.getInstance().addTexture("BLUE", new Texture(8, 8, RGBColor.BLUE));
-        TextureManager.getInstance().addTexture("GREEN", new Texture(8, 8, RGBColor.GREEN));
+        // Cached textures survive onPause, init runs on every resume
+        addColorTexture("RED", RGBColor.RED);
+        addColorTexture("BLUE", RGBColor.BLUE);
+        addColorTexture("GREEN", RGBColor.GREEN);
+        if(!TextureCache.getInstance().contains(GIZMO_TEXTURE))
+            TextureCache.getInstance().add(GIZMO_TEXTURE, createGizmoTexture());
 
         try {
             //TextureManager.getInstance().addTexture("ABB", new Texture(context.getResources().getAssets().open("abb.png"), true));
@@ -28,68 +42,120 @@ public class JPCTHelper {
 
     }
 
+    private static void addColorTexture(String name, RGBColor color) {
+        TextureCache cache = TextureCache.getInstance();
+        if(!cache.contains(name))
+            cache.add(name, new Texture(8, 8, color));
+    }
+
+    private static Texture createGizmoTexture() {
+        Bitmap bitmap = Bitmap.createBitmap(8, 8, Bitmap.Config.ARGB_8888);
+        for(int x = 0 ; x < 8 ; x++) {
+            int color = x < 2 ? Color.RED : (x < 4 ? Color.GREEN : (x < 6 ? Color.BLUE : Color.WHITE));
+            for(int y = 0 ; y < 8 ; y++)
+                bitmap.setPixel(x, y, color);
+        }
+        return new Texture(bitmap);
+    }
+
     public static Object3D createLine (SimpleVector pointA, SimpleVector pointB, float width, String textureName)
     {
-        Object3D line = new Object3D( 8 );
+        String key = "line;" + pointA + ";" + pointB + ";" + width + ";" + textureName;
+        Object3D template = geometryCache.get(key);
+        if(template == null) {
+            int textureId = TextureManager.getInstance().getTextureID( textureName );
+            template = new Object3D( 8 );
+            addLine(template, pointA, pointB, width, textureId, 0, 1);
+            if(textureId != TextureManager.TEXTURE_NOTFOUND)
+                geometryCache.put(key, template);
+        }
+        return instance(template);
+    }
+
+    /**
+     * Adds the 8 triangles of a line (two crossed quads, both sides) to target.
+     * @param u0 Texture coordinate u of the start, u1 of the end.
+     */
+    private static void addLine (Object3D target, SimpleVector pointA, SimpleVector pointB, float width, int textureId, float u0, float u1)
+    {
         float offset = width / 2.0f;
 
         // Quad A:
-        line.addTriangle( new SimpleVector( pointA.x, pointA.y - offset, pointA.z ), 0, 0,
-                new SimpleVector( pointA.x, pointA.y + offset, pointA.z ), 0, 1,
-                new SimpleVector( pointB.x, pointB.y + offset, pointB.z ), 1, 1,
-                TextureManager.getInstance().getTextureID( textureName ) );
-        line.addTriangle( new SimpleVector( pointB.x, pointB.y + offset, pointB.z ), 0, 0,
-                new SimpleVector( pointB.x, pointB.y - offset, pointB.z ), 0, 1,
-                new SimpleVector( pointA.x, pointA.y - offset, pointA.z ), 1, 1,
-                TextureManager.getInstance().getTextureID( textureName ) );
+        target.addTriangle( new SimpleVector( pointA.x, pointA.y - offset, pointA.z ), u0, 0,
+                new SimpleVector( pointA.x, pointA.y + offset, pointA.z ), u0, 1,
+                new SimpleVector( pointB.x, pointB.y + offset, pointB.z ), u1, 1,
+                textureId );
+        target.addTriangle( new SimpleVector( pointB.x, pointB.y + offset, pointB.z ), u0, 0,
+                new SimpleVector( pointB.x, pointB.y - offset, pointB.z ), u0, 1,
+                new SimpleVector( pointA.x, pointA.y - offset, pointA.z ), u1, 1,
+                textureId );
         // Quad A, back-face:
-        line.addTriangle( new SimpleVector( pointB.x, pointB.y - offset, pointB.z ), 0, 0,
-                new SimpleVector( pointB.x, pointB.y + offset, pointB.z ), 0, 1,
-                new SimpleVector( pointA.x, pointA.y + offset, pointA.z ), 1, 1,
-                TextureManager.getInstance().getTextureID( textureName ) );
-        line.addTriangle( new SimpleVector( pointA.x, pointA.y + offset, pointA.z ), 0, 0,
-                new SimpleVector( pointA.x, pointA.y - offset, pointA.z ), 0, 1,
-                new SimpleVector( pointB.x, pointB.y - offset, pointB.z ), 1, 1,
-                TextureManager.getInstance().getTextureID( textureName ) );
+        target.addTriangle( new SimpleVector( pointB.x, pointB.y - offset, pointB.z ), u0, 0,
+                new SimpleVector( pointB.x, pointB.y + offset, pointB.z ), u0, 1,
+                new SimpleVector( pointA.x, pointA.y + offset, pointA.z ), u1, 1,
+                textureId );
+        target.addTriangle( new SimpleVector( pointA.x, pointA.y + offset, pointA.z ), u0, 0,
+                new SimpleVector( pointA.x, pointA.y - offset, pointA.z ), u0, 1,
+                new SimpleVector( pointB.x, pointB.y - offset, pointB.z ), u1, 1,
+                textureId );
         // Quad B:
-        line.addTriangle( new SimpleVector( pointA.x, pointA.y, pointA.z + offset ), 0, 0,
-                new SimpleVector( pointA.x, pointA.y, pointA.z - offset ), 0, 1,
-                new SimpleVector( pointB.x, pointB.y, pointB.z - offset ), 1, 1,
-                TextureManager.getInstance().getTextureID( textureName ) );
-        line.addTriangle( new SimpleVector( pointB.x, pointB.y, pointB.z - offset ), 0, 0,
-                new SimpleVector( pointB.x, pointB.y, pointB.z + offset ), 0, 1,
-                new SimpleVector( pointA.x, pointA.y, pointA.z + offset ), 1, 1,
-                TextureManager.getInstance().getTextureID( textureName ) );
+        target.addTriangle( new SimpleVector( pointA.x, pointA.y, pointA.z + offset ), u0, 0,
+                new SimpleVector( pointA.x, pointA.y, pointA.z - offset ), u0, 1,
+                new SimpleVector( pointB.x, pointB.y, pointB.z - offset ), u1, 1,
+                textureId );
+        target.addTriangle( new SimpleVector( pointB.x, pointB.y, pointB.z - offset ), u0, 0,
+                new SimpleVector( pointB.x, pointB.y, pointB.z + offset ), u0, 1,
+                new SimpleVector( pointA.x, pointA.y, pointA.z + offset ), u1, 1,
+                textureId );
         // Quad B, back-face:
-        line.addTriangle( new SimpleVector( pointB.x, pointB.y, pointB.z + offset ), 0, 0,
-                new SimpleVector( pointB.x, pointB.y, pointB.z - offset ), 0, 1,
-                new SimpleVector( pointA.x, pointA.y, pointA.z - offset ), 1, 1,
-                TextureManager.getInstance().getTextureID( textureName ) );
-        line.addTriangle( new SimpleVector( pointA.x, pointA.y, pointA.z - offset ), 0, 0,
-                new SimpleVector( pointA.x, pointA.y, pointA.z + offset ), 0, 1,
-                new SimpleVector( pointB.x, pointB.y, pointB.z + offset ), 1, 1,
-                TextureManager.getInstance().getTextureID( textureName ) );
+        target.addTriangle( new SimpleVector( pointB.x, pointB.y, pointB.z + offset ), u0, 0,
+                new SimpleVector( pointB.x, pointB.y, pointB.z - offset ), u0, 1,
+                new SimpleVector( pointA.x, pointA.y, pointA.z - offset ), u1, 1,
+                textureId );
+        target.addTriangle( new SimpleVector( pointA.x, pointA.y, pointA.z - offset ), u0, 0,
+                new SimpleVector( pointA.x, pointA.y, pointA.z + offset ), u0, 1,
+                new SimpleVector( pointB.x, pointB.y, pointB.z + offset ), u1, 1,
+                textureId );
+    }
 
-        // If you don't want the line to react to lighting:
-        line.setLighting( Object3D.LIGHTING_NO_LIGHTS );
-        line.setAdditionalColor( RGBColor.WHITE );
+    private static Object3D instance(Object3D template) {
+        // Shares the mesh of the template
+        Object3D object = new Object3D(template, true);
 
-        // done
-        return line;
+        // If you don't want the line to react to lighting:
+        object.setLighting( Object3D.LIGHTING_NO_LIGHTS );
+        object.setAdditionalColor( RGBColor.WHITE );
+        return object;
     }
 
+    /**
+     * All three axes in one object with one texture, so jPCT draws a gizmo with a single draw call.
+     * Gizmos of the same size and width share their mesh.
+     */
     public static Object3D createKartesianGizmo(float size, float width) {
-        return new Node3D(new Object3D[] {
-                createLine(SimpleVector.ORIGIN, SimpleVector.create(size, 0, 0),width, "RED"),
-                createLine(SimpleVector.ORIGIN, SimpleVector.create(0, size, 0),width, "GREEN"),
-                createLine(SimpleVector.ORIGIN, SimpleVector.create(0, 0, size),width, "BLUE")
-        });
+        String key = "gizmo;" + size + ";" + width;
+        Object3D template = geometryCache.get(key);
+        if(template == null) {
+            int textureId = TextureManager.getInstance().getTextureID( GIZMO_TEXTURE );
+            template = new Object3D( 24 );
+            addLine(template, SimpleVector.ORIGIN, SimpleVector.create(size, 0, 0), width, textureId, GIZMO_U[0], GIZMO_U[0]);
+            addLine(template, SimpleVector.ORIGIN, SimpleVector.create(0, size, 0), width, textureId, GIZMO_U[1], GIZMO_U[1]);
+            addLine(template, SimpleVector.ORIGIN, SimpleVector.create(0, 0, size), width, textureId, GIZMO_U[2], GIZMO_U[2]);
+            if(textureId != TextureManager.TEXTURE_NOTFOUND)
+                geometryCache.put(key, template);
+        }
+        return instance(template);
     }
 
     public static void createKartesianGizmo(float size, float width, Object3D node) {
-        node.addChild(createLine(SimpleVector.ORIGIN, SimpleVector.create(size, 0, 0),width, "RED"));
-        node.addChild(createLine(SimpleVector.ORIGIN, SimpleVector.create(0, size, 0),width, "GREEN"));
-        node.addChild(createLine(SimpleVector.ORIGIN, SimpleVector.create(0, 0, size),width, "BLUE"));
+        node.addChild(createKartesianGizmo(size, width));
+    }
+
+    /**
+     * Drops the cached templates, objects created before keep their meshes.
+     */
+    public static void clearGeometryCache() {
+        geometryCache.clear();
     }
 
     /*public static void lookAt( Object3D object, SimpleVector target )
@@ -0,0 +1,92 @@
+package gl.kev.ar.arengine.helper.jpct;
+
+import com.threed.jpct.Matrix;
+import com.threed.jpct.Object3D;
+import com.threed.jpct.SimpleVector;
+
+import org.joml.Matrix4f;
+import org.joml.Quaternionf;
+import org.joml.Vector3f;
+
+/**
+ * Created by kevingliewe on 18.10.26.
+ *
+ * Conversions between joml and jPCT types that write into caller supplied objects.
+ * If dest is null a new object is created, like joml does.
+ *
+ * Convention: ARToolKit and joml store matrices column major (OpenGL, column vectors).
+ * jPCT uses row vectors, so its rows are the columns of the joml matrix:
+ * jPCT row i = (m_i0, m_i1, m_i2, m_i3). This is the same layout Matrix.setDump produces
+ * from an ARToolKit float[16], so both paths can be mixed.
+ */
+public class JpctInterop {
+
+    public static Matrix toJpct(Matrix4f src, Matrix dest) {
+        if(dest == null)
+            dest = new Matrix();
+
+        dest.setRow(0, src.m00(), src.m01(), src.m02(), src.m03());
+        dest.setRow(1, src.m10(), src.m11(), src.m12(), src.m13());
+        dest.setRow(2, src.m20(), src.m21(), src.m22(), src.m23());
+        dest.setRow(3, src.m30(), src.m31(), src.m32(), src.m33());
+        return dest;
+    }
+
+    public static Matrix4f toJoml(Matrix src, Matrix4f dest) {
+        if(dest == null)
+            dest = new Matrix4f();
+
+        return dest.set(
+                src.get(0, 0), src.get(0, 1), src.get(0, 2), src.get(0, 3),
+                src.get(1, 0), src.get(1, 1), src.get(1, 2), src.get(1, 3),
+                src.get(2, 0), src.get(2, 1), src.get(2, 2), src.get(2, 3),
+                src.get(3, 0), src.get(3, 1), src.get(3, 2), src.get(3, 3));
+    }
+
+    /**
+     * Writes the rigid transformation (rotate by q, then translate by t) into dest.
+     * Gives the same result as toJpct(new Matrix4f().translationRotate(t, q), dest) without the Matrix4f.
+     */
+    public static Matrix toJpct(Vector3f t, Quaternionf q, Matrix dest) {
+        if(dest == null)
+            dest = new Matrix();
+
+        float w2 = q.w * q.w, x2 = q.x * q.x;
+        float y2 = q.y * q.y, z2 = q.z * q.z;
+        float zw = q.z * q.w, xy = q.x * q.y;
+        float xz = q.x * q.z, yw = q.y * q.w;
+        float yz = q.y * q.z, xw = q.x * q.w;
+
+        dest.setRow(0, w2 + x2 - z2 - y2, xy + zw + zw + xy, xz - yw + xz - yw, 0);
+        dest.setRow(1, -zw + xy - zw + xy, y2 - z2 + w2 - x2, yz + yz + xw + xw, 0);
+        dest.setRow(2, yw + xz + xz + yw, yz + yz - xw - xw, z2 - y2 - x2 + w2, 0);
+        dest.setRow(3, t.x, t.y, t.z, 1);
+        return dest;
+    }
+
+    public static SimpleVector toJpct(Vector3f src, SimpleVector dest) {
+        if(dest == null)
+            return new SimpleVector(src.x, src.y, src.z);
+
+        dest.set(src.x, src.y, src.z);
+        return dest;
+    }
+
+    public static Vector3f toJoml(SimpleVector src, Vector3f dest) {
+        if(dest == null)
+            dest = new Vector3f();
+
+        return dest.set(src.x, src.y, src.z);
+    }
+
+    /**
+     * Places the object like TrackableObject3d does with a marker transformation:
+     * translation from row 3, the whole matrix as rotation matrix.
+     * The matrix is kept by the object (jPCT does not copy it), so it must not be shared between objects.
+     */
+    public static void apply(Matrix transformation, Object3D object3d) {
+        object3d.clearTranslation();
+        object3d.translate(transformation.get(3, 0), transformation.get(3, 1), transformation.get(3, 2));
+        object3d.setRotationMatrix(transformation);
+    }
+}
@@ -0,0 +1,265 @@
+package gl.kev.ar.arengine.helper.jpct;
+
+import com.threed.jpct.Object3D;
+import com.threed.jpct.World;
+
+import net.gliewe.generic.function.IFuncR0;
+import net.gliewe.generic.tasks.Task;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import gl.kev.logging.GLog;
+
+/**
+ * Created by kevingliewe on 18.10.26.
+ *
+ * Node with several levels of detail, only one of them is visible.
+ * Level 0 is the detailed model, every further level has a switch distance from which on it is used.
+ * {@link #update(float)} selects the level from the distance to the camera, TrackableObject3d calls it
+ * with the marker distance on every marker update for all LodNodes in its subtree, also nested ones.
+ *
+ * A level switches to the coarser one at distance * (1 + hysteresis) and back at
+ * distance * (1 - hysteresis), so a marker at the border does not flicker between levels.
+ *
+ * Lazy levels are loaded on a background thread the first time they are needed, until then the
+ * current level stays visible. A level that fails to load is never selected.
+ */
+public class LodNode extends Node3D {
+
+    private static final long serialVersionUID = 1L;
+
+    private static class Level {
+        final float distance;
+        final Node3D node = new Node3D();
+        IFuncR0<Object3D[]> loader;
+        Task<Object3D[]> task;
+        volatile Object3D[] loaded;
+        boolean ready;
+        boolean failed;
+
+        Level(float distance) {
+            this.distance = distance;
+        }
+    }
+
+    private final List<Level> mLevels = new ArrayList<>();
+    private int mActive = 0;
+    private float mHysteresis = 0.1f;
+    private float mDistance = 0;
+    private World mWorldRef;
+
+    private int mTransparency = -1;
+    private int mTransparencyMode = -1;
+
+    public LodNode() {
+        super();
+    }
+
+    /**
+     * Adds a level with already loaded objects.
+     * Levels have to be added ordered by distance, the first one with distance 0.
+     * @return Index of the level.
+     */
+    public int addLevel(float distance, Object3D[] objects) {
+        Level level = newLevel(distance);
+        attach(level, objects);
+        return mLevels.size() - 1;
+    }
+
+    /**
+     * Adds a level whose objects come from loader.
+     * @param lazy Load on a background thread when the level is needed first, otherwise load now.
+     * @return Index of the level.
+     */
+    public int addLevel(float distance, IFuncR0<Object3D[]> loader, boolean lazy) {
+        Level level = newLevel(distance);
+        if(lazy) {
+            level.loader = loader;
+        } else {
+            Object3D[] objects = loader.call();
+            if(objects != null && objects.length > 0)
+                attach(level, objects);
+            else
+                fail(level, null);
+        }
+        return mLevels.size() - 1;
+    }
+
+    private Level newLevel(float distance) {
+        if(!mLevels.isEmpty() && distance < mLevels.get(mLevels.size() - 1).distance)
+            throw new IllegalArgumentException("LOD levels have to be added ordered by distance");
+
+        Level level = new Level(distance);
+        addChild(level.node);
+        level.node.setVisibility(getVisibility() && mLevels.isEmpty());
+        mLevels.add(level);
+        return level;
+    }
+
+    private void attach(Level level, Object3D[] objects) {
+        level.ready = true;
+        if(objects == null)
+            return;
+
+        for(Object3D object : objects) {
+            level.node.addChild(object);
+            if(mTransparency != -1)
+                object.setTransparency(mTransparency);
+            if(mTransparencyMode != -1)
+                object.setTransparencyMode(mTransparencyMode);
+            if(mWorldRef != null) {
+                // Added after World.buildAllObjects
+                mWorldRef.addObject(object);
+                object.build();
+            }
+        }
+    }
+
+    private void fail(Level level, Throwable cause) {
+        GLog.exception("Can't load LOD level at " + level.distance + ", keeping the current level", cause);
+        level.failed = true;
+    }
+
+    /**
+     * Selects the level for the given distance. Has to be called on the render thread.
+     * @param distance Distance between camera and node.
+     * @return true if a lazily loaded level was attached in this call, the bounds of the node changed.
+     */
+    public boolean update(float distance) {
+        mDistance = distance;
+        if(mLevels.isEmpty())
+            return false;
+
+        int target = mActive;
+        while(target + 1 < mLevels.size() && distance > mLevels.get(target + 1).distance * (1f + mHysteresis))
+            target++;
+        while(target > 0 && distance < mLevels.get(target).distance * (1f - mHysteresis))
+            target--;
+
+        if(target == mActive)
+            return false;
+        Level level = mLevels.get(target);
+        boolean loaded = !level.ready;
+        if(!isReady(level))
+            return false;
+        setActiveLevel(target);
+        return loaded;
+    }
+
+    /**
+     * @return true if the level can be shown, starts loading it if not.
+     */
+    private boolean isReady(Level level) {
+        if(level.ready)
+            return true;
+        if(level.failed)
+            return false;
+
+        if(level.task == null) {
+            final Level l = level;
+            GLog.debug("Loading LOD level at " + level.distance);
+            level.task = new Task<>(new IFuncR0<Object3D[]>() {
+                @Override
+                public Object3D[] call() {
+                    l.loaded = l.loader.call();
+                    return l.loaded;
+                }
+            }).start();
+            return false;
+        }
+
+        if(!level.task.isFinished())
+            return false;
+
+        Object3D[] loaded = level.loaded;
+        Throwable exception = level.task.getException();
+        level.loader = null;
+        level.task = null;
+        level.loaded = null;
+        if(exception != null || loaded == null || loaded.length == 0) {
+            // An empty level would make the model disappear
+            fail(level, exception);
+            return false;
+        }
+        attach(level, loaded);
+        return true;
+    }
+
+    private void setActiveLevel(int index) {
+        boolean visible = getVisibility();
+        mLevels.get(mActive).node.setVisibility(false);
+        mActive = index;
+        mLevels.get(mActive).node.setVisibility(visible);
+    }
+
+    /**
+     * @return true while a lazy level is loaded in the background.
+     */
+    public boolean isLoading() {
+        for(int i = 0 ; i < mLevels.size() ; i++)
+            if(mLevels.get(i).task != null)
+                return true;
+        return false;
+    }
+
+    public int getActiveLevel() {
+        return mActive;
+    }
+
+    public int getLevelCount() {
+        return mLevels.size();
+    }
+
+    /**
+     * @return Distance passed to the last {@link #update(float)}.
+     */
+    public float getDistance() {
+        return mDistance;
+    }
+
+    /**
+     * @param hysteresis Relative band around each switch distance, e.g. 0.1 for 10%.
+     */
+    public void setHysteresis(float hysteresis) {
+        mHysteresis = hysteresis;
+    }
+
+    /**
+     * Only the active level is shown.
+     */
+    @Override
+    public void setVisibility(boolean visible) {
+        if(visible == getVisibility())
+            return;
+        super.setVisibility(visible);
+        if(visible)
+            for(int i = 0 ; i < mLevels.size() ; i++)
+                if(i != mActive)
+                    mLevels.get(i).node.setVisibility(false);
+    }
+
+    @Override
+    public void addToWorld(World world) {
+        mWorldRef = world;
+        super.addToWorld(world);
+    }
+
+    @Override
+    public void removeFromWorld() {
+        super.removeFromWorld();
+        mWorldRef = null;
+    }
+
+    @Override
+    public void setTransparency(int trans) {
+        mTransparency = trans;
+        super.setTransparency(trans);
+    }
+
+    @Override
+    public void setTransparencyMode(int mode) {
+        mTransparencyMode = mode;
+        super.setTransparencyMode(mode);
+    }
+}
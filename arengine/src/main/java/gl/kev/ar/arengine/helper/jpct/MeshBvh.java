@@ -0,0 +1,95 @@
+package gl.kev.ar.arengine.helper.jpct;
+
+import com.threed.jpct.Matrix;
+import com.threed.jpct.Object3D;
+import com.threed.jpct.PolygonManager;
+import com.threed.jpct.SimpleVector;
+
+import org.joml.Intersectionf;
+import org.joml.Matrix4f;
+import org.joml.RayAabIntersection;
+import org.joml.Vector3f;
+
+/**
+ * Created by kevingliewe on 18.10.26.
+ *
+ * Triangles of a mesh in object space with a {@link Bvh} over them.
+ * Built once per jPCT Mesh, clones of an object share it.
+ */
+public class MeshBvh {
+    private static final float EPSILON = 1e-9f;
+
+    // Nine floats per triangle: v0, v1, v2
+    private final float[] mTriangles;
+    private final int mTriangleCount;
+    private final Bvh mBvh = new Bvh();
+
+    private MeshBvh(float[] triangles, int count) {
+        mTriangles = triangles;
+        mTriangleCount = count;
+
+        float[] boxes = new float[count * 6];
+        for(int i = 0 ; i < count ; i++) {
+            int t = i * 9, b = i * 6;
+            for(int a = 0 ; a < 3 ; a++) {
+                boxes[b + a] = Math.min(triangles[t + a], Math.min(triangles[t + 3 + a], triangles[t + 6 + a]));
+                boxes[b + 3 + a] = Math.max(triangles[t + a], Math.max(triangles[t + 3 + a], triangles[t + 6 + a]));
+            }
+        }
+        mBvh.build(boxes, count);
+    }
+
+    /**
+     * Reads the triangles of the object. jPCT only hands out transformed vertices,
+     * so they are transformed back with the current world transformation of the object.
+     * @return null if the object has no polygons (e.g. dummies or stripped meshes).
+     */
+    public static MeshBvh create(Object3D object) {
+        PolygonManager polygons = object.getPolygonManager();
+        int count = polygons.getMaxPolygonID();
+        if(count <= 0)
+            return null;
+
+        Matrix4f inverse = JpctInterop.toJoml(object.getWorldTransformation(new Matrix()), null).invertAffine();
+        Vector3f v = new Vector3f();
+        float[] triangles = new float[count * 9];
+        for(int p = 0 ; p < count ; p++) {
+            for(int i = 0 ; i < 3 ; i++) {
+                SimpleVector world = polygons.getTransformedVertex(p, i);
+                if(world == null)
+                    return null;
+                inverse.transformPosition(v.set(world.x, world.y, world.z));
+                triangles[p * 9 + i * 3] = v.x;
+                triangles[p * 9 + i * 3 + 1] = v.y;
+                triangles[p * 9 + i * 3 + 2] = v.z;
+            }
+        }
+        return new MeshBvh(triangles, count);
+    }
+
+    /**
+     * Nearest intersection of the ray with the triangles, both sides count.
+     * The direction does not need to be normalized, the result is the ray parameter t.
+     * @param ray Broadphase test, set to the same ray.
+     * @return t of the nearest hit with 0 < t <= maxT, or -1.
+     */
+    public float intersect(float ox, float oy, float oz, float dx, float dy, float dz, RayAabIntersection ray, float maxT) {
+        int hits = mBvh.collect(ray);
+        int[] indices = mBvh.getHits();
+        float nearest = -1;
+        for(int h = 0 ; h < hits ; h++) {
+            int t = indices[h] * 9;
+            float[] tri = mTriangles;
+            float d = Intersectionf.intersectRayTriangle(ox, oy, oz, dx, dy, dz,
+                    tri[t], tri[t + 1], tri[t + 2], tri[t + 3], tri[t + 4], tri[t + 5], tri[t + 6], tri[t + 7], tri[t + 8],
+                    EPSILON);
+            if(d > 0 && d <= maxT && (nearest < 0 || d < nearest))
+                nearest = d;
+        }
+        return nearest;
+    }
+
+    public int getTriangleCount() {
+        return mTriangleCount;
+    }
+}
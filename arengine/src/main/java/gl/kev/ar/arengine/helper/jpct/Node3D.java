@@ -1,7 +1,10 @@
 package gl.kev.ar.arengine.helper.jpct;
 
 
+import com.threed.jpct.Camera;
+import com.threed.jpct.Matrix;
 import com.threed.jpct.Object3D;
+import com.threed.jpct.SimpleVector;
 import com.threed.jpct.World;
 
 import java.util.ArrayList;
@@ -11,12 +14,23 @@ import java.util.List;
 /**
  * Created by Kevin on 20.08.2016.
  */
-public class Node3D extends Object3D {
+public class Node3D extends Object3D implements CachedWorldTransform {
 
     private List<Object3D> mChildren = new ArrayList<>();
 
     private World mWorld;
 
+    // World matrix cache: mLocal is the transformation relative to the parent,
+    // mWorld = mLocal * parent world. Local changes bump mLocalVersion.
+    private Object3D mParent;
+    private int mLocalVersion = 0;
+    private int mCachedLocalVersion = -1;
+    private int mCachedParentVersion = -1;
+    private int mWorldVersion = 0;
+    private final Matrix mLocal = new Matrix();
+    private final Matrix mWorldMatrix = new Matrix();
+    private final Matrix mScratch = new Matrix();
+
     public Node3D() {
         super(2);
     }
@@ -32,8 +46,13 @@ public class Node3D extends Object3D {
             addChild(o);
     }
 
+    /**
+     * Only a change of the state is propagated to the children.
+     */
     @Override
     public void setVisibility (boolean visible) {
+        if (visible == getVisibility())
+            return;
         super.setVisibility(visible);
         for (int i=0; i<mChildren.size(); i++) {
             mChildren.get(i).setVisibility(visible);
@@ -45,6 +64,7 @@ public class Node3D extends Object3D {
         super.addChild(object3D);
         // Keep it in a local list
         mChildren.add(object3D);
+        object3D.setVisibility(getVisibility());
     }
 
     @Override
@@ -80,11 +100,184 @@ public class Node3D extends Object3D {
 
         mWorld.removeObject(this);
         for (int i=0; i<mChildren.size(); i++) {
-            mWorld.removeObject(mChildren.get(i));
+            Object3D o = mChildren.get(i);
+            if(o instanceof Node3D)
+                ((Node3D)o).removeFromWorld();
+            else
+                mWorld.removeObject(o);
         }
         mWorld = null;
     }
 
+    /**
+     * World transformation, recomputed only if this node or one of its parents moved.
+     * With a cached parent (Node3D, TrackableObject3d) a parent move costs one matrix multiplication.
+     */
+    @Override
+    public Matrix getWorldMatrix() {
+        if (mParent instanceof CachedWorldTransform) {
+            CachedWorldTransform parent = (CachedWorldTransform) mParent;
+            Matrix parentWorld = parent.getWorldMatrix();
+            if (mCachedLocalVersion != mLocalVersion) {
+                // Local = world * parent world^-1, asked from jPCT only after local changes
+                getWorldTransformation(mLocal);
+                parentWorld.invert(mScratch);
+                mLocal.matMul(mScratch);
+                mCachedLocalVersion = mLocalVersion;
+                mCachedParentVersion = -1;
+            }
+            int parentVersion = parent.getWorldVersion();
+            if (parentVersion != mCachedParentVersion) {
+                mWorldMatrix.setTo(mLocal);
+                mWorldMatrix.matMul(parentWorld);
+                mCachedParentVersion = parentVersion;
+                mWorldVersion++;
+            }
+        } else if (mParent != null || mCachedLocalVersion != mLocalVersion) {
+            // Parents without cache can move unnoticed, the version only changes with the matrix
+            getWorldTransformation(mScratch);
+            mCachedLocalVersion = mLocalVersion;
+            if (!equals(mScratch, mWorldMatrix)) {
+                mWorldMatrix.setTo(mScratch);
+                mWorldVersion++;
+            }
+        }
+        return mWorldMatrix;
+    }
+
+    private static boolean equals(Matrix a, Matrix b) {
+        for (int row=0; row<4; row++)
+            for (int col=0; col<4; col++)
+                if (a.get(row, col) != b.get(row, col))
+                    return false;
+        return true;
+    }
+
+    @Override
+    public int getWorldVersion() {
+        getWorldMatrix();
+        return mWorldVersion;
+    }
+
+    /**
+     * Call after changing the matrices returned by getRotationMatrix or getTranslationMatrix directly.
+     * All other transformation methods do this automatically.
+     */
+    public void markTransformDirty() {
+        mLocalVersion++;
+    }
+
+    @Override
+    public void addParent(Object3D parent) {
+        super.addParent(parent);
+        mParent = parent;
+        markTransformDirty();
+    }
+
+    @Override
+    public void removeParent(Object3D parent) {
+        super.removeParent(parent);
+        if (mParent == parent)
+            mParent = null;
+        markTransformDirty();
+    }
+
+    @Override
+    public void translate(SimpleVector trans) {
+        super.translate(trans);
+        markTransformDirty();
+    }
+
+    @Override
+    public void translate(float x, float y, float z) {
+        super.translate(x, y, z);
+        markTransformDirty();
+    }
+
+    @Override
+    public void rotateX(float w) {
+        super.rotateX(w);
+        markTransformDirty();
+    }
+
+    @Override
+    public void rotateY(float w) {
+        super.rotateY(w);
+        markTransformDirty();
+    }
+
+    @Override
+    public void rotateZ(float w) {
+        super.rotateZ(w);
+        markTransformDirty();
+    }
+
+    @Override
+    public void rotateAxis(SimpleVector axis, float angle) {
+        super.rotateAxis(axis, angle);
+        markTransformDirty();
+    }
+
+    @Override
+    public void align(Camera camera) {
+        super.align(camera);
+        markTransformDirty();
+    }
+
+    @Override
+    public void align(Object3D object) {
+        super.align(object);
+        markTransformDirty();
+    }
+
+    @Override
+    public void scale(float scale) {
+        super.scale(scale);
+        markTransformDirty();
+    }
+
+    @Override
+    public void setScale(float scale) {
+        super.setScale(scale);
+        markTransformDirty();
+    }
+
+    @Override
+    public void setRotationMatrix(Matrix mat) {
+        super.setRotationMatrix(mat);
+        markTransformDirty();
+    }
+
+    @Override
+    public void setTranslationMatrix(Matrix mat) {
+        super.setTranslationMatrix(mat);
+        markTransformDirty();
+    }
+
+    @Override
+    public void clearRotation() {
+        super.clearRotation();
+        markTransformDirty();
+    }
+
+    @Override
+    public void clearTranslation() {
+        super.clearTranslation();
+        markTransformDirty();
+    }
+
+    @Override
+    public void setRotationPivot(SimpleVector pivot) {
+        super.setRotationPivot(pivot);
+        markTransformDirty();
+    }
+
+    @Override
+    public void setOrigin(SimpleVector origin) {
+        super.setOrigin(origin);
+        markTransformDirty();
+    }
+
     @Override
     public void setTransparency(int trans) {
         super.setTransparency(trans);
@@ -0,0 +1,268 @@
+package gl.kev.ar.arengine.helper.jpct;
+
+import com.threed.jpct.Matrix;
+import com.threed.jpct.Mesh;
+import com.threed.jpct.Object3D;
+
+import org.artoolkit.ar.jpct.TrackableObject3d;
+import org.joml.Matrix4f;
+import org.joml.RayAabIntersection;
+import org.joml.Vector3f;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+import gl.kev.logging.GLog;
+
+/**
+ * Created by kevingliewe on 18.10.26.
+ *
+ * Ray picking against the visible objects of the trackable subtrees, replaces World.calcMinDistance.
+ *
+ * Two levels: a {@link Bvh} over the world boxes of the objects, and a {@link MeshBvh} per mesh
+ * in object space. When the poses change only the world boxes are recomputed and the top level is
+ * refit, it is rebuilt when the set of visible objects changes. The mesh trees never change,
+ * the ray is transformed into object space instead.
+ *
+ * Objects are pickable if they are visible, have geometry and their collision mode includes
+ * Object3D.COLLISION_CHECK_OTHERS, the same objects World.calcMinDistance tests.
+ */
+public class PickingBvh {
+    // jPCT has no getter for the collision mode, COLLISION_CHECK_OTHERS sets this field
+    private static final Field POTENTIAL_COLLIDER = potentialColliderField();
+
+    private final IdentityHashMap<Mesh, MeshBvh> mMeshes = new IdentityHashMap<>();
+    private final IdentityHashMap<Mesh, float[]> mMeshBounds = new IdentityHashMap<>();
+
+    private ArrayList<Object3D> mObjects = new ArrayList<>();
+    private ArrayList<Object3D> mCollected = new ArrayList<>();
+    private float[] mBoxes = new float[0];
+    private int[] mVersions = new int[0];
+    private final Bvh mBvh = new Bvh();
+
+    private final RayAabIntersection mRay = new RayAabIntersection();
+    private final RayAabIntersection mLocalRay = new RayAabIntersection();
+    private final Matrix mJpctMatrix = new Matrix();
+    private final Matrix4f mWorld = new Matrix4f();
+    private final Vector3f mMin = new Vector3f();
+    private final Vector3f mMax = new Vector3f();
+    private final Vector3f mOrigin = new Vector3f();
+    private final Vector3f mDirection = new Vector3f();
+
+    private Object3D mPicked;
+    private int mRebuilds = 0;
+    private int mRefits = 0;
+
+    /**
+     * Brings the tree up to date with the current poses. Call before picking.
+     */
+    public void update(List<TrackableObject3d> trackables) {
+        mCollected.clear();
+        for(int i = 0 ; i < trackables.size() ; i++) {
+            TrackableObject3d trackable = trackables.get(i);
+            if(!trackable.getVisibility())
+                continue;
+            List<Object3D> children = trackable.getChildren();
+            for(int c = 0 ; c < children.size() ; c++)
+                collect(children.get(c));
+        }
+
+        if(!mCollected.equals(mObjects)) {
+            ArrayList<Object3D> objects = mObjects;
+            mObjects = mCollected;
+            mCollected = objects;
+
+            int count = mObjects.size();
+            if(mVersions.length < count) {
+                mBoxes = new float[count * 6];
+                mVersions = new int[count];
+            }
+            for(int i = 0 ; i < count ; i++)
+                updateBox(i);
+            mBvh.build(mBoxes, count);
+            mRebuilds++;
+            return;
+        }
+
+        boolean changed = false;
+        for(int i = 0 ; i < mObjects.size() ; i++) {
+            Object3D object = mObjects.get(i);
+            if(object instanceof CachedWorldTransform && ((CachedWorldTransform)object).getWorldVersion() == mVersions[i])
+                continue;
+            updateBox(i);
+            changed = true;
+        }
+        if(changed) {
+            mBvh.refit(mBoxes);
+            mRefits++;
+        }
+    }
+
+    private void collect(Object3D object) {
+        if(!object.getVisibility())
+            return;
+        if(isPotentialCollider(object) && meshBounds(object) != null)
+            mCollected.add(object);
+        if(object instanceof Node3D) {
+            List<Object3D> children = ((Node3D)object).getChildren();
+            for(int c = 0 ; c < children.size() ; c++)
+                collect(children.get(c));
+        }
+    }
+
+    private static Field potentialColliderField() {
+        try {
+            Field field = Object3D.class.getDeclaredField("isPotentialCollider");
+            field.setAccessible(true);
+            return field;
+        } catch (Exception ex) {
+            GLog.warn("Can't read the jPCT collision mode, all objects are pickable: " + ex);
+            return null;
+        }
+    }
+
+    private static boolean isPotentialCollider(Object3D object) {
+        if(POTENTIAL_COLLIDER == null)
+            return true;
+        try {
+            return POTENTIAL_COLLIDER.getBoolean(object);
+        } catch (IllegalAccessException ex) {
+            return true;
+        }
+    }
+
+    /**
+     * @return Object space box of the mesh, null for objects without geometry.
+     */
+    private float[] meshBounds(Object3D object) {
+        Mesh mesh = object.getMesh();
+        if(mesh == null)
+            return null;
+        if(mMeshBounds.containsKey(mesh))
+            return mMeshBounds.get(mesh);
+
+        float[] box = mesh.getBoundingBox();
+        // min/max per axis: minX, maxX, minY, maxY, minZ, maxZ. Meshes without vertices report min > max.
+        if(box == null || box[0] > box[1] || box[2] > box[3] || box[4] > box[5])
+            box = null;
+        mMeshBounds.put(mesh, box);
+        return box;
+    }
+
+    private void updateBox(int index) {
+        Object3D object = mObjects.get(index);
+        float[] box = meshBounds(object);
+        worldTransformation(object).transformAab(box[0], box[2], box[4], box[1], box[3], box[5], mMin, mMax);
+        int b = index * 6;
+        mBoxes[b] = mMin.x; mBoxes[b + 1] = mMin.y; mBoxes[b + 2] = mMin.z;
+        mBoxes[b + 3] = mMax.x; mBoxes[b + 4] = mMax.y; mBoxes[b + 5] = mMax.z;
+        if(object instanceof CachedWorldTransform)
+            mVersions[index] = ((CachedWorldTransform)object).getWorldVersion();
+    }
+
+    private Matrix4f worldTransformation(Object3D object) {
+        Matrix matrix = object instanceof CachedWorldTransform
+                ? ((CachedWorldTransform)object).getWorldMatrix()
+                : object.getWorldTransformation(mJpctMatrix);
+        return JpctInterop.toJoml(matrix, mWorld);
+    }
+
+    /**
+     * Distance along the ray to the nearest visible triangle, like World.calcMinDistance.
+     * The hit object is available from {@link #getPickedObject()} afterwards.
+     * @param dx Normalized direction.
+     * @return The distance or Object3D.COLLISION_NONE.
+     */
+    public float pick(float ox, float oy, float oz, float dx, float dy, float dz, float maxDistance) {
+        mPicked = null;
+        mRay.set(ox, oy, oz, dx, dy, dz);
+        int hits = mBvh.collect(mRay);
+        int[] indices = mBvh.getHits();
+
+        float nearest = maxDistance;
+        for(int h = 0 ; h < hits ; h++) {
+            Object3D object = mObjects.get(indices[h]);
+            float t = intersect(object, ox, oy, oz, dx, dy, dz, nearest);
+            if(t > 0 && t <= nearest) {
+                nearest = t;
+                mPicked = object;
+            }
+        }
+        return mPicked != null ? nearest : Object3D.COLLISION_NONE;
+    }
+
+    /**
+     * Picks several rays against the same state of the tree, e.g. for multi touch.
+     * @param rays Six floats per ray: origin and normalized direction.
+     * @param distances Receives the distance or Object3D.COLLISION_NONE per ray.
+     * @param objects Receives the hit object per ray, may be null.
+     * @return Number of rays that hit something.
+     */
+    public int pick(float[] rays, int count, float maxDistance, float[] distances, Object3D[] objects) {
+        int hits = 0;
+        for(int i = 0 ; i < count ; i++) {
+            int r = i * 6;
+            distances[i] = pick(rays[r], rays[r + 1], rays[r + 2], rays[r + 3], rays[r + 4], rays[r + 5], maxDistance);
+            if(objects != null)
+                objects[i] = mPicked;
+            if(mPicked != null)
+                hits++;
+        }
+        return hits;
+    }
+
+    private float intersect(Object3D object, float ox, float oy, float oz, float dx, float dy, float dz, float maxDistance) {
+        Mesh mesh = object.getMesh();
+        MeshBvh bvh;
+        if(mMeshes.containsKey(mesh)) {
+            bvh = mMeshes.get(mesh);
+        } else {
+            bvh = MeshBvh.create(object);
+            mMeshes.put(mesh, bvh);
+        }
+
+        if(bvh == null) {
+            // No triangles available, let jPCT test the object
+            mOrigin.set(ox, oy, oz);
+            float t = object.calcMinDistance(JpctInterop.toJpct(mOrigin, null), JpctInterop.toJpct(mDirection.set(dx, dy, dz), null), maxDistance);
+            return t != Object3D.COLLISION_NONE ? t : -1;
+        }
+
+        // Ray in object space. Affine maps keep the ray parameter, so t stays the world distance.
+        Matrix4f inverse = worldTransformation(object).invertAffine();
+        inverse.transformPosition(mOrigin.set(ox, oy, oz));
+        inverse.transformDirection(mDirection.set(dx, dy, dz));
+        mLocalRay.set(mOrigin.x, mOrigin.y, mOrigin.z, mDirection.x, mDirection.y, mDirection.z);
+        return bvh.intersect(mOrigin.x, mOrigin.y, mOrigin.z, mDirection.x, mDirection.y, mDirection.z, mLocalRay, maxDistance);
+    }
+
+    /**
+     * @return Object hit by the last pick, null if nothing was hit.
+     */
+    public Object3D getPickedObject() {
+        return mPicked;
+    }
+
+    /**
+     * Drops the triangles of all meshes, e.g. after a vertex controller changed a mesh.
+     */
+    public void invalidateMeshes() {
+        mMeshes.clear();
+        mMeshBounds.clear();
+        mObjects.clear();
+    }
+
+    public int getObjectCount() {
+        return mObjects.size();
+    }
+
+    public int getRebuilds() {
+        return mRebuilds;
+    }
+
+    public int getRefits() {
+        return mRefits;
+    }
+}
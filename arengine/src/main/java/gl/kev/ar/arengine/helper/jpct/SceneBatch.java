@@ -0,0 +1,243 @@
+package gl.kev.ar.arengine.helper.jpct;
+
+import com.threed.jpct.Matrix;
+import com.threed.jpct.Object3D;
+import com.threed.jpct.World;
+
+import org.mozilla.javascript.NativeArray;
+
+/**
+ * Created by kevingliewe on 18.10.26.
+ *
+ * Bulk scene operations for config scripts, available as "batch".
+ *
+ * Every call from a script goes through reflection and converts its arguments, so building a
+ * scene object by object is slow. These methods take whole arrays and do the work in Java:
+ *
+ *   var points = batch.circle(0, 0, 0, 200, 64);
+ *   var cubes = batch.spawn(com.threed.jpct.Primitives.getCube(10), points, marker);
+ *
+ * Coordinates are float arrays of x, y, z triples. The float arrays returned by this class and
+ * Java float[] are used as they are, JavaScript arrays are converted once, which boxes every element.
+ */
+public class SceneBatch {
+
+    private static final SceneBatch instance = new SceneBatch();
+
+    public static SceneBatch getInstance() {
+        return instance;
+    }
+
+    /**
+     * @return A Java array for scripts to fill, e.g. with computed positions.
+     */
+    public float[] floats(int length) {
+        return new float[length];
+    }
+
+    /**
+     * @return count points from start to end, both included.
+     */
+    public float[] line(float x0, float y0, float z0, float x1, float y1, float z1, int count) {
+        float[] points = new float[count * 3];
+        for (int i=0; i<count; i++) {
+            float t = count > 1 ? (float) i / (count - 1) : 0;
+            points[i * 3] = x0 + (x1 - x0) * t;
+            points[i * 3 + 1] = y0 + (y1 - y0) * t;
+            points[i * 3 + 2] = z0 + (z1 - z0) * t;
+        }
+        return points;
+    }
+
+    /**
+     * @return count points on a circle parallel to the marker plane.
+     */
+    public float[] circle(float x, float y, float z, float radius, int count) {
+        float[] points = new float[count * 3];
+        for (int i=0; i<count; i++) {
+            double angle = 2 * Math.PI * i / count;
+            points[i * 3] = x + radius * (float) Math.cos(angle);
+            points[i * 3 + 1] = y + radius * (float) Math.sin(angle);
+            points[i * 3 + 2] = z;
+        }
+        return points;
+    }
+
+    /**
+     * @return columns * rows points on the marker plane, row by row.
+     */
+    public float[] grid(float x, float y, float dx, float dy, int columns, int rows) {
+        float[] points = new float[columns * rows * 3];
+        int p = 0;
+        for (int r=0; r<rows; r++)
+            for (int c=0; c<columns; c++) {
+                points[p++] = x + c * dx;
+                points[p++] = y + r * dy;
+                points[p++] = 0;
+            }
+        return points;
+    }
+
+    /**
+     * Resamples a path with even spacing.
+     * @param path Corners of the path, x, y, z triples.
+     * @return count points along the path, the first and last corner included.
+     */
+    public float[] along(Object path, int count) {
+        float[] corners = toFloats(path);
+        int n = corners.length / 3;
+        if (n < 2 || count < 2)
+            return n > 0 && count > 0 ? line(corners[0], corners[1], corners[2], corners[0], corners[1], corners[2], count) : new float[0];
+
+        float[] lengths = new float[n];
+        for (int i=1; i<n; i++)
+            lengths[i] = lengths[i - 1] + distance(corners, i - 1, i);
+
+        float[] points = new float[count * 3];
+        int segment = 1;
+        for (int i=0; i<count; i++) {
+            float d = lengths[n - 1] * i / (count - 1);
+            while (segment < n - 1 && lengths[segment] < d)
+                segment++;
+            float length = lengths[segment] - lengths[segment - 1];
+            float t = length > 0 ? (d - lengths[segment - 1]) / length : 0;
+            for (int k=0; k<3; k++) {
+                float a = corners[(segment - 1) * 3 + k];
+                points[i * 3 + k] = a + (corners[segment * 3 + k] - a) * t;
+            }
+        }
+        return points;
+    }
+
+    private static float distance(float[] points, int a, int b) {
+        float dx = points[b * 3] - points[a * 3];
+        float dy = points[b * 3 + 1] - points[a * 3 + 1];
+        float dz = points[b * 3 + 2] - points[a * 3 + 2];
+        return (float) Math.sqrt(dx * dx + dy * dy + dz * dz);
+    }
+
+    /**
+     * One instance of the template per position, the instances share its mesh.
+     */
+    public Object3D[] spawn(Object3D template, Object positions) {
+        float[] xyz = toFloats(positions);
+        Object3D[] objects = new Object3D[xyz.length / 3];
+        for (int i=0; i<objects.length; i++) {
+            Object3D object = template.cloneObject();
+            object.translate(xyz[i * 3], xyz[i * 3 + 1], xyz[i * 3 + 2]);
+            objects[i] = object;
+        }
+        return objects;
+    }
+
+    /**
+     * Like {@link #spawn(Object3D, Object)} and adds the instances to parent, e.g. the marker.
+     */
+    public Object3D[] spawn(Object3D template, Object positions, Object3D parent) {
+        Object3D[] objects = spawn(template, positions);
+        attach(parent, objects);
+        return objects;
+    }
+
+    /**
+     * Sets the translation of every object, relative to its parent.
+     */
+    public void translate(Object3D[] objects, Object positions) {
+        float[] xyz = toFloats(positions);
+        check(objects, xyz, 3);
+        for (int i=0; i<objects.length; i++) {
+            objects[i].clearTranslation();
+            objects[i].translate(xyz[i * 3], xyz[i * 3 + 1], xyz[i * 3 + 2]);
+        }
+    }
+
+    /**
+     * Sets the rotation of every object from x, y, z angles in radians, applied in that order.
+     */
+    public void rotate(Object3D[] objects, Object angles) {
+        float[] xyz = toFloats(angles);
+        check(objects, xyz, 3);
+        for (int i=0; i<objects.length; i++) {
+            Object3D object = objects[i];
+            object.clearRotation();
+            object.rotateX(xyz[i * 3]);
+            object.rotateY(xyz[i * 3 + 1]);
+            object.rotateZ(xyz[i * 3 + 2]);
+        }
+    }
+
+    /**
+     * Sets the scale of every object, one value per object.
+     */
+    public void scale(Object3D[] objects, Object scales) {
+        float[] s = toFloats(scales);
+        check(objects, s, 1);
+        for (int i=0; i<objects.length; i++)
+            objects[i].setScale(s[i]);
+    }
+
+    /**
+     * Sets rotation and translation of every object.
+     * @param matrices 16 values per object in jPCT's row major order, translation in 12..14.
+     */
+    public void transform(Object3D[] objects, Object matrices) {
+        float[] m = toFloats(matrices);
+        check(objects, m, 16);
+        float[] dump = new float[16];
+        for (int i=0; i<objects.length; i++) {
+            System.arraycopy(m, i * 16, dump, 0, 16);
+            Matrix rotation = new Matrix();
+            rotation.setDump(dump);
+            rotation.set(3, 0, 0);
+            rotation.set(3, 1, 0);
+            rotation.set(3, 2, 0);
+            objects[i].setRotationMatrix(rotation);
+            objects[i].clearTranslation();
+            objects[i].translate(dump[12], dump[13], dump[14]);
+        }
+    }
+
+    public void attach(Object3D parent, Object3D[] children) {
+        for (int i=0; i<children.length; i++)
+            parent.addChild(children[i]);
+    }
+
+    /**
+     * Adds and builds objects that don't belong to a marker, e.g. from script_world.
+     */
+    public void addToWorld(World world, Object3D[] objects) {
+        for (int i=0; i<objects.length; i++)
+            objects[i].build();
+        world.addObjects(objects);
+    }
+
+    private static void check(Object3D[] objects, float[] values, int stride) {
+        if (values.length < objects.length * stride)
+            throw new IllegalArgumentException(objects.length + " objects need " + objects.length * stride + " values, got " + values.length);
+    }
+
+    /**
+     * float[] as is, other arrays converted.
+     */
+    static float[] toFloats(Object values) {
+        if (values instanceof float[])
+            return (float[]) values;
+        if (values instanceof double[]) {
+            double[] d = (double[]) values;
+            float[] f = new float[d.length];
+            for (int i=0; i<d.length; i++)
+                f[i] = (float) d[i];
+            return f;
+        }
+        if (values instanceof NativeArray) {
+            NativeArray array = (NativeArray) values;
+            float[] f = new float[(int) array.getLength()];
+            for (int i=0; i<f.length; i++) {
+                Object value = array.get(i, array);
+                f[i] = value instanceof Number ? ((Number) value).floatValue() : 0;
+            }
+            return f;
+        }
+        throw new IllegalArgumentException("Expected an array of numbers, got " + values);
+    }
+}
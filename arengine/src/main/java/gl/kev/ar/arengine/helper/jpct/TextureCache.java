@@ -0,0 +1,167 @@
+package gl.kev.ar.arengine.helper.jpct;
+
+import android.content.Context;
+
+import com.threed.jpct.Texture;
+import com.threed.jpct.TextureManager;
+import com.threed.jpct.Virtualizer;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import gl.kev.logging.GLog;
+
+/**
+ * Created by kevingliewe on 18.10.26.
+ *
+ * Textures that stay in the TextureManager across onPause/onResume, so a resume does not decode
+ * and upload everything again.
+ *
+ * Cached textures keep their pixel data (Texture.keepPixelData), jPCT uploads them to the new
+ * GL context when they are used first. The pixel data is accounted per texture; above the budget
+ * the least recently added or touched textures are virtualized, i.e. jPCT moves their pixel data
+ * to a Virtualizer on disk and reads it back for the next upload. Without a Virtualizer
+ * (see {@link #configure(Context, long, int, boolean)}) the budget is only reported.
+ */
+public class TextureCache {
+    private static TextureCache instance;
+
+    private static class Entry {
+        Texture texture;
+        int bytes;
+        boolean virtualized;
+    }
+
+    // Access order, the eldest entry is the least recently used one
+    private final LinkedHashMap<String, Entry> mEntries = new LinkedHashMap<>(16, 0.75f, true);
+    private long mBudget = 32 * 1024 * 1024;
+    private long mResidentBytes = 0;
+    private boolean mCompress = false;
+    private Virtualizer mVirtualizer;
+
+    public static synchronized TextureCache getInstance() {
+        if(instance == null)
+            instance = new TextureCache();
+        return instance;
+    }
+
+    /**
+     * @param budget Bytes of pixel data kept in memory.
+     * @param diskSize Megabytes the Virtualizer may use for textures over the budget, 0 for none.
+     * @param compress Use ETC1 texture compression and keep the pixel data compressed.
+     */
+    public synchronized void configure(Context context, long budget, int diskSize, boolean compress) {
+        mBudget = budget;
+        mCompress = compress;
+        if(diskSize > 0 && mVirtualizer == null) {
+            mVirtualizer = new Virtualizer(diskSize);
+            mVirtualizer.setContext(context);
+            TextureManager.getInstance().setVirtualizer(mVirtualizer);
+        }
+        trim();
+    }
+
+    public synchronized boolean contains(String name) {
+        return mEntries.containsKey(name);
+    }
+
+    /**
+     * Adds the texture to the TextureManager and the cache. Does nothing if the name is cached already.
+     * @return The cached texture.
+     */
+    public synchronized Texture add(String name, Texture texture) {
+        Entry entry = mEntries.get(name);
+        if(entry != null)
+            return entry.texture;
+
+        entry = new Entry();
+        mEntries.put(name, entry);
+        if(TextureManager.getInstance().containsTexture(name)) {
+            // Added by someone else before, take it over
+            texture = TextureManager.getInstance().getTexture(name);
+            prepare(entry, texture);
+        } else {
+            prepare(entry, texture);
+            TextureManager.getInstance().addTexture(name, texture);
+        }
+        trim();
+        return texture;
+    }
+
+    private void prepare(Entry entry, Texture texture) {
+        texture.keepPixelData(true);
+        if(mCompress) {
+            texture.setTextureCompression(true);
+            texture.compress();
+        }
+        entry.texture = texture;
+        entry.bytes = texture.getMemoryUsage();
+        entry.virtualized = false;
+        mResidentBytes += entry.bytes;
+    }
+
+    /**
+     * Marks the texture as used, so it is virtualized last.
+     */
+    public synchronized Texture get(String name) {
+        Entry entry = mEntries.get(name);
+        return entry != null ? entry.texture : null;
+    }
+
+    public synchronized void remove(String name) {
+        Entry entry = mEntries.remove(name);
+        if(entry == null)
+            return;
+        if(!entry.virtualized)
+            mResidentBytes -= entry.bytes;
+        TextureManager.getInstance().removeTexture(name);
+    }
+
+    private void trim() {
+        if(mResidentBytes <= mBudget)
+            return;
+
+        if(mVirtualizer == null) {
+            GLog.warn("Texture cache uses " + mResidentBytes + " bytes, budget is " + mBudget);
+            return;
+        }
+
+        for(Map.Entry<String, Entry> e : mEntries.entrySet()) {
+            if(mResidentBytes <= mBudget)
+                break;
+            Entry entry = e.getValue();
+            if(entry.virtualized)
+                continue;
+            TextureManager.getInstance().virtualize(entry.texture);
+            entry.virtualized = true;
+            mResidentBytes -= entry.bytes;
+        }
+    }
+
+    /**
+     * @return Bytes of pixel data of the texture, -1 if it is not cached.
+     */
+    public synchronized int getMemoryUsage(String name) {
+        Entry entry = mEntries.get(name);
+        return entry != null ? entry.bytes : -1;
+    }
+
+    /**
+     * @return Bytes of pixel data in memory, virtualized textures excluded.
+     */
+    public synchronized long getResidentMemoryUsage() {
+        return mResidentBytes;
+    }
+
+    public synchronized int getTextureCount() {
+        return mEntries.size();
+    }
+
+    public synchronized int getVirtualizedCount() {
+        int count = 0;
+        for(Entry entry : mEntries.values())
+            if(entry.virtualized)
+                count++;
+        return count;
+    }
+}
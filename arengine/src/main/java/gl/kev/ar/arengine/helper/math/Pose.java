@@ -0,0 +1,242 @@
+package gl.kev.ar.arengine.helper.math;
+
+import com.threed.jpct.Matrix;
+
+import org.joml.Matrix4f;
+import org.joml.Quaternionf;
+import org.joml.Vector3f;
+
+import java.util.Locale;
+
+import gl.kev.ar.arengine.helper.jpct.JpctInterop;
+
+/**
+ * Created by kevingliewe on 18.10.26.
+ *
+ * Rigid transformation: rotate by q, then translate by t (p' = q * p + t),
+ * the same as Matrix4f.translationRotate(t, q).
+ *
+ * All operations write into dest and never change their arguments.
+ * dest may be one of the arguments, and no operation allocates unless dest is null.
+ *
+ * Packed layout: [tx, ty, tz, qx, qy, qz, qw].
+ */
+public class Pose {
+    public static final int PACKED_SIZE = 7;
+
+    private final Vector3f t;
+    private final Quaternionf q;
+
+    public Pose() {
+        this.t = new Vector3f();
+        this.q = new Quaternionf();
+    }
+
+    public Pose(Pose pose) {
+        this();
+        set(pose);
+    }
+
+    public Pose(float x, float y, float z) {
+        this();
+        this.t.set(x, y, z);
+    }
+
+    public Pose(Matrix4f m) {
+        this();
+        set(m);
+    }
+
+    public Vector3f getT() {
+        return t;
+    }
+
+    public Quaternionf getQ() {
+        return q;
+    }
+
+    public Pose identity() {
+        t.set(0, 0, 0);
+        q.identity();
+        return this;
+    }
+
+    public Pose set(Pose pose) {
+        t.set(pose.t);
+        q.set(pose.q);
+        return this;
+    }
+
+    public Pose set(Vector3f translation, Quaternionf rotation) {
+        t.set(translation);
+        q.set(rotation);
+        return this;
+    }
+
+    /**
+     * @param m Rigid transformation, the rotation part has to be orthonormal.
+     */
+    public Pose set(Matrix4f m) {
+        m.getTranslation(t);
+        m.getNormalizedRotation(q);
+        return this;
+    }
+
+    public Pose set(Position position) {
+        return set(position.getV(), position.getQ());
+    }
+
+    public Pose set(float[] packed, int offset) {
+        t.set(packed[offset], packed[offset + 1], packed[offset + 2]);
+        q.set(packed[offset + 3], packed[offset + 4], packed[offset + 5], packed[offset + 6]);
+        return this;
+    }
+
+    public float[] get(float[] packed, int offset) {
+        if(packed == null)
+            packed = new float[offset + PACKED_SIZE];
+
+        packed[offset] = t.x;
+        packed[offset + 1] = t.y;
+        packed[offset + 2] = t.z;
+        packed[offset + 3] = q.x;
+        packed[offset + 4] = q.y;
+        packed[offset + 5] = q.z;
+        packed[offset + 6] = q.w;
+        return packed;
+    }
+
+    /**
+     * dest = a * b, i.e. first b then a. If b is the pose of a child relative to a,
+     * the result is the pose of the child in the space a lives in.
+     */
+    public static Pose compose(Pose a, Pose b, Pose dest) {
+        if(dest == null)
+            dest = new Pose();
+
+        float qx = a.q.x, qy = a.q.y, qz = a.q.z, qw = a.q.w;
+        float bx = b.t.x, by = b.t.y, bz = b.t.z;
+
+        // a.q * b.t  (v' = v + 2w(u x v) + 2u x (u x v))
+        float cx = qy * bz - qz * by + qw * bx;
+        float cy = qz * bx - qx * bz + qw * by;
+        float cz = qx * by - qy * bx + qw * bz;
+        float rx = bx + 2f * (qy * cz - qz * cy);
+        float ry = by + 2f * (qz * cx - qx * cz);
+        float rz = bz + 2f * (qx * cy - qy * cx);
+
+        float tx = a.t.x + rx, ty = a.t.y + ry, tz = a.t.z + rz;
+
+        float px = b.q.x, py = b.q.y, pz = b.q.z, pw = b.q.w;
+        dest.q.set(
+                qw * px + qx * pw + qy * pz - qz * py,
+                qw * py - qx * pz + qy * pw + qz * px,
+                qw * pz + qx * py - qy * px + qz * pw,
+                qw * pw - qx * px - qy * py - qz * pz);
+        dest.t.set(tx, ty, tz);
+        return dest;
+    }
+
+    /**
+     * dest = this * other
+     */
+    public Pose mul(Pose other, Pose dest) {
+        return compose(this, other, dest);
+    }
+
+    /**
+     * dest = this^-1, assumes a unit rotation.
+     */
+    public Pose invert(Pose dest) {
+        if(dest == null)
+            dest = new Pose();
+
+        // Conjugate rotation, translation is -(q^-1 * t)
+        float qx = -q.x, qy = -q.y, qz = -q.z, qw = q.w;
+        float bx = t.x, by = t.y, bz = t.z;
+
+        float cx = qy * bz - qz * by + qw * bx;
+        float cy = qz * bx - qx * bz + qw * by;
+        float cz = qx * by - qy * bx + qw * bz;
+        float rx = bx + 2f * (qy * cz - qz * cy);
+        float ry = by + 2f * (qz * cx - qx * cz);
+        float rz = bz + 2f * (qx * cy - qy * cx);
+
+        dest.q.set(qx, qy, qz, qw);
+        dest.t.set(-rx, -ry, -rz);
+        return dest;
+    }
+
+    /**
+     * dest = from^-1 * to, the pose of "to" in the space of "from".
+     */
+    public static Pose relative(Pose from, Pose to, Pose dest) {
+        if(dest == null)
+            dest = new Pose();
+
+        // Inline from^-1 so no temporary is needed and dest may alias from or to.
+        float qx = -from.q.x, qy = -from.q.y, qz = -from.q.z, qw = from.q.w;
+        float bx = to.t.x - from.t.x, by = to.t.y - from.t.y, bz = to.t.z - from.t.z;
+
+        float cx = qy * bz - qz * by + qw * bx;
+        float cy = qz * bx - qx * bz + qw * by;
+        float cz = qx * by - qy * bx + qw * bz;
+        float rx = bx + 2f * (qy * cz - qz * cy);
+        float ry = by + 2f * (qz * cx - qx * cz);
+        float rz = bz + 2f * (qx * cy - qy * cx);
+
+        float px = to.q.x, py = to.q.y, pz = to.q.z, pw = to.q.w;
+        dest.q.set(
+                qw * px + qx * pw + qy * pz - qz * py,
+                qw * py - qx * pz + qy * pw + qz * px,
+                qw * pz + qx * py - qy * px + qz * pw,
+                qw * pw - qx * px - qy * py - qz * pz);
+        dest.t.set(rx, ry, rz);
+        return dest;
+    }
+
+    /**
+     * dest = this * point
+     */
+    public Vector3f transformPosition(Vector3f point, Vector3f dest) {
+        if(dest == null)
+            dest = new Vector3f();
+
+        float qx = q.x, qy = q.y, qz = q.z, qw = q.w;
+        float bx = point.x, by = point.y, bz = point.z;
+
+        float cx = qy * bz - qz * by + qw * bx;
+        float cy = qz * bx - qx * bz + qw * by;
+        float cz = qx * by - qy * bx + qw * bz;
+
+        return dest.set(
+                bx + 2f * (qy * cz - qz * cy) + t.x,
+                by + 2f * (qz * cx - qx * cz) + t.y,
+                bz + 2f * (qx * cy - qy * cx) + t.z);
+    }
+
+    public Matrix4f toMatrix4f(Matrix4f dest) {
+        if(dest == null)
+            dest = new Matrix4f();
+
+        return dest.translationRotate(t.x, t.y, t.z, q);
+    }
+
+    public Matrix toJpct(Matrix dest) {
+        return JpctInterop.toJpct(t, q, dest);
+    }
+
+    public Position toPosition(Position dest) {
+        if(dest == null)
+            return new Position(new Vector3f(t), new Quaternionf(q));
+
+        dest.getV().set(t);
+        dest.getQ().set(q);
+        return dest;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.ROOT, "T: %s | Q: %s", this.t, this.q);
+    }
+}
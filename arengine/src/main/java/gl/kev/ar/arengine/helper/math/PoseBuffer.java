@@ -0,0 +1,283 @@
+package gl.kev.ar.arengine.helper.math;
+
+import com.threed.jpct.Matrix;
+
+import org.joml.Matrix4f;
+import org.joml.Quaternionf;
+
+import java.util.Arrays;
+
+/**
+ * Created by kevingliewe on 18.10.26.
+ *
+ * Stores many poses (see {@link Pose}) as structure of arrays, one float[] per component,
+ * so bulk operations over all markers run over contiguous memory instead of object graphs.
+ *
+ * Poses are addressed by the index returned from {@link #add()}. Indices stay valid for the
+ * lifetime of the buffer, growing the buffer only replaces the arrays.
+ *
+ * Bulk operations take a range [start, start + count) and never allocate unless dest is null.
+ * Not thread safe, the buffer belongs to the render thread.
+ */
+public class PoseBuffer {
+    private static final int DEFAULT_CAPACITY = 16;
+
+    private float[] tx, ty, tz;
+    private float[] qx, qy, qz, qw;
+    private int size = 0;
+
+    private final Matrix4f mScratchMatrix = new Matrix4f();
+    private final Quaternionf mScratchRotation = new Quaternionf();
+    private final Pose mScratchPose = new Pose();
+
+    public PoseBuffer() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public PoseBuffer(int capacity) {
+        if(capacity < 1)
+            capacity = 1;
+        tx = new float[capacity];
+        ty = new float[capacity];
+        tz = new float[capacity];
+        qx = new float[capacity];
+        qy = new float[capacity];
+        qz = new float[capacity];
+        qw = new float[capacity];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int capacity() {
+        return tx.length;
+    }
+
+    /**
+     * Appends an identity pose.
+     * @return Index of the new pose.
+     */
+    public int add() {
+        if(size == tx.length)
+            grow(tx.length * 2);
+        int index = size++;
+        identity(index);
+        return index;
+    }
+
+    public int add(Pose pose) {
+        int index = add();
+        set(index, pose);
+        return index;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    private void grow(int capacity) {
+        tx = Arrays.copyOf(tx, capacity);
+        ty = Arrays.copyOf(ty, capacity);
+        tz = Arrays.copyOf(tz, capacity);
+        qx = Arrays.copyOf(qx, capacity);
+        qy = Arrays.copyOf(qy, capacity);
+        qz = Arrays.copyOf(qz, capacity);
+        qw = Arrays.copyOf(qw, capacity);
+    }
+
+    public void identity(int index) {
+        tx[index] = 0; ty[index] = 0; tz[index] = 0;
+        qx[index] = 0; qy[index] = 0; qz[index] = 0; qw[index] = 1;
+    }
+
+    public void set(int index, Pose pose) {
+        tx[index] = pose.getT().x; ty[index] = pose.getT().y; tz[index] = pose.getT().z;
+        qx[index] = pose.getQ().x; qy[index] = pose.getQ().y; qz[index] = pose.getQ().z; qw[index] = pose.getQ().w;
+    }
+
+    public void set(int index, Position position) {
+        tx[index] = position.getV().x; ty[index] = position.getV().y; tz[index] = position.getV().z;
+        qx[index] = position.getQ().x; qy[index] = position.getQ().y; qz[index] = position.getQ().z; qw[index] = position.getQ().w;
+    }
+
+    /**
+     * Sets the pose from a column major rigid transformation, e.g. ARToolKit.queryMarkerTransformation.
+     * The rotation part is normalized first, like Matrix4f.getNormalizedRotation.
+     */
+    public void setTransformation(int index, float[] transformation) {
+        mScratchMatrix.set(transformation);
+        mScratchMatrix.getNormalizedRotation(mScratchRotation);
+        tx[index] = transformation[12]; ty[index] = transformation[13]; tz[index] = transformation[14];
+        qx[index] = mScratchRotation.x; qy[index] = mScratchRotation.y; qz[index] = mScratchRotation.z; qw[index] = mScratchRotation.w;
+    }
+
+    public Pose get(int index, Pose dest) {
+        if(dest == null)
+            dest = new Pose();
+
+        dest.getT().set(tx[index], ty[index], tz[index]);
+        dest.getQ().set(qx[index], qy[index], qz[index], qw[index]);
+        return dest;
+    }
+
+    public Position toPosition(int index, Position dest) {
+        if(dest == null)
+            dest = new Position();
+
+        dest.getV().set(tx[index], ty[index], tz[index]);
+        dest.getQ().set(qx[index], qy[index], qz[index], qw[index]);
+        return dest;
+    }
+
+    /**
+     * Writes count poses in the packed layout of {@link Pose#PACKED_SIZE} floats each.
+     */
+    public float[] getPacked(int start, int count, float[] dest, int offset) {
+        if(dest == null)
+            dest = new float[offset + count * Pose.PACKED_SIZE];
+
+        for(int i = start, o = offset ; i < start + count ; i++, o += Pose.PACKED_SIZE) {
+            dest[o] = tx[i]; dest[o + 1] = ty[i]; dest[o + 2] = tz[i];
+            dest[o + 3] = qx[i]; dest[o + 4] = qy[i]; dest[o + 5] = qz[i]; dest[o + 6] = qw[i];
+        }
+        return dest;
+    }
+
+    public void setPacked(int start, int count, float[] src, int offset) {
+        for(int i = start, o = offset ; i < start + count ; i++, o += Pose.PACKED_SIZE) {
+            tx[i] = src[o]; ty[i] = src[o + 1]; tz[i] = src[o + 2];
+            qx[i] = src[o + 3]; qy[i] = src[o + 4]; qz[i] = src[o + 5]; qw[i] = src[o + 6];
+        }
+    }
+
+    /**
+     * Exponential smoothing filter: moves every pose of the range the given factor towards
+     * the pose with the same index in target. Translations are lerped, rotations nlerped.
+     * @param factor 0 keeps the current pose, 1 takes the target.
+     */
+    public void smooth(PoseBuffer target, float factor, int start, int count) {
+        float keep = 1f - factor;
+        for(int i = start ; i < start + count ; i++) {
+            tx[i] = keep * tx[i] + factor * target.tx[i];
+            ty[i] = keep * ty[i] + factor * target.ty[i];
+            tz[i] = keep * tz[i] + factor * target.tz[i];
+
+            float ax = qx[i], ay = qy[i], az = qz[i], aw = qw[i];
+            float bx = target.qx[i], by = target.qy[i], bz = target.qz[i], bw = target.qw[i];
+            float f = ax * bx + ay * by + az * bz + aw * bw >= 0f ? factor : -factor;
+            float x = keep * ax + f * bx;
+            float y = keep * ay + f * by;
+            float z = keep * az + f * bz;
+            float w = keep * aw + f * bw;
+            float s = (float) (1.0 / Math.sqrt(x * x + y * y + z * z + w * w));
+            qx[i] = x * s; qy[i] = y * s; qz[i] = z * s; qw[i] = w * s;
+        }
+    }
+
+    /**
+     * dest[i] = reference * this[i] for every index of the range, see {@link Pose#compose(Pose, Pose, Pose)}.
+     * dest may be this buffer.
+     */
+    public PoseBuffer compose(Pose reference, int start, int count, PoseBuffer dest) {
+        if(dest == null)
+            dest = new PoseBuffer(start + count);
+        while(dest.size < start + count)
+            dest.add();
+
+        float ax = reference.getT().x, ay = reference.getT().y, az = reference.getT().z;
+        float rx = reference.getQ().x, ry = reference.getQ().y, rz = reference.getQ().z, rw = reference.getQ().w;
+
+        for(int i = start ; i < start + count ; i++) {
+            float bx = tx[i], by = ty[i], bz = tz[i];
+            float cx = ry * bz - rz * by + rw * bx;
+            float cy = rz * bx - rx * bz + rw * by;
+            float cz = rx * by - ry * bx + rw * bz;
+            dest.tx[i] = ax + bx + 2f * (ry * cz - rz * cy);
+            dest.ty[i] = ay + by + 2f * (rz * cx - rx * cz);
+            dest.tz[i] = az + bz + 2f * (rx * cy - ry * cx);
+
+            float px = qx[i], py = qy[i], pz = qz[i], pw = qw[i];
+            dest.qx[i] = rw * px + rx * pw + ry * pz - rz * py;
+            dest.qy[i] = rw * py - rx * pz + ry * pw + rz * px;
+            dest.qz[i] = rw * pz + rx * py - ry * px + rz * pw;
+            dest.qw[i] = rw * pw - rx * px - ry * py - rz * pz;
+        }
+        return dest;
+    }
+
+    /**
+     * dest[i] = reference^-1 * this[i], i.e. every pose of the range expressed in the space of reference,
+     * see {@link Pose#relative(Pose, Pose, Pose)}. dest may be this buffer.
+     */
+    public PoseBuffer relative(Pose reference, int start, int count, PoseBuffer dest) {
+        reference.invert(mScratchPose);
+        return compose(mScratchPose, start, count, dest);
+    }
+
+    /**
+     * Projects the translation of every pose of the range to screen coordinates.
+     * Uses the OpenGL convention: the projection maps to normalized device coordinates,
+     * screen x grows to the right and screen y downwards like Android views.
+     * Poses behind the camera (clip w <= 0) get NaN coordinates.
+     *
+     * @param projection Camera projection, e.g. ARToolKit.getProjectionMatrix as Matrix4f.
+     * @param dest Receives x, y pairs starting at offset.
+     */
+    public float[] project(Matrix4f projection, int width, int height, int start, int count, float[] dest, int offset) {
+        if(dest == null)
+            dest = new float[offset + count * 2];
+
+        float m00 = projection.m00(), m10 = projection.m10(), m20 = projection.m20(), m30 = projection.m30();
+        float m01 = projection.m01(), m11 = projection.m11(), m21 = projection.m21(), m31 = projection.m31();
+        float m03 = projection.m03(), m13 = projection.m13(), m23 = projection.m23(), m33 = projection.m33();
+        float halfWidth = width * 0.5f, halfHeight = height * 0.5f;
+
+        for(int i = start, o = offset ; i < start + count ; i++, o += 2) {
+            float x = tx[i], y = ty[i], z = tz[i];
+            float w = m03 * x + m13 * y + m23 * z + m33;
+            if(w <= 0f) {
+                dest[o] = Float.NaN;
+                dest[o + 1] = Float.NaN;
+                continue;
+            }
+            float invW = 1f / w;
+            float ndcX = (m00 * x + m10 * y + m20 * z + m30) * invW;
+            float ndcY = (m01 * x + m11 * y + m21 * z + m31) * invW;
+            dest[o] = (ndcX + 1f) * halfWidth;
+            dest[o + 1] = (1f - ndcY) * halfHeight;
+        }
+        return dest;
+    }
+
+    /**
+     * Writes the pose as jPCT matrix, see {@link gl.kev.ar.arengine.helper.jpct.JpctInterop#toJpct(org.joml.Vector3f, Quaternionf, Matrix)}.
+     */
+    public Matrix toJpct(int index, Matrix dest) {
+        if(dest == null)
+            dest = new Matrix();
+
+        float x = qx[index], y = qy[index], z = qz[index], w = qw[index];
+        float w2 = w * w, x2 = x * x, y2 = y * y, z2 = z * z;
+        float zw = z * w, xy = x * y, xz = x * z;
+        float yw = y * w, yz = y * z, xw = x * w;
+
+        dest.setRow(0, w2 + x2 - z2 - y2, xy + zw + zw + xy, xz - yw + xz - yw, 0);
+        dest.setRow(1, -zw + xy - zw + xy, y2 - z2 + w2 - x2, yz + yz + xw + xw, 0);
+        dest.setRow(2, yw + xz + xz + yw, yz + yz - xw - xw, z2 - y2 - x2 + w2, 0);
+        dest.setRow(3, tx[index], ty[index], tz[index], 1);
+        return dest;
+    }
+
+    /**
+     * Bulk export, dest[i - start + offset] receives pose i. Null entries are created.
+     */
+    public Matrix[] toJpct(int start, int count, Matrix[] dest, int offset) {
+        if(dest == null)
+            dest = new Matrix[offset + count];
+
+        for(int i = start, o = offset ; i < start + count ; i++, o++)
+            dest[o] = toJpct(i, dest[o]);
+        return dest;
+    }
+}
@@ -10,6 +10,8 @@ import org.joml.Vector3f;
 
 import java.util.Locale;
 
+import gl.kev.ar.arengine.helper.jpct.JpctInterop;
+
 /**
  * Created by Kevin on 07.08.2016.
  */
@@ -89,8 +91,8 @@ public class Position {
         if(dest == null)
             dest = new Position();
 
-        dest._v = this._v.mul(-1);
-        dest._q = this._q.invert();
+        this._v.mul(-1, dest._v);
+        this._q.invert(dest._q);
         return dest;
     }
 
@@ -111,13 +113,16 @@ public class Position {
     }
 
     public void apply(Object3D object3d) {
-        Matrix projMatrix = new Matrix();
+        apply(object3d, new Matrix());
+    }
 
-        float[] transformation = this.toMatrix4f(null).toArray(null);
-        projMatrix.setDump(transformation);
-        object3d.clearTranslation();
-        object3d.translate(projMatrix.getTranslation());
-        object3d.setRotationMatrix(projMatrix);
+    /**
+     * Places the object at this position.
+     * @param object3d
+     * @param dest Matrix that becomes the rotation matrix of the object, must not be used by other objects.
+     */
+    public void apply(Object3D object3d, Matrix dest) {
+        JpctInterop.apply(JpctInterop.toJpct(this._v, this._q, dest), object3d);
     }
 
 
@@ -0,0 +1,15 @@
+package gl.kev.ar.arengine.helper.profiling;
+
+/**
+ * Created by kevingliewe on 18.10.26.
+ *
+ * Thrown by the {@link FrameAllocationTracker} when it is configured to fail on a budget violation.
+ */
+public class AllocationBudgetExceededException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    public AllocationBudgetExceededException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,130 @@
+package gl.kev.ar.arengine.helper.profiling;
+
+import android.os.Debug;
+
+import java.lang.reflect.Method;
+
+/**
+ * Created by kevingliewe on 18.10.26.
+ *
+ * Source of "bytes allocated by the current thread".
+ * On a JVM (unit tests) the ThreadMXBean of the running VM is used,
+ * on a device the Debug allocation counters are used.
+ */
+public abstract class AllocationCounter {
+
+    /**
+     * @return Bytes allocated by the calling thread so far. Only differences are meaningful.
+     */
+    public abstract long getAllocatedBytes();
+
+    public void start() {}
+
+    public void stop() {}
+
+    /**
+     * Picks the best counter for the current runtime.
+     * @return Never null.
+     */
+    public static AllocationCounter create() {
+        AllocationCounter counter = JvmAllocationCounter.tryCreate();
+        if(counter != null)
+            return counter;
+        return new AndroidAllocationCounter();
+    }
+
+    /**
+     * Uses com.sun.management.ThreadMXBean#getThreadAllocatedBytes.
+     * It is resolved through reflection because java.lang.management does not exist on Android.
+     * The boxing done by Method.invoke is measured once and subtracted from every sample.
+     */
+    static class JvmAllocationCounter extends AllocationCounter {
+        private final Object mBean;
+        private final Method mGetThreadAllocatedBytes;
+        private long mOverhead = 0;
+
+        private JvmAllocationCounter(Object bean, Method getThreadAllocatedBytes) {
+            mBean = bean;
+            mGetThreadAllocatedBytes = getThreadAllocatedBytes;
+        }
+
+        static JvmAllocationCounter tryCreate() {
+            try {
+                Class<?> factory = Class.forName("java.lang.management.ManagementFactory");
+                Object bean = factory.getMethod("getThreadMXBean").invoke(null);
+                Class<?> beanClass = Class.forName("com.sun.management.ThreadMXBean");
+                if(!beanClass.isInstance(bean))
+                    return null;
+                Method setEnabled = beanClass.getMethod("setThreadAllocatedMemoryEnabled", boolean.class);
+                setEnabled.invoke(bean, true);
+                Method get = beanClass.getMethod("getThreadAllocatedBytes", long.class);
+
+                JvmAllocationCounter counter = new JvmAllocationCounter(bean, get);
+                if(counter.read() < 0)
+                    return null;
+                counter.calibrate();
+                return counter;
+            } catch (Throwable ex) {
+                return null;
+            }
+        }
+
+        private long read() {
+            try {
+                return (Long) mGetThreadAllocatedBytes.invoke(mBean, Thread.currentThread().getId());
+            } catch (Exception ex) {
+                return -1;
+            }
+        }
+
+        private void calibrate() {
+            long min = Long.MAX_VALUE;
+            for(int i = 0 ; i < 64 ; i++) {
+                long a = read();
+                long b = read();
+                if(b - a < min)
+                    min = b - a;
+            }
+            mOverhead = min;
+        }
+
+        @Override
+        public long getAllocatedBytes() {
+            // Subtracting the overhead on every read makes the difference of two reads overhead free.
+            return read() - mOverhead;
+        }
+    }
+
+    /**
+     * Uses the (per thread) Debug allocation counters of the Dalvik/ART runtime.
+     */
+    // There is no non-deprecated per thread allocation counter on these API levels
+    @SuppressWarnings("deprecation")
+    static class AndroidAllocationCounter extends AllocationCounter {
+        private boolean mRunning = false;
+
+        @Override
+        public long getAllocatedBytes() {
+            if(!mRunning)
+                return 0;
+            return Debug.getThreadAllocSize();
+        }
+
+        @Override
+        public void start() {
+            if(mRunning)
+                return;
+            Debug.resetThreadAllocSize();
+            Debug.startAllocCounting();
+            mRunning = true;
+        }
+
+        @Override
+        public void stop() {
+            if(!mRunning)
+                return;
+            Debug.stopAllocCounting();
+            mRunning = false;
+        }
+    }
+}
@@ -0,0 +1,195 @@
+package gl.kev.ar.arengine.helper.profiling;
+
+import gl.kev.logging.GLog;
+
+/**
+ * Created by kevingliewe on 18.10.26.
+ *
+ * Counts the bytes allocated per render frame and per pipeline stage.
+ * Meant for debug builds and unit tests: when disabled every call returns right away.
+ *
+ * Usage:
+ * <pre>
+ *     int STAGE = tracker.registerStage("markers", 0);
+ *     tracker.beginFrame();
+ *     tracker.beginStage(STAGE);
+ *     ...
+ *     tracker.endStage();
+ *     tracker.endFrame();
+ * </pre>
+ *
+ * A budget of -1 means "no budget". When a budget is exceeded a warning is logged,
+ * or an {@link AllocationBudgetExceededException} is thrown if {@link #setFailOnBudgetExceeded(boolean)} is set.
+ */
+public class FrameAllocationTracker {
+    public static final int MAX_STAGES = 16;
+    public static final long NO_BUDGET = -1;
+
+    private final AllocationCounter mCounter;
+    private boolean mEnabled = false;
+    private boolean mFailOnBudgetExceeded = false;
+
+    private final String[] mStageNames = new String[MAX_STAGES];
+    private final long[] mStageBudget = new long[MAX_STAGES];
+    private final long[] mStageBytes = new long[MAX_STAGES];
+    private final long[] mStagePeak = new long[MAX_STAGES];
+    private int mStageCount = 0;
+
+    private long mFrameBudget = NO_BUDGET;
+    private long mFrameStart;
+    private long mStageStart;
+    private int mCurrentStage = -1;
+    private boolean mInFrame = false;
+
+    private long mFrameCount = 0;
+    private long mFramesOverBudget = 0;
+    private long mLastFrameBytes = 0;
+    private long mPeakFrameBytes = 0;
+
+    public FrameAllocationTracker() {
+        this(AllocationCounter.create());
+    }
+
+    public FrameAllocationTracker(AllocationCounter counter) {
+        mCounter = counter;
+    }
+
+    public boolean isEnabled() { return mEnabled; }
+
+    public void setEnabled(boolean enabled) {
+        if(enabled == mEnabled)
+            return;
+        mEnabled = enabled;
+        mInFrame = false;
+        mCurrentStage = -1;
+        if(enabled)
+            mCounter.start();
+        else
+            mCounter.stop();
+    }
+
+    public void setFailOnBudgetExceeded(boolean fail) { mFailOnBudgetExceeded = fail; }
+
+    public void setFrameBudget(long bytes) { mFrameBudget = bytes; }
+
+    public long getFrameBudget() { return mFrameBudget; }
+
+    /**
+     * Registers a named pipeline stage. Registering the same name twice returns the same id.
+     * @param name Name used in reports.
+     * @param budget Allowed bytes per frame for this stage or {@link #NO_BUDGET}.
+     * @return Stage id to pass to {@link #beginStage(int)}.
+     */
+    public int registerStage(String name, long budget) {
+        for(int i = 0 ; i < mStageCount ; i++) {
+            if(mStageNames[i].equals(name)) {
+                mStageBudget[i] = budget;
+                return i;
+            }
+        }
+        if(mStageCount >= MAX_STAGES)
+            throw new IllegalStateException("Too many stages, max is " + MAX_STAGES);
+        mStageNames[mStageCount] = name;
+        mStageBudget[mStageCount] = budget;
+        return mStageCount++;
+    }
+
+    public void setStageBudget(int stage, long budget) { mStageBudget[stage] = budget; }
+
+    public void beginFrame() {
+        if(!mEnabled)
+            return;
+        for(int i = 0 ; i < mStageCount ; i++)
+            mStageBytes[i] = 0;
+        mCurrentStage = -1;
+        mInFrame = true;
+        mFrameStart = mCounter.getAllocatedBytes();
+    }
+
+    public void beginStage(int stage) {
+        if(!mEnabled || !mInFrame)
+            return;
+        if(mCurrentStage != -1)
+            endStage();
+        mCurrentStage = stage;
+        mStageStart = mCounter.getAllocatedBytes();
+    }
+
+    public void endStage() {
+        if(!mEnabled || mCurrentStage == -1)
+            return;
+        long bytes = mCounter.getAllocatedBytes() - mStageStart;
+        int stage = mCurrentStage;
+        mCurrentStage = -1;
+
+        mStageBytes[stage] += bytes;
+        if(mStageBytes[stage] > mStagePeak[stage])
+            mStagePeak[stage] = mStageBytes[stage];
+    }
+
+    public void endFrame() {
+        if(!mEnabled || !mInFrame)
+            return;
+        if(mCurrentStage != -1)
+            endStage();
+        long bytes = mCounter.getAllocatedBytes() - mFrameStart;
+        mInFrame = false;
+
+        mFrameCount++;
+        mLastFrameBytes = bytes;
+        if(bytes > mPeakFrameBytes)
+            mPeakFrameBytes = bytes;
+
+        boolean exceeded = mFrameBudget != NO_BUDGET && bytes > mFrameBudget;
+        for(int i = 0 ; i < mStageCount && !exceeded ; i++)
+            exceeded = mStageBudget[i] != NO_BUDGET && mStageBytes[i] > mStageBudget[i];
+
+        if(exceeded) {
+            mFramesOverBudget++;
+            onBudgetExceeded();
+        }
+    }
+
+    private void onBudgetExceeded() {
+        String message = "Allocation budget exceeded in frame " + mFrameCount + ": " + getLastFrameReport();
+        if(mFailOnBudgetExceeded)
+            throw new AllocationBudgetExceededException(message);
+        GLog.warn(message);
+    }
+
+    public long getFrameCount() { return mFrameCount; }
+
+    public long getFramesOverBudget() { return mFramesOverBudget; }
+
+    public long getLastFrameBytes() { return mLastFrameBytes; }
+
+    public long getPeakFrameBytes() { return mPeakFrameBytes; }
+
+    public long getLastStageBytes(int stage) { return mStageBytes[stage]; }
+
+    public long getPeakStageBytes(int stage) { return mStagePeak[stage]; }
+
+    public String getLastFrameReport() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("frame ").append(mLastFrameBytes).append(" B");
+        if(mFrameBudget != NO_BUDGET)
+            sb.append(" (budget ").append(mFrameBudget).append(" B)");
+        for(int i = 0 ; i < mStageCount ; i++) {
+            sb.append(" | ").append(mStageNames[i]).append(' ').append(mStageBytes[i]).append(" B");
+            if(mStageBudget[i] != NO_BUDGET)
+                sb.append(" (budget ").append(mStageBudget[i]).append(" B)");
+        }
+        return sb.toString();
+    }
+
+    public void reset() {
+        mFrameCount = 0;
+        mFramesOverBudget = 0;
+        mLastFrameBytes = 0;
+        mPeakFrameBytes = 0;
+        for(int i = 0 ; i < mStageCount ; i++) {
+            mStageBytes[i] = 0;
+            mStagePeak[i] = 0;
+        }
+    }
+}
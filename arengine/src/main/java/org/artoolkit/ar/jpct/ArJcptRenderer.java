@@ -1,6 +1,7 @@
 package org.artoolkit.ar.jpct;
 
 import com.threed.jpct.Camera;
+import com.threed.jpct.Config;
 import com.threed.jpct.FrameBuffer;
 import com.threed.jpct.Interact2D;
 import com.threed.jpct.Matrix;
@@ -10,18 +11,27 @@ import com.threed.jpct.World;
 
 import org.artoolkit.ar.base.ARToolKit;
 import org.artoolkit.ar.base.rendering.ARRenderer;
+import org.joml.Matrix4f;
 
+import java.util.ArrayList;
 import java.util.List;
 
 import javax.microedition.khronos.opengles.GL10;
 
+import gl.kev.ar.arengine.helper.ScriptHooks;
+import gl.kev.ar.arengine.helper.jpct.FrustumCuller;
+import gl.kev.ar.arengine.helper.jpct.LodNode;
+import gl.kev.ar.arengine.helper.jpct.PickingBvh;
+import gl.kev.ar.arengine.helper.math.PoseBuffer;
+import gl.kev.ar.arengine.helper.profiling.FrameAllocationTracker;
+
 /**
  * Created by portales on 11/11/15.
  */
 public class ArJcptRenderer extends ARRenderer {
 
     private final ArJpctActivity mActivity;
-    private List<TrackableObject3d> mTrackableObjects;
+    private volatile List<TrackableObject3d> mTrackableObjects;
 
     protected World mWorld;
     protected Camera mCamera;
@@ -29,6 +39,50 @@ public class ArJcptRenderer extends ARRenderer {
     private Matrix projMatrix = new Matrix();
     private boolean mFovSet;
 
+    private PoseBuffer mMarkerPoses = new PoseBuffer();
+    private final Matrix4f mProjection = new Matrix4f();
+
+    // Dirty frame detection, see needsRender(). The snapshot arrays are only used by the detection thread.
+    private volatile boolean mSceneDirty = true;
+    private boolean mSkipUnchangedFrames = true;
+    private float mTranslationTolerance = 0.5f;
+    private float mRotationTolerance = 0.001f;
+    private float[] mRenderedTransformations = new float[0];
+    private boolean[] mRenderedVisibility = new boolean[0];
+    private volatile long mRenderedFrames = 0;
+    private volatile long mSkippedFrames = 0;
+
+    private final FrustumCuller mFrustumCuller = new FrustumCuller();
+    private boolean mFrustumCulling = true;
+
+    private volatile SceneBuilder mSceneBuilder;
+    private boolean mIncrementalBuild = true;
+    private float mBuildBudget = 8;
+    private SceneBuilder.OnSceneProgressListener mSceneProgressListener;
+
+    private volatile SceneUpdate mPendingUpdate;
+
+    private List<MarkerRange> mMarkerRanges = new ArrayList<>();
+    private final List<TrackableObject3d> mCreated = new ArrayList<>();
+    private volatile MarkerPager mMarkerPager;
+    private MarkerPager mActivePager;
+
+    private final DebugLineRenderer mDebugLines = new DebugLineRenderer();
+    private final ScriptHooks mScriptHooks = new ScriptHooks(mFrustumCuller);
+
+    private static final float PICK_DISTANCE = 100000;
+    private final PickingBvh mPicker = new PickingBvh();
+    // Scratch state of the batched pick, guarded by mPicker
+    private float[] mPickRays = new float[0];
+    private float[] mPickDistances = new float[0];
+    private boolean[] mPickValid = new boolean[0];
+    private final SimpleVector mPickOrigin = new SimpleVector();
+    private final SimpleVector mPickRay = new SimpleVector();
+
+    private final FrameAllocationTracker mAllocationTracker = new FrameAllocationTracker();
+    private final int mStageMarkers = mAllocationTracker.registerStage("markers", FrameAllocationTracker.NO_BUDGET);
+    private final int mStageBeforeDraw = mAllocationTracker.registerStage("beforeDraw", FrameAllocationTracker.NO_BUDGET);
+    private final int mStageRender = mAllocationTracker.registerStage("render", FrameAllocationTracker.NO_BUDGET);
 
 
     public Camera getCamera() {
@@ -43,6 +97,15 @@ public class ArJcptRenderer extends ARRenderer {
         return projMatrix;
     }
 
+    /**
+     * Per frame allocation counter, disabled by default.
+     * Stages: "markers", "beforeDraw" and "render".
+     * @return The tracker used by {@link #draw(GL10)}.
+     */
+    public FrameAllocationTracker getAllocationTracker() {
+        return mAllocationTracker;
+    }
+
 
     public ArJcptRenderer(ArJpctActivity arJpctActivity) {
         mActivity = arJpctActivity;
@@ -69,12 +132,26 @@ public class ArJcptRenderer extends ARRenderer {
 
         mActivity.configureWorld(mWorld);
 
+        // Markers register their debug axes again while being populated
+        mDebugLines.clear();
+        mScriptHooks.clear();
+        // A pending update belongs to the previous scene
+        mPendingUpdate = null;
+
         // Get the activity list of trackable objects
         mTrackableObjects = mActivity.getTrackableObject3DList();
 
+        // All marker poses live in one buffer, each object keeps its index
+        mMarkerPoses = new PoseBuffer(mTrackableObjects.size());
+
         // Load all the markers and add the objects to the world
         for (int i=0; i<mTrackableObjects.size(); i++) {
             TrackableObject3d trackableObject = mTrackableObjects.get(i);
+            trackableObject.setPoseBuffer(mMarkerPoses, mMarkerPoses.add());
+            if (mIncrementalBuild) {
+                // Registered and built by the SceneBuilder over the next frames
+                continue;
+            }
             // Load the marker
             if (! trackableObject.registerMarker() ) {
                 // If there was a problem, return false
@@ -84,10 +161,34 @@ public class ArJcptRenderer extends ARRenderer {
             trackableObject.addToWorld(mWorld);
         }
 
+        // Only ids until a marker is seen, see MarkerRange
+        List<MarkerRange> ranges = mActivity.getMarkerRanges();
+        for (int i=0; i<ranges.size(); i++)
+            ranges.get(i).register();
+        mMarkerRanges = ranges;
+
+        // With the incremental build only the objects added by configureWorld
         mWorld.buildAllObjects();
 
+        if (mIncrementalBuild) {
+            SceneBuilder builder = new SceneBuilder(mTrackableObjects, mBuildBudget);
+            builder.setOnSceneProgressListener(mSceneProgressListener);
+            mSceneBuilder = builder;
+        } else {
+            mSceneBuilder = null;
+        }
+
         mFovSet = false;
 
+        mRenderedTransformations = new float[mTrackableObjects.size() * 16];
+        mRenderedVisibility = new boolean[mTrackableObjects.size()];
+        markDirty();
+
+        mFrustumCuller.invalidateAll();
+        synchronized (mPicker) {
+            mPicker.invalidateMeshes();
+        }
+
         return true;
     }
 
@@ -95,6 +196,267 @@ public class ArJcptRenderer extends ARRenderer {
     public void onSurfaceChanged(GL10 unused, int w, int h) {
         super.onSurfaceChanged(unused, w, h);
         mBuffer = new FrameBuffer(unused,w,h);
+        markDirty();
+    }
+
+    /**
+     * Compares visibility and transformation of every marker with the last rendered frame.
+     * The frame is skipped if no marker moved more than the tolerances, no trackable object
+     * or light changed and nobody called {@link #markDirty()}. The GL view is a transparent
+     * overlay, so skipping keeps the last rendered scene on top of the live camera image.
+     */
+    @Override
+    public boolean needsRender() {
+        SceneBuilder builder = mSceneBuilder;
+        if (builder != null && !builder.isFinished()) {
+            // Same thread as configureARScene, render every frame until all markers are attached
+            builder.step();
+            mRenderedFrames++;
+            return true;
+        }
+
+        SceneUpdate update = mPendingUpdate;
+        if (update != null && !update.isRegistered() && mTrackableObjects != null) {
+            // ARToolKit part on this thread, the world is changed in the next draw
+            update.register();
+            mRenderedFrames++;
+            return true;
+        }
+
+        boolean created = false;
+        int rangeMarkers = 0;
+        List<MarkerRange> ranges = mMarkerRanges;
+        for (int i=0; i<ranges.size(); i++) {
+            if (ranges.get(i).poll(mBuildBudget) > 0)
+                created = true;
+            rangeMarkers += ranges.get(i).getPendingCount();
+        }
+
+        List<TrackableObject3d> trackableObjects = mTrackableObjects;
+        MarkerPager pager = mMarkerPager;
+        if (pager != mActivePager) {
+            // Without a pager all markers are registered again
+            if (pager == null && trackableObjects != null)
+                mActivePager.release(trackableObjects);
+            mActivePager = pager;
+        }
+        if (pager != null && trackableObjects != null)
+            pager.update(trackableObjects, rangeMarkers);
+
+        if (!mSkipUnchangedFrames || trackableObjects == null) {
+            mRenderedFrames++;
+            return true;
+        }
+
+        boolean dirty = mSceneDirty || created;
+        mSceneDirty = false;
+        if (mScriptHooks.isAnimating())
+            dirty = true;
+
+        if (mRenderedVisibility.length != trackableObjects.size()) {
+            // The scene was updated
+            mRenderedTransformations = new float[trackableObjects.size() * 16];
+            mRenderedVisibility = new boolean[trackableObjects.size()];
+            dirty = true;
+        }
+
+        ARToolKit artk = ARToolKit.getInstance();
+        for (int i=0; i<trackableObjects.size(); i++) {
+            TrackableObject3d trackableObject = trackableObjects.get(i);
+            if (trackableObject.consumeChanged())
+                dirty = true;
+
+            boolean visible = artk.queryMarkerVisible(trackableObject.getmMarkerId());
+            if (visible != mRenderedVisibility[i]) {
+                mRenderedVisibility[i] = visible;
+                dirty = true;
+            }
+            if (visible && updateRenderedTransformation(i, artk.queryMarkerTransformation(trackableObject.getmMarkerId())))
+                dirty = true;
+        }
+
+        if (dirty)
+            mRenderedFrames++;
+        else
+            mSkippedFrames++;
+        return dirty;
+    }
+
+    /**
+     * Stores the transformation of marker i if it differs from the rendered one by more than the tolerances.
+     * @return true if it was stored.
+     */
+    private boolean updateRenderedTransformation(int i, float[] transformation) {
+        int offset = i * 16;
+        boolean changed = false;
+        for (int j=0; j<16 && !changed; j++) {
+            // Elements 12..14 are the translation in mm, the rest is rotation
+            float tolerance = j >= 12 ? mTranslationTolerance : mRotationTolerance;
+            changed = Math.abs(transformation[j] - mRenderedTransformations[offset + j]) > tolerance;
+        }
+        if (changed)
+            System.arraycopy(transformation, 0, mRenderedTransformations, offset, 16);
+        return changed;
+    }
+
+    /**
+     * Forces the next camera frame to be rendered, e.g. after a script changed the world.
+     * Can be called from any thread.
+     */
+    public void markDirty() {
+        mSceneDirty = true;
+    }
+
+    /**
+     * @param skip false renders every camera frame, like before dirty frame detection.
+     */
+    public void setSkipUnchangedFrames(boolean skip) {
+        mSkipUnchangedFrames = skip;
+        markDirty();
+    }
+
+    /**
+     * @param translation Marker movement in mm below which a frame counts as unchanged.
+     * @param rotation Change of a rotation matrix element below which a frame counts as unchanged.
+     */
+    public void setChangeTolerance(float translation, float rotation) {
+        mTranslationTolerance = translation;
+        mRotationTolerance = rotation;
+    }
+
+    /**
+     * Takes effect at the next configureARScene.
+     * @param enabled Register markers and build objects over several frames instead of all at once.
+     * @param budget Milliseconds per camera frame spent on building.
+     */
+    public void setIncrementalBuild(boolean enabled, float budget) {
+        mIncrementalBuild = enabled;
+        mBuildBudget = budget;
+    }
+
+    /**
+     * Progress of the incremental build, e.g. for a loading indicator.
+     * Called on the thread that delivers camera frames.
+     */
+    public void setOnSceneProgressListener(SceneBuilder.OnSceneProgressListener listener) {
+        mSceneProgressListener = listener;
+        SceneBuilder builder = mSceneBuilder;
+        if (builder != null)
+            builder.setOnSceneProgressListener(listener);
+    }
+
+    /**
+     * @return true while markers are still being registered and built.
+     */
+    public boolean isBuilding() {
+        SceneBuilder builder = mSceneBuilder;
+        return builder != null && !builder.isFinished();
+    }
+
+    /**
+     * Limits the markers registered with ARToolKit once the scene is built, see {@link MarkerPager}.
+     * Can be called from any thread.
+     * @param pager null registers all markers.
+     */
+    public void setMarkerPager(MarkerPager pager) {
+        mMarkerPager = pager;
+    }
+
+    public MarkerPager getMarkerPager() {
+        return mMarkerPager;
+    }
+
+    /**
+     * Changes the running scene between two frames, see {@link SceneUpdate}.
+     * Only one update can be pending, wait for {@link #isUpdatePending()} before the next one.
+     * @return false if another update is still pending.
+     */
+    public boolean updateScene(SceneUpdate update) {
+        if (mPendingUpdate != null)
+            return false;
+        mPendingUpdate = update;
+        return true;
+    }
+
+    public boolean isUpdatePending() {
+        return mPendingUpdate != null;
+    }
+
+    /**
+     * Adds the objects that marker ranges created for newly seen markers.
+     */
+    private void attachCreated() {
+        boolean created = false;
+        for (int i=0; i<mMarkerRanges.size(); i++)
+            created |= mMarkerRanges.get(i).drain(mCreated);
+        if (!created)
+            return;
+
+        List<TrackableObject3d> trackableObjects = new ArrayList<>(mTrackableObjects);
+        for (int i=0; i<mCreated.size(); i++) {
+            TrackableObject3d trackableObject = mCreated.get(i);
+            trackableObject.setPoseBuffer(mMarkerPoses, mMarkerPoses.add());
+            trackableObject.addToWorld(mWorld);
+            trackableObjects.add(trackableObject);
+        }
+        mCreated.clear();
+        mTrackableObjects = trackableObjects;
+        mActivity.setTrackableObjects(trackableObjects);
+        mFrustumCuller.invalidateAll();
+        synchronized (mPicker) {
+            mPicker.invalidateMeshes();
+        }
+    }
+
+    private void applyUpdate(SceneUpdate update) {
+        List<TrackableObject3d> removed = update.getRemoved();
+        for (int i=0; i<removed.size(); i++) {
+            mDebugLines.remove(removed.get(i));
+            mScriptHooks.remove(removed.get(i));
+        }
+
+        List<TrackableObject3d> trackableObjects = new ArrayList<>(mTrackableObjects);
+        update.apply(mWorld, trackableObjects);
+
+        // All marker poses in one buffer again
+        PoseBuffer poses = new PoseBuffer(trackableObjects.size());
+        for (int i=0; i<trackableObjects.size(); i++)
+            trackableObjects.get(i).setPoseBuffer(poses, poses.add());
+        mMarkerPoses = poses;
+
+        // The build was finished before the update was registered
+        mSceneBuilder = null;
+        mTrackableObjects = trackableObjects;
+        mActivity.setTrackableObjects(trackableObjects);
+
+        mFrustumCuller.invalidateAll();
+        synchronized (mPicker) {
+            mPicker.invalidateMeshes();
+        }
+        mPendingUpdate = null;
+        markDirty();
+    }
+
+    /**
+     * @param enabled Hide objects outside of the camera frustum before rendering.
+     */
+    public void setFrustumCulling(boolean enabled) {
+        mFrustumCulling = enabled;
+    }
+
+    /**
+     * Culler used by {@link #draw(GL10)}. Invalidate it after moving children of a trackable object.
+     */
+    public FrustumCuller getFrustumCuller() {
+        return mFrustumCuller;
+    }
+
+    public long getRenderedFrames() {
+        return mRenderedFrames;
+    }
+
+    public long getSkippedFrames() {
+        return mSkippedFrames;
     }
 
     /**
@@ -104,8 +466,15 @@ public class ArJcptRenderer extends ARRenderer {
      */
     @Override
     public final void draw(GL10 gl) {
+        mAllocationTracker.beginFrame();
+        mAllocationTracker.beginStage(mStageMarkers);
+
         mBuffer.clear();
 
+        SceneUpdate update = mPendingUpdate;
+        if (update != null && update.isRegistered())
+            applyUpdate(update);
+
         float[] projection = ARToolKit.getInstance().getProjectionMatrix();
         projMatrix.setDump(projection);
         SimpleVector translation = projMatrix.getTranslation();
@@ -129,16 +498,44 @@ public class ArJcptRenderer extends ARRenderer {
         mCamera.setPosition(translation);
         mCamera.setOrientation(dir, up);
 
-        for (int i=0; i<mTrackableObjects.size(); i++) {
-            TrackableObject3d trackableObject = mTrackableObjects.get(i);
+        // Markers still being built stay hidden
+        SceneBuilder builder = mSceneBuilder;
+        List<TrackableObject3d> trackableObjects;
+        if (builder != null) {
+            trackableObjects = builder.attach(mWorld);
+            if (builder.isFinished())
+                mSceneBuilder = null;
+        } else {
+            attachCreated();
+            trackableObjects = mTrackableObjects;
+        }
+        for (int i=0; i<trackableObjects.size(); i++) {
+            TrackableObject3d trackableObject = trackableObjects.get(i);
             trackableObject.updateMarkerTransformation();
+            List<LodNode> attached = trackableObject.getAttachedLevels();
+            if (!attached.isEmpty()) {
+                // New meshes, the cached bounds are stale. The picker notices the new visible objects itself.
+                for (int j=0; j<attached.size(); j++)
+                    mFrustumCuller.invalidate(attached.get(j));
+                attached.clear();
+            }
         }
+        mScriptHooks.run();
 
+        mAllocationTracker.beginStage(mStageBeforeDraw);
         mActivity.beforeDraw(gl);
 
+        mAllocationTracker.beginStage(mStageRender);
+        if (mFrustumCulling) {
+            mFrustumCuller.update(mCamera, mBuffer.getWidth(), mBuffer.getHeight(), Config.nearPlane, Config.farPlane);
+            mFrustumCuller.cull(mTrackableObjects);
+        }
         mWorld.renderScene(mBuffer);
         mWorld.draw(mBuffer);
+        mDebugLines.draw(gl, projection);
         mBuffer.display();
+
+        mAllocationTracker.endFrame();
     }
 
     /**
@@ -151,6 +548,10 @@ public class ArJcptRenderer extends ARRenderer {
     }
 
 
+    /**
+     * Point slightly in front of the nearest visible object under the screen position, or null.
+     * Uses the {@link PickingBvh} instead of testing the whole world.
+     */
     public SimpleVector pick(int mouseX, int mouseY)
     {
         // http://www.jpct.net/wiki/index.php?title=Picking
@@ -160,20 +561,124 @@ public class ArJcptRenderer extends ARRenderer {
         if (ray != null)
         {
             SimpleVector norm = ray.normalize(); // Just to be sure...
+            SimpleVector origin = mWorld.getCamera().getPosition();
 
-            float f = mWorld.calcMinDistance(mWorld.getCamera().getPosition(), norm, 100000);
+            float f;
+            synchronized (mPicker) {
+                mPicker.update(mTrackableObjects);
+                f = mPicker.pick(origin.x, origin.y, origin.z, norm.x, norm.y, norm.z, PICK_DISTANCE);
+            }
             if (f != Object3D.COLLISION_NONE)
             {
                 SimpleVector offset = new SimpleVector(norm);
                 norm.scalarMul(f);
                 norm = norm.calcSub(offset);
                 pos = new SimpleVector(norm);
-                pos.add(mWorld.getCamera().getPosition());
+                pos.add(origin);
             }
         }
         return pos;
     }
 
+    /**
+     * Batched {@link #pick(int, int)}, e.g. for multi touch. The tree is updated once for all points.
+     * Allocates nothing if dest is reused between calls.
+     * @param points x, y pairs.
+     * @param dest Receives the picked point per screen position, null where nothing was hit.
+     *             Existing vectors are overwritten.
+     * @return dest, or a new array if dest was null.
+     */
+    public SimpleVector[] pick(int[] points, int count, SimpleVector[] dest) {
+        if (dest == null)
+            dest = new SimpleVector[count];
+
+        synchronized (mPicker) {
+            if (mPickDistances.length < count) {
+                mPickRays = new float[count * 6];
+                mPickDistances = new float[count];
+                mPickValid = new boolean[count];
+            }
+            float[] rays = mPickRays;
+            float[] distances = mPickDistances;
+
+            SimpleVector origin = mWorld.getCamera().getPosition(mPickOrigin);
+            for (int i = 0; i < count; i++) {
+                SimpleVector ray = Interact2D.reproject2D3DWS(mWorld.getCamera(), mBuffer, points[i * 2], points[i * 2 + 1], mPickRay);
+                rays[i * 6] = origin.x; rays[i * 6 + 1] = origin.y; rays[i * 6 + 2] = origin.z;
+                mPickValid[i] = ray != null;
+                if (ray != null) {
+                    ray.normalize(ray);
+                    rays[i * 6 + 3] = ray.x; rays[i * 6 + 4] = ray.y; rays[i * 6 + 5] = ray.z;
+                } else {
+                    // Picked like the others, the result is dropped below
+                    rays[i * 6 + 3] = 0; rays[i * 6 + 4] = 0; rays[i * 6 + 5] = 1;
+                }
+            }
+
+            mPicker.update(mTrackableObjects);
+            mPicker.pick(rays, count, PICK_DISTANCE, distances, null);
+
+            for (int i = 0; i < count; i++) {
+                if (!mPickValid[i] || distances[i] == Object3D.COLLISION_NONE) {
+                    dest[i] = null;
+                    continue;
+                }
+                // Same point as pick(int, int): one unit before the hit
+                float f = distances[i] - 1f;
+                if (dest[i] == null)
+                    dest[i] = new SimpleVector();
+                dest[i].set(origin.x + rays[i * 6 + 3] * f, origin.y + rays[i * 6 + 4] * f, origin.z + rays[i * 6 + 5] * f);
+            }
+        }
+        return dest;
+    }
+
+    /**
+     * The object hit by the last {@link #pick(int, int)}, null if nothing was hit.
+     */
+    public Object3D getPickedObject() {
+        synchronized (mPicker) {
+            return mPicker.getPickedObject();
+        }
+    }
+
+    /**
+     * Marker axes drawn in one batch after the world, see ARMarker gizmos.
+     */
+    public DebugLineRenderer getDebugLines() {
+        return mDebugLines;
+    }
+
+    /**
+     * Per frame scripts of the markers, run after the markers were updated.
+     */
+    public ScriptHooks getScriptHooks() {
+        return mScriptHooks;
+    }
+
+    public PickingBvh getPicker() {
+        return mPicker;
+    }
+
+    /**
+     * Poses of all trackable objects, see {@link TrackableObject3d#getPoseIndex()}.
+     * Only valid on the render thread.
+     */
+    public PoseBuffer getMarkerPoses() {
+        return mMarkerPoses;
+    }
+
+    /**
+     * Projects the origin of every marker to screen space in one pass.
+     * Must be called on the render thread, e.g. from beforeDraw.
+     * @param dest x, y pairs in the order of {@link #getMarkerPoses()}, NaN for markers behind the camera.
+     * @return dest, or a new array if dest was null.
+     */
+    public float[] projectMarkers(float[] dest) {
+        mProjection.set(ARToolKit.getInstance().getProjectionMatrix());
+        return mMarkerPoses.project(mProjection, mBuffer.getWidth(), mBuffer.getHeight(), 0, mMarkerPoses.size(), dest, 0);
+    }
+
     public TrackableObject3d[] getTrackedObjects() {
         return this.mTrackableObjects.toArray(new TrackableObject3d[this.mTrackableObjects.size()]);
     }
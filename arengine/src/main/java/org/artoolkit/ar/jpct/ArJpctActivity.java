@@ -13,6 +13,7 @@ import java.util.List;
 
 import javax.microedition.khronos.opengles.GL10;
 
+import gl.kev.ar.arengine.helper.jpct.TextureCache;
 import gl.kev.ar.arengine.helper.math.Position;
 
 /**
@@ -24,6 +25,9 @@ public abstract class ArJpctActivity extends ARActivity {
 
     private ArJcptRenderer arJcptRenderer = new ArJcptRenderer(this);
     private List<TrackableObject3d> mTrackableObjects = null;
+    private final Position mTagTrackable = new Position();
+    private final Position mTagInverse = new Position();
+    private final Position mTag2D = new Position();
 
     @Override
     protected ARRenderer supplyRenderer() {
@@ -36,18 +40,32 @@ public abstract class ArJpctActivity extends ARActivity {
         return mTrackableObjects;
     }
 
+    public final List<MarkerRange> getMarkerRanges() {
+        List<MarkerRange> ranges = new ArrayList<MarkerRange>();
+        populateMarkerRanges(ranges);
+        return ranges;
+    }
+
+    /**
+     * Trackable objects after the renderer applied a {@link SceneUpdate}.
+     */
+    void setTrackableObjects(List<TrackableObject3d> trackableObjects) {
+        mTrackableObjects = trackableObjects;
+    }
+
     @Override
     public void onPause() {
         super.onPause();
-        // Remove all the textures from the texture managet
+        // Remove the textures from the texture manager, except the cached ones
         unloadTextures();
     }
 
     private void unloadTextures() {
         HashSet<String> names = TextureManager.getInstance().getNames();
+        TextureCache cache = TextureCache.getInstance();
         for (String name : names) {
-            // DO NOT remove the dummy texture
-            if (! name.equals(DUMMY_TEXTURE)) {
+            // DO NOT remove the dummy texture, cached textures are uploaded again after resume
+            if (! name.equals(DUMMY_TEXTURE) && ! cache.contains(name)) {
                 TextureManager.getInstance().removeTexture(name);
             }
         }
@@ -57,12 +75,26 @@ public abstract class ArJpctActivity extends ARActivity {
         return arJcptRenderer;
     }
 
+    /**
+     * Renders the next camera frame even if no marker moved.
+     * Scripts call this after changing the world, e.g. activity.markSceneDirty().
+     */
+    public void markSceneDirty() {
+        arJcptRenderer.markDirty();
+    }
+
     /**
      * Override this method to provide the list of objects that are to be tracked
      * @param list
      */
     protected abstract void populateTrackableObjects(List<TrackableObject3d> list);
 
+    /**
+     * Override this method to provide ranges of markers whose objects are created when they are seen
+     * @param list
+     */
+    protected void populateMarkerRanges(List<MarkerRange> list) {}
+
     /**
      * Override this method to add extra configuration to the world such as ambient light, etc
      * @param world
@@ -85,15 +117,22 @@ public abstract class ArJpctActivity extends ARActivity {
     }
 
     public Position getTag(String name) {
-        for(TrackableObject3d obj : mTrackableObjects) {
+        return getTag(name, null);
+    }
+
+    /**
+     * Like {@link #getTag(String)}, fills dest instead of allocating the result.
+     * @param dest Position to fill, a new one if null.
+     */
+    public synchronized Position getTag(String name, Position dest) {
+        for(int i = 0 ; i < mTrackableObjects.size() ; i++) {
+            TrackableObject3d obj = mTrackableObjects.get(i);
             if(!obj.getVisibility())
-                continue;;
-            for(String tagname : obj.getTags().keySet()) {
-                if(tagname.equals(name)) {
-                    Position pos = obj.getTags().get(name);
-                    Position trackablePositinon = obj.getPosition();
-                    return trackablePositinon.clone().add(pos.clone().invert());
-                }
+                continue;
+            Position pos = obj.getTags().get(name);
+            if(pos != null) {
+                Position trackablePositinon = obj.getPosition(mTagTrackable);
+                return trackablePositinon.add(pos.invert(mTagInverse), dest);
             }
         }
         return null;
@@ -114,8 +153,8 @@ public abstract class ArJpctActivity extends ARActivity {
         return project3Dto2D(obj);
     }
 
-    public SimpleVector getTag2DPos(String name) {
-        Position pos = getTag(name);
+    public synchronized SimpleVector getTag2DPos(String name) {
+        Position pos = getTag(name, mTag2D);
         if(pos == null)
             return null;
         return project3Dto2D(pos.getV().toSimpleVector());
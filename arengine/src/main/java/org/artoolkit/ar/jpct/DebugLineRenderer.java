@@ -0,0 +1,168 @@
+package org.artoolkit.ar.jpct;
+
+import android.opengl.GLES10;
+import android.opengl.GLES11;
+
+import org.artoolkit.ar.base.rendering.RenderUtils;
+import org.joml.Vector3f;
+
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.microedition.khronos.opengles.GL10;
+
+import gl.kev.ar.arengine.helper.math.Pose;
+import gl.kev.ar.arengine.helper.math.PoseBuffer;
+
+/**
+ * Created by kevingliewe on 18.10.26.
+ *
+ * Draws the axes of many markers as GL_LINES in a single draw call, instead of one jPCT
+ * gizmo object per marker.
+ *
+ * The axes are transformed on the CPU with the marker poses (camera space, like ARToolKit
+ * reports them) and drawn with the ARToolKit projection after jPCT drew the world.
+ * Uses OpenGL ES 1.x, like the FrameBuffer of ArJcptRenderer. The matrices are pushed and popped,
+ * texturing and the client states are restored to what jPCT expects.
+ */
+public class DebugLineRenderer {
+    private static final int FLOATS_PER_MARKER = 6 * 3;
+
+    private static final float[] AXIS_COLORS = {
+            1, 0, 0, 1,  1, 0, 0, 1,
+            0, 1, 0, 1,  0, 1, 0, 1,
+            0, 0, 1, 1,  0, 0, 1, 1,
+    };
+
+    private final List<TrackableObject3d> mMarkers = new ArrayList<>();
+    private final List<Float> mSizes = new ArrayList<>();
+    private boolean mEnabled = true;
+    private float mWidth = 4;
+
+    private float[] mVertices = new float[0];
+    private FloatBuffer mVertexBuffer;
+    private FloatBuffer mColorBuffer;
+    private final Pose mPose = new Pose();
+    private final Vector3f mPoint = new Vector3f();
+
+    public void setEnabled(boolean enabled) {
+        mEnabled = enabled;
+    }
+
+    public boolean isEnabled() {
+        return mEnabled;
+    }
+
+    public void setWidth(float width) {
+        mWidth = width;
+    }
+
+    /**
+     * Draws the axes of the marker while it is visible.
+     * @param size Length of the axes in mm.
+     */
+    public synchronized void addAxes(TrackableObject3d marker, float size) {
+        mMarkers.add(marker);
+        mSizes.add(size);
+    }
+
+    public synchronized void remove(TrackableObject3d marker) {
+        int i = mMarkers.indexOf(marker);
+        if (i < 0)
+            return;
+        mMarkers.remove(i);
+        mSizes.remove(i);
+    }
+
+    public synchronized void clear() {
+        mMarkers.clear();
+        mSizes.clear();
+    }
+
+    /**
+     * Draws the axes of all visible markers. Call on the render thread after the world was drawn.
+     * @param projection ARToolKit projection matrix.
+     * @return Number of markers drawn.
+     */
+    public synchronized int draw(GL10 gl, float[] projection) {
+        if (!mEnabled || mMarkers.isEmpty())
+            return 0;
+
+        ensureCapacity(mMarkers.size());
+
+        int count = 0;
+        for (int i = 0; i < mMarkers.size(); i++) {
+            TrackableObject3d marker = mMarkers.get(i);
+            PoseBuffer poses = marker.getPoseBuffer();
+            if (!marker.getVisibility() || poses == null)
+                continue;
+
+            poses.get(marker.getPoseIndex(), mPose);
+            float size = mSizes.get(i);
+            int offset = count * FLOATS_PER_MARKER;
+            for (int axis = 0; axis < 3; axis++) {
+                put(offset + axis * 6, 0, 0, 0);
+                put(offset + axis * 6 + 3, axis == 0 ? size : 0, axis == 1 ? size : 0, axis == 2 ? size : 0);
+            }
+            count++;
+        }
+        if (count == 0)
+            return 0;
+
+        mVertexBuffer.position(0);
+        mVertexBuffer.put(mVertices, 0, count * FLOATS_PER_MARKER);
+        mVertexBuffer.position(0);
+        mColorBuffer.position(0);
+
+        gl.glMatrixMode(GL10.GL_PROJECTION);
+        gl.glPushMatrix();
+        gl.glLoadMatrixf(projection, 0);
+        gl.glMatrixMode(GL10.GL_MODELVIEW);
+        gl.glPushMatrix();
+        gl.glLoadIdentity();
+
+        // jPCT may leave a vertex buffer object bound, the pointers below are client memory
+        GLES11.glBindBuffer(GLES11.GL_ARRAY_BUFFER, 0);
+        gl.glDisable(GL10.GL_TEXTURE_2D);
+        gl.glDisableClientState(GL10.GL_TEXTURE_COORD_ARRAY);
+        gl.glDisableClientState(GL10.GL_NORMAL_ARRAY);
+        gl.glEnableClientState(GL10.GL_VERTEX_ARRAY);
+        gl.glEnableClientState(GL10.GL_COLOR_ARRAY);
+
+        gl.glVertexPointer(3, GLES10.GL_FLOAT, 0, mVertexBuffer);
+        gl.glColorPointer(4, GLES10.GL_FLOAT, 0, mColorBuffer);
+        gl.glLineWidth(mWidth);
+        gl.glDrawArrays(GLES10.GL_LINES, 0, count * 6);
+
+        gl.glDisableClientState(GL10.GL_COLOR_ARRAY);
+        gl.glEnableClientState(GL10.GL_TEXTURE_COORD_ARRAY);
+        gl.glEnableClientState(GL10.GL_NORMAL_ARRAY);
+        gl.glEnable(GL10.GL_TEXTURE_2D);
+
+        gl.glMatrixMode(GL10.GL_PROJECTION);
+        gl.glPopMatrix();
+        gl.glMatrixMode(GL10.GL_MODELVIEW);
+        gl.glPopMatrix();
+        return count;
+    }
+
+    private void put(int offset, float x, float y, float z) {
+        mPose.transformPosition(mPoint.set(x, y, z), mPoint);
+        mVertices[offset] = mPoint.x;
+        mVertices[offset + 1] = mPoint.y;
+        mVertices[offset + 2] = mPoint.z;
+    }
+
+    private void ensureCapacity(int markers) {
+        if (mVertices.length >= markers * FLOATS_PER_MARKER)
+            return;
+
+        mVertices = new float[markers * FLOATS_PER_MARKER];
+        mVertexBuffer = RenderUtils.buildFloatBuffer(mVertices);
+        float[] colors = new float[markers * AXIS_COLORS.length];
+        for (int i = 0; i < markers; i++)
+            System.arraycopy(AXIS_COLORS, 0, colors, i * AXIS_COLORS.length, AXIS_COLORS.length);
+        mColorBuffer = RenderUtils.buildFloatBuffer(colors);
+    }
+}
@@ -0,0 +1,323 @@
+package org.artoolkit.ar.jpct;
+
+import org.artoolkit.ar.base.ARToolKit;
+
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import gl.kev.logging.GLog;
+
+/**
+ * Created by kevingliewe on 18.10.26.
+ *
+ * Keeps at most a fixed number of markers registered with ARToolKit, the tracker cost grows with
+ * every registered marker.
+ *
+ * The resident set are the markers seen in the last frames, then their neighbours from the
+ * configured graph, e.g. the pages next to a tracked page of a catalog. The remaining slots probe
+ * the cold markers in turns. A probed marker keeps its slot for {@link #PROBE_NANOS} before the next
+ * cold marker gets it, because registering a marker loads its pattern or NFT data again.
+ * Registrations of one pass are limited by a time budget, the rest follows in the next passes.
+ * Paged out markers are removed from ARToolKit, their trackable objects stay in the world and are
+ * hidden like any marker that is not visible.
+ *
+ * Markers registered by others, e.g. the unseen markers of a MarkerRange, are passed to
+ * {@link #update(List, int)} and count against the cap. Visible markers are kept even above it.
+ *
+ * {@link #update(List, int)} runs on the thread that delivers camera frames, see ArJcptRenderer.needsRender.
+ */
+public class MarkerPager {
+
+    /**
+     * Registers the markers with the tracker, ARToolKit unless replaced, e.g. in tests.
+     */
+    public interface Registrar {
+        boolean isRegistered(TrackableObject3d trackableObject);
+        boolean isVisible(TrackableObject3d trackableObject);
+        /**
+         * @return false if the marker can't be registered.
+         */
+        boolean register(TrackableObject3d trackableObject);
+        void unregister(TrackableObject3d trackableObject);
+    }
+
+    private static final Registrar AR_TOOLKIT = new Registrar() {
+        @Override
+        public boolean isRegistered(TrackableObject3d trackableObject) {
+            return trackableObject.getmMarkerId() != -1;
+        }
+
+        @Override
+        public boolean isVisible(TrackableObject3d trackableObject) {
+            return ARToolKit.getInstance().queryMarkerVisible(trackableObject.getmMarkerId());
+        }
+
+        @Override
+        public boolean register(TrackableObject3d trackableObject) {
+            return trackableObject.registerMarker();
+        }
+
+        @Override
+        public void unregister(TrackableObject3d trackableObject) {
+            trackableObject.unregisterMarker();
+        }
+    };
+
+    // Markers seen within this many frames are kept
+    private static final int KEEP_FRAMES = 30;
+    // Frames between two passes
+    private static final int PASS_FRAMES = 3;
+    // Time a probed marker stays registered before its slot goes to the next cold marker
+    static final long PROBE_NANOS = 1000000000L;
+    // Registrations per pass, at least one
+    private static final long REGISTER_BUDGET_NANOS = 4000000L;
+
+    private final int mMaxActive;
+    private final Registrar mRegistrar;
+    private final Map<TrackableObject3d, TrackableObject3d[]> mNeighbours = new IdentityHashMap<>();
+
+    private List<TrackableObject3d> mObjects;
+    private int[] mLastSeen = new int[0];
+    private boolean[] mFailed = new boolean[0];
+    private boolean[] mWanted = new boolean[0];
+    private boolean[] mProbing = new boolean[0];
+    private long[] mProbeStart = new long[0];
+    private int[][] mNeighbourIndices = new int[0][];
+
+    private int mFrame = 0;
+    private int mLastPass = -PASS_FRAMES;
+    private int mCursor = 0;
+    private int mActive = 0;
+    private int mReserved = 0;
+    private boolean mWarned = false;
+    private long mPageIns = 0;
+    private long mPageOuts = 0;
+
+    /**
+     * @param maxActive Markers registered at the same time.
+     */
+    public MarkerPager(int maxActive) {
+        this(maxActive, AR_TOOLKIT);
+    }
+
+    public MarkerPager(int maxActive, Registrar registrar) {
+        if (maxActive < 1)
+            throw new IllegalArgumentException("maxActive must be at least 1");
+        mMaxActive = maxActive;
+        mRegistrar = registrar;
+    }
+
+    /**
+     * Markers paged in together with the given one while it is tracked.
+     * Set all neighbours before the pager is handed to the renderer.
+     */
+    public void setNeighbours(TrackableObject3d trackableObject, TrackableObject3d... neighbours) {
+        mNeighbours.put(trackableObject, neighbours);
+        mObjects = null;
+    }
+
+    public int getMaxActive() {
+        return mMaxActive;
+    }
+
+    /**
+     * @return Markers registered by the pager after the last pass, the reserved ones not included.
+     */
+    public int getActiveCount() {
+        return mActive;
+    }
+
+    public long getPageIns() {
+        return mPageIns;
+    }
+
+    public long getPageOuts() {
+        return mPageOuts;
+    }
+
+    /**
+     * Records the visible markers and, every few frames, registers and removes markers
+     * so only the resident set is registered.
+     * @param trackableObjects Current trackable objects of the renderer.
+     * @param reserved Markers registered by others, e.g. MarkerRange.getPendingCount().
+     */
+    public void update(List<TrackableObject3d> trackableObjects, int reserved) {
+        update(trackableObjects, reserved, System.nanoTime());
+    }
+
+    void update(List<TrackableObject3d> trackableObjects, int reserved, long now) {
+        if (trackableObjects != mObjects)
+            reset(trackableObjects);
+        mFrame++;
+
+        int count = trackableObjects.size();
+        for (int i=0; i<count; i++) {
+            TrackableObject3d trackableObject = trackableObjects.get(i);
+            if (mRegistrar.isRegistered(trackableObject) && mRegistrar.isVisible(trackableObject))
+                mLastSeen[i] = mFrame;
+        }
+
+        if (mFrame - mLastPass < PASS_FRAMES)
+            return;
+        mLastPass = mFrame;
+
+        int capacity = Math.max(mMaxActive - reserved, 0);
+        if (capacity == 0 && !mWarned)
+            GLog.warn("Marker ranges use " + reserved + " of " + mMaxActive + " active markers, only visible markers stay registered");
+        mWarned = capacity == 0;
+        mReserved = reserved;
+
+        Arrays.fill(mWanted, false);
+        int wanted = 0;
+        // Visible markers first, then the recently seen ones, then their neighbours
+        for (int i=0; i<count; i++)
+            if (mLastSeen[i] == mFrame) {
+                mWanted[i] = true;
+                wanted++;
+            }
+        for (int i=0; i<count && wanted<capacity; i++)
+            if (isRecent(i) && !mWanted[i]) {
+                mWanted[i] = true;
+                wanted++;
+            }
+        for (int i=0; i<count && wanted<capacity; i++) {
+            int[] neighbours = mNeighbourIndices[i];
+            if (neighbours == null || !isRecent(i))
+                continue;
+            for (int j=0; j<neighbours.length && wanted<capacity; j++)
+                if (!mWanted[neighbours[j]] && !mFailed[neighbours[j]]) {
+                    mWanted[neighbours[j]] = true;
+                    wanted++;
+                }
+        }
+        // Probes keep their slot for a while, also until they are registered
+        for (int i=0; i<count; i++) {
+            if (!mProbing[i])
+                continue;
+            boolean waiting = !mRegistrar.isRegistered(trackableObjects.get(i)) || now - mProbeStart[i] < PROBE_NANOS;
+            if (mWanted[i] || mFailed[i] || !waiting || wanted >= capacity) {
+                mProbing[i] = false;
+                continue;
+            }
+            mWanted[i] = true;
+            wanted++;
+        }
+        // Free slots probe the next cold markers
+        for (int n=0; n<count && wanted<capacity; n++) {
+            int i = mCursor;
+            mCursor = (mCursor + 1) % count;
+            if (!mWanted[i] && !mFailed[i]) {
+                mWanted[i] = true;
+                mProbing[i] = true;
+                wanted++;
+            }
+        }
+
+        // Remove first, so the tracker never holds more than the cap
+        mActive = 0;
+        for (int i=0; i<count; i++) {
+            TrackableObject3d trackableObject = trackableObjects.get(i);
+            if (!mWanted[i] && mRegistrar.isRegistered(trackableObject)) {
+                mRegistrar.unregister(trackableObject);
+                mPageOuts++;
+            }
+        }
+        long start = System.nanoTime();
+        boolean registered = false;
+        for (int i=0; i<count; i++) {
+            TrackableObject3d trackableObject = trackableObjects.get(i);
+            if (!mWanted[i])
+                continue;
+            if (!mRegistrar.isRegistered(trackableObject)) {
+                // Loads the marker data, the rest waits for the next pass
+                if (registered && System.nanoTime() - start >= REGISTER_BUDGET_NANOS)
+                    continue;
+                registered = true;
+                if (!mRegistrar.register(trackableObject)) {
+                    GLog.error("Can't register marker " + trackableObject.getName() + ", it is not paged in again", null);
+                    mFailed[i] = true;
+                    mProbing[i] = false;
+                    continue;
+                }
+                if (mProbing[i])
+                    mProbeStart[i] = now;
+                mPageIns++;
+            }
+            mActive++;
+        }
+    }
+
+    /**
+     * Registers all paged out markers again, e.g. when paging is turned off.
+     */
+    public void release(List<TrackableObject3d> trackableObjects) {
+        for (int i=0; i<trackableObjects.size(); i++) {
+            TrackableObject3d trackableObject = trackableObjects.get(i);
+            if (!mRegistrar.isRegistered(trackableObject) && mRegistrar.register(trackableObject))
+                mPageIns++;
+        }
+        mObjects = null;
+    }
+
+    /**
+     * @return Markers registered by others in the last pass.
+     */
+    public int getReservedCount() {
+        return mReserved;
+    }
+
+    private boolean isRecent(int i) {
+        return mLastSeen[i] != 0 && mFrame - mLastSeen[i] <= KEEP_FRAMES;
+    }
+
+    /**
+     * The renderer replaces its list when the scene changes, keep what is known about the objects.
+     */
+    private void reset(List<TrackableObject3d> trackableObjects) {
+        int count = trackableObjects.size();
+        Map<TrackableObject3d, Integer> index = new IdentityHashMap<>(count * 2);
+        for (int i=0; i<count; i++)
+            index.put(trackableObjects.get(i), i);
+
+        int[] lastSeen = new int[count];
+        boolean[] failed = new boolean[count];
+        boolean[] probing = new boolean[count];
+        long[] probeStart = new long[count];
+        if (mObjects != null)
+            for (int i=0; i<mObjects.size(); i++) {
+                Integer j = index.get(mObjects.get(i));
+                if (j == null)
+                    continue;
+                lastSeen[j] = mLastSeen[i];
+                failed[j] = mFailed[i];
+                probing[j] = mProbing[i];
+                probeStart[j] = mProbeStart[i];
+            }
+
+        int[][] neighbourIndices = new int[count][];
+        for (int i=0; i<count; i++) {
+            TrackableObject3d[] neighbours = mNeighbours.get(trackableObjects.get(i));
+            if (neighbours == null)
+                continue;
+            int[] indices = new int[neighbours.length];
+            int n = 0;
+            for (TrackableObject3d neighbour : neighbours) {
+                Integer j = index.get(neighbour);
+                if (j != null)
+                    indices[n++] = j;
+            }
+            neighbourIndices[i] = Arrays.copyOf(indices, n);
+        }
+
+        mObjects = trackableObjects;
+        mLastSeen = lastSeen;
+        mFailed = failed;
+        mWanted = new boolean[count];
+        mProbing = probing;
+        mProbeStart = probeStart;
+        mNeighbourIndices = neighbourIndices;
+        mCursor = count > 0 ? mCursor % count : 0;
+    }
+}
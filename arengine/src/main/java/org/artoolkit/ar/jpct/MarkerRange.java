@@ -0,0 +1,217 @@
+package org.artoolkit.ar.jpct;
+
+import org.artoolkit.ar.base.ARToolKit;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import gl.kev.ar.arengine.config.ARMarkerOptions;
+import gl.kev.logging.GLog;
+
+/**
+ * Created by kevingliewe on 18.10.26.
+ *
+ * A range of markers declared by one marker string, e.g. "single_barcode;{0..511};80".
+ *
+ * All markers of the range are registered with ARToolKit, but until a marker is seen it is only
+ * an id in an int array. The first time it is visible, {@link #poll(float)} queues it, creates its
+ * trackable object through the {@link Factory} and builds it. The renderer then adds it to the world
+ * and tracks it like any other trackable object, see ArJcptRenderer.
+ *
+ * ARToolKit can only be asked for the visibility of one marker at a time, so a poll asks at most
+ * {@link #QUERIES_PER_POLL} of the unseen markers, in turns. Seen markers are created within a time
+ * budget, at least one per poll, like the SceneBuilder does at start.
+ *
+ * {@link #register()} and {@link #poll(float)} run on the thread that delivers camera frames,
+ * {@link #drain(List)} on the render thread.
+ */
+public class MarkerRange {
+
+    private static final Pattern RANGE = Pattern.compile("\\{(\\d+)\\.\\.(\\d+)\\}");
+
+    // Visibility queries per poll, a marker of the range is seen within size / QUERIES_PER_POLL frames
+    private static final int QUERIES_PER_POLL = 64;
+
+    /**
+     * Creates the trackable object of one marker of the range, e.g. from a shared template.
+     */
+    public interface Factory {
+        TrackableObject3d create(String markerString, int id);
+    }
+
+    private final String mMarker;
+    private final int mFirst;
+    private final Factory mFactory;
+    private ARMarkerOptions mOptions;
+
+    // Per marker of the range: ARToolKit UID, -1 if not registered or already created
+    private final int[] mMarkerIds;
+    private int mPending = 0;
+    private int mCursor = 0;
+    // Seen markers waiting for their objects, a ring of indices into mMarkerIds
+    private final boolean[] mQueued;
+    private final int[] mQueue;
+    private int mQueueHead = 0;
+    private int mQueueCount = 0;
+    private int mCreated = 0;
+    private final List<TrackableObject3d> mFinished = new ArrayList<>();
+
+    /**
+     * @return true if the marker string contains a range like {0..63}.
+     */
+    public static boolean isRange(String marker) {
+        return marker != null && RANGE.matcher(marker).find();
+    }
+
+    public MarkerRange(String marker, Factory factory) {
+        Matcher matcher = RANGE.matcher(marker);
+        if (!matcher.find())
+            throw new IllegalArgumentException("No range in marker " + marker);
+        mMarker = marker;
+        mFirst = Integer.parseInt(matcher.group(1));
+        int last = Integer.parseInt(matcher.group(2));
+        if (last < mFirst)
+            throw new IllegalArgumentException("Empty range in marker " + marker);
+        mFactory = factory;
+        mMarkerIds = new int[last - mFirst + 1];
+        mQueued = new boolean[mMarkerIds.length];
+        mQueue = new int[mMarkerIds.length];
+    }
+
+    /**
+     * Options applied to every marker of the range when it is registered.
+     */
+    public void setOptions(ARMarkerOptions options) {
+        mOptions = options;
+    }
+
+    /**
+     * @return The marker string of one marker of the range, with the range replaced by the id.
+     */
+    public String getMarkerString(int id) {
+        return RANGE.matcher(mMarker).replaceFirst(Integer.toString(id));
+    }
+
+    public int getFirst() {
+        return mFirst;
+    }
+
+    public int size() {
+        return mMarkerIds.length;
+    }
+
+    /**
+     * Registers all markers of the range.
+     * @return Number of markers registered.
+     */
+    public int register() {
+        ARToolKit artk = ARToolKit.getInstance();
+        mPending = 0;
+        mQueueCount = 0;
+        Arrays.fill(mQueued, false);
+        for (int i=0; i<mMarkerIds.length; i++) {
+            int uid = artk.addMarker(getMarkerString(mFirst + i));
+            mMarkerIds[i] = uid;
+            if (uid == -1) {
+                GLog.error("Can't register marker " + getMarkerString(mFirst + i), null);
+                continue;
+            }
+            if (mOptions != null)
+                mOptions.apply(uid);
+            mPending++;
+        }
+        return mPending;
+    }
+
+    /**
+     * Looks for markers seen for the first time and creates the objects of the seen ones.
+     * @param budget Milliseconds for creating objects, at least one is created.
+     * @return Number of objects created.
+     */
+    public int poll(float budget) {
+        if (mPending == 0)
+            return 0;
+
+        ARToolKit artk = ARToolKit.getInstance();
+        int count = mMarkerIds.length;
+        int queries = 0;
+        for (int n=0; n<count && queries<QUERIES_PER_POLL; n++) {
+            int i = mCursor;
+            mCursor = (mCursor + 1) % count;
+            int uid = mMarkerIds[i];
+            if (uid == -1 || mQueued[i])
+                continue;
+            queries++;
+            if (artk.queryMarkerVisible(uid)) {
+                mQueued[i] = true;
+                mQueue[(mQueueHead + mQueueCount) % count] = i;
+                mQueueCount++;
+            }
+        }
+
+        int created = 0;
+        long start = System.nanoTime();
+        long budgetNanos = (long) (budget * 1000000);
+        boolean first = true;
+        while (mQueueCount > 0 && (first || System.nanoTime() - start < budgetNanos)) {
+            first = false;
+            int i = mQueue[mQueueHead];
+            mQueueHead = (mQueueHead + 1) % count;
+            mQueueCount--;
+            if (create(i))
+                created++;
+        }
+        mCreated += created;
+        return created;
+    }
+
+    private boolean create(int i) {
+        int uid = mMarkerIds[i];
+        mMarkerIds[i] = -1;
+        mQueued[i] = false;
+        mPending--;
+        TrackableObject3d trackableObject = mFactory.create(getMarkerString(mFirst + i), mFirst + i);
+        if (trackableObject == null) {
+            // Nobody adopts the marker, the tracker would keep looking for it
+            ARToolKit.getInstance().removeMarker(uid);
+            return false;
+        }
+        trackableObject.adoptMarker(uid);
+        SceneBuilder.build(trackableObject);
+        synchronized (mFinished) {
+            mFinished.add(trackableObject);
+        }
+        return true;
+    }
+
+    /**
+     * Moves the objects created since the last call to dest.
+     * @return true if there were any.
+     */
+    public boolean drain(List<TrackableObject3d> dest) {
+        synchronized (mFinished) {
+            if (mFinished.isEmpty())
+                return false;
+            dest.addAll(mFinished);
+            mFinished.clear();
+            return true;
+        }
+    }
+
+    /**
+     * @return Markers of the range registered with ARToolKit that have no object yet.
+     */
+    public int getPendingCount() {
+        return mPending;
+    }
+
+    /**
+     * @return Number of markers whose objects were created.
+     */
+    public int getCreatedCount() {
+        return mCreated;
+    }
+}
@@ -0,0 +1,128 @@
+package org.artoolkit.ar.jpct;
+
+import com.threed.jpct.Object3D;
+import com.threed.jpct.World;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import gl.kev.ar.arengine.helper.jpct.Node3D;
+import gl.kev.logging.GLog;
+
+/**
+ * Created by kevingliewe on 18.10.26.
+ *
+ * Registers the markers and builds the objects of the trackable objects in time slices,
+ * instead of everything in configureARScene followed by World.buildAllObjects.
+ *
+ * {@link #step()} runs on the thread that delivers camera frames, like configureARScene, because
+ * ARToolKit is not thread safe. It registers markers and builds their objects (no GL calls) until
+ * the budget is used up, at least one marker per step. {@link #attach(World)} runs on the render
+ * thread and adds the finished trackable objects to the world, so the world is only changed there.
+ * Finished markers are tracked and rendered right away while the rest is still being built.
+ */
+public class SceneBuilder {
+
+    /**
+     * Progress for a loading indicator. Called on the thread that delivers camera frames.
+     */
+    public interface OnSceneProgressListener {
+        void onSceneProgress(int readyMarkers, int totalMarkers);
+    }
+
+    private final List<TrackableObject3d> mTrackableObjects;
+    private final long mBudgetNanos;
+    private volatile int mNext = 0;
+    private int mFailed = 0;
+    private final List<TrackableObject3d> mFinished = new ArrayList<>();
+    private final List<TrackableObject3d> mAttached = new ArrayList<>();
+    private OnSceneProgressListener mListener;
+
+    /**
+     * @param budget Milliseconds per step.
+     */
+    public SceneBuilder(List<TrackableObject3d> trackableObjects, float budget) {
+        mTrackableObjects = trackableObjects;
+        mBudgetNanos = (long) (budget * 1000000);
+    }
+
+    public void setOnSceneProgressListener(OnSceneProgressListener listener) {
+        mListener = listener;
+    }
+
+    /**
+     * Registers and builds the next markers.
+     * @return true if there is more to do.
+     */
+    public boolean step() {
+        if (mNext >= mTrackableObjects.size())
+            return false;
+
+        long start = System.nanoTime();
+        do {
+            TrackableObject3d trackableObject = mTrackableObjects.get(mNext++);
+            if (!trackableObject.registerMarker()) {
+                // Skip it, the other markers can still be used
+                GLog.error("Can't register marker " + mNext + " of " + mTrackableObjects.size(), null);
+                mFailed++;
+                continue;
+            }
+            build(trackableObject);
+            synchronized (mFinished) {
+                mFinished.add(trackableObject);
+            }
+        } while (mNext < mTrackableObjects.size() && System.nanoTime() - start < mBudgetNanos);
+
+        if (mListener != null)
+            mListener.onSceneProgress(mNext - mFailed, mTrackableObjects.size());
+        return mNext < mTrackableObjects.size();
+    }
+
+    /**
+     * Builds the object and its children, recursively through nodes. Makes no GL calls.
+     */
+    public static void build(Object3D object) {
+        object.build();
+        List<Object3D> children = null;
+        if (object instanceof TrackableObject3d)
+            children = ((TrackableObject3d) object).getChildren();
+        else if (object instanceof Node3D)
+            children = ((Node3D) object).getChildren();
+        if (children != null)
+            for (int i=0; i<children.size(); i++)
+                build(children.get(i));
+    }
+
+    /**
+     * Adds the trackable objects finished since the last call to the world.
+     * @return The trackable objects that are in the world, in the order they were finished.
+     */
+    public List<TrackableObject3d> attach(World world) {
+        synchronized (mFinished) {
+            for (int i=0; i<mFinished.size(); i++) {
+                TrackableObject3d trackableObject = mFinished.get(i);
+                trackableObject.addToWorld(world);
+                mAttached.add(trackableObject);
+            }
+            mFinished.clear();
+        }
+        return mAttached;
+    }
+
+    /**
+     * @return true when every marker was registered and added to the world.
+     */
+    public boolean isFinished() {
+        synchronized (mFinished) {
+            return mNext >= mTrackableObjects.size() && mFinished.isEmpty();
+        }
+    }
+
+    public int getReadyMarkers() {
+        return mAttached.size();
+    }
+
+    public int getTotalMarkers() {
+        return mTrackableObjects.size();
+    }
+}
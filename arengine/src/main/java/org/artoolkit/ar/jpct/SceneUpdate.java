@@ -0,0 +1,120 @@
+package org.artoolkit.ar.jpct;
+
+import com.threed.jpct.World;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import gl.kev.logging.GLog;
+
+/**
+ * Created by kevingliewe on 18.10.26.
+ *
+ * A change of the running scene, applied by ArJcptRenderer between two frames.
+ *
+ * The new trackable objects are created and built beforehand on any thread, they must not be in
+ * the world yet. {@link #register()} runs on the thread that delivers camera frames and talks to
+ * ARToolKit: removed markers are unregistered, new markers registered and the tracker tasks run.
+ * {@link #apply(World, List)} runs on the render thread before the next frame is drawn: removed
+ * objects leave the world, new ones are added and the render tasks run.
+ */
+public class SceneUpdate {
+
+    private final List<TrackableObject3d> mRemove = new ArrayList<>();
+    private final List<TrackableObject3d> mAdd = new ArrayList<>();
+    private final List<Runnable> mTrackerTasks = new ArrayList<>();
+    private final List<Runnable> mRenderTasks = new ArrayList<>();
+    private final List<TrackableObject3d> mRegistered = new ArrayList<>();
+    private volatile boolean mIsRegistered = false;
+    private volatile boolean mIsApplied = false;
+
+    public void remove(TrackableObject3d trackableObject) {
+        mRemove.add(trackableObject);
+    }
+
+    /**
+     * @param trackableObject Built, but not registered and not in the world.
+     */
+    public void add(TrackableObject3d trackableObject) {
+        mAdd.add(trackableObject);
+    }
+
+    /**
+     * Runs on the thread that delivers camera frames, e.g. to change marker options.
+     */
+    public void runOnTracker(Runnable task) {
+        mTrackerTasks.add(task);
+    }
+
+    /**
+     * Runs on the render thread before the next frame, e.g. to change objects in the world.
+     */
+    public void runOnRender(Runnable task) {
+        mRenderTasks.add(task);
+    }
+
+    public boolean isEmpty() {
+        return mRemove.isEmpty() && mAdd.isEmpty() && mTrackerTasks.isEmpty() && mRenderTasks.isEmpty();
+    }
+
+    void register() {
+        for (int i=0; i<mRemove.size(); i++)
+            mRemove.get(i).unregisterMarker();
+
+        for (int i=0; i<mAdd.size(); i++) {
+            TrackableObject3d trackableObject = mAdd.get(i);
+            if (!trackableObject.registerMarker()) {
+                GLog.error("Can't register marker " + trackableObject.getName(), null);
+                continue;
+            }
+            mRegistered.add(trackableObject);
+        }
+
+        for (int i=0; i<mTrackerTasks.size(); i++)
+            run(mTrackerTasks.get(i));
+        mIsRegistered = true;
+    }
+
+    /**
+     * @param trackableObjects Current trackable objects, removed and added ones are changed in place.
+     */
+    void apply(World world, List<TrackableObject3d> trackableObjects) {
+        for (int i=0; i<mRemove.size(); i++) {
+            TrackableObject3d trackableObject = mRemove.get(i);
+            trackableObject.removeFromWorld(world);
+            trackableObjects.remove(trackableObject);
+        }
+        for (int i=0; i<mRegistered.size(); i++) {
+            TrackableObject3d trackableObject = mRegistered.get(i);
+            trackableObject.addToWorld(world);
+            trackableObjects.add(trackableObject);
+        }
+        for (int i=0; i<mRenderTasks.size(); i++)
+            run(mRenderTasks.get(i));
+        mIsApplied = true;
+    }
+
+    private static void run(Runnable task) {
+        try {
+            task.run();
+        } catch (Exception ex) {
+            // One failing change must not stop the others
+            GLog.exception("Exception while updating the scene", ex);
+        }
+    }
+
+    List<TrackableObject3d> getRemoved() {
+        return mRemove;
+    }
+
+    boolean isRegistered() {
+        return mIsRegistered;
+    }
+
+    /**
+     * @return true once the update is visible in the rendered scene.
+     */
+    public boolean isApplied() {
+        return mIsApplied;
+    }
+}
@@ -14,6 +14,7 @@ public class TrackableLight {
     private SimpleVector mCurrentLocation = new SimpleVector();
     private int mR, mG, mB;
     private boolean mVisible;
+    private volatile boolean mChanged = true;
 
     public TrackableLight() {
     }
@@ -22,6 +23,7 @@ public class TrackableLight {
         mR = r;
         mG = g;
         mB = b;
+        mChanged = true;
         if (mLight != null) {
             mLight.setIntensity(mR, mG, mB);
         }
@@ -29,15 +31,26 @@ public class TrackableLight {
 
     public void setPosition(SimpleVector newPosition) {
         mPosition.set(newPosition);
+        mChanged = true;
         if (mLight != null) {
             mLight.setPosition(mPosition);
         }
     }
 
+    /**
+     * Enables or disables the light, only touches the jPCT light if the state changes.
+     */
     public void setVisibility(boolean visible) {
+        if (visible == mVisible)
+            return;
         mVisible = visible;
+        mChanged = true;
+        applyVisibility();
+    }
+
+    private void applyVisibility() {
         if (mLight != null) {
-            if (visible) {
+            if (mVisible) {
                 mLight.enable();
             }
             else {
@@ -50,7 +63,23 @@ public class TrackableLight {
         mLight = new Light(world);
         setPosition(mPosition);
         setIntensity(mR, mG, mB);
-        setVisibility(mVisible);
+        applyVisibility();
+    }
+
+    public void removeFromWorld() {
+        if (mLight != null) {
+            mLight.dispose();
+            mLight = null;
+        }
+    }
+
+    /**
+     * @return true if intensity, position or visibility changed since the last call.
+     */
+    public boolean consumeChanged() {
+        boolean changed = mChanged;
+        mChanged = false;
+        return changed;
     }
 
     public void update(SimpleVector translation) {
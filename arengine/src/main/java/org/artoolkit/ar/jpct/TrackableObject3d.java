@@ -6,12 +6,12 @@ import android.util.Log;
 import com.threed.jpct.Loader;
 import com.threed.jpct.Matrix;
 import com.threed.jpct.Object3D;
+import com.threed.jpct.SimpleVector;
 import com.threed.jpct.World;
 
 import org.artoolkit.ar.base.ARToolKit;
 import org.joml.Matrix4f;
 import org.joml.Quaternionf;
-import org.joml.Vector3f;
 
 import java.io.IOException;
 import java.util.ArrayList;
@@ -20,7 +20,12 @@ import java.util.List;
 import java.util.Map;
 
 import gl.kev.ar.arengine.config.ARMarkerOptions;
+import gl.kev.ar.arengine.helper.jpct.CachedWorldTransform;
+import gl.kev.ar.arengine.helper.jpct.JpctInterop;
+import gl.kev.ar.arengine.helper.jpct.LodNode;
 import gl.kev.ar.arengine.helper.jpct.Node3D;
+import gl.kev.ar.arengine.helper.math.Pose;
+import gl.kev.ar.arengine.helper.math.PoseBuffer;
 import gl.kev.ar.arengine.helper.math.Position;
 import gl.kev.logging.GLog;
 
@@ -31,7 +36,7 @@ import gl.kev.logging.GLog;
  * 3D Object that is anchored to a marker
  *
  */
-public class TrackableObject3d extends Object3D {
+public class TrackableObject3d extends Object3D implements CachedWorldTransform {
     public final static String TAG = "TrackableObject3d";
 
     private final String mMarkerString;
@@ -40,14 +45,21 @@ public class TrackableObject3d extends Object3D {
         return mMarkerId;
     }
 
-    private int mMarkerId;
+    private int mMarkerId = -1;
     private Matrix projMatrix = new Matrix();
+    private SimpleVector mTranslation = new SimpleVector();
     private List<Object3D> mChildren = new ArrayList<Object3D>();
     private List<TrackableLight> mLights = new ArrayList<TrackableLight>();
+    private List<LodNode> mAttachedLevels = new ArrayList<LodNode>();
     private boolean mPreviousVisibility;
     private OnVisibilityChangeListener mVisibilityChangeListener;
 
-    private Position mPosition = new Position();
+    private PoseBuffer mPoses = new PoseBuffer(1);
+    private int mPoseIndex = mPoses.add();
+    private final Pose mMeasured = new Pose();
+    private final Pose mCurrent = new Pose();
+    private final Quaternionf mRotationDiff = new Quaternionf();
+    private final Matrix4f mScratchMatrix = new Matrix4f();
 
     private String name = "NONAMME";
 
@@ -64,11 +76,20 @@ public class TrackableObject3d extends Object3D {
 
     public boolean lerping = false;
 
+    private volatile boolean mChanged = true;
+
+    private final Matrix mWorldMatrix = new Matrix();
+    private boolean mWorldMatrixValid = false;
+    private int mWorldVersion = 0;
+    private volatile boolean mAnimating = false;
+
     public TrackableObject3d(String markerString) {
         super(2); // 2 mx triangles, this object is the parent of all the trackable items
         mMarkerString = markerString;
         mVisibilityChangeListener = null;
         mPreviousVisibility = false;
+        // Hidden until the marker is seen, visibility is only propagated on changes
+        super.setVisibility(false);
     }
 
     public TrackableObject3d(String markerString, Object3D child) {
@@ -110,6 +131,24 @@ public class TrackableObject3d extends Object3D {
         return mMarkerId != -1;
     }
 
+    /**
+     * Uses a marker that is already registered, e.g. by a {@link MarkerRange}.
+     */
+    public void adoptMarker(int markerId) {
+        mMarkerId = markerId;
+    }
+
+    /**
+     * Removes the marker from ARToolKit, e.g. when the scene config changed.
+     * Call on the same thread as {@link #registerMarker()}.
+     */
+    public void unregisterMarker() {
+        if (mMarkerId == -1)
+            return;
+        ARToolKit.getInstance().removeMarker(mMarkerId);
+        mMarkerId = -1;
+    }
+
     /**
      * Updates the position and rotation of the object to the one on the marker
      * This is called automatically by ArJpctRenderer before rendering each frame
@@ -125,12 +164,13 @@ public class TrackableObject3d extends Object3D {
         if (markerVisible) {
             frames_notVisible=0;
             float[] transformation = ARToolKit.getInstance().queryMarkerTransformation(mMarkerId);
-            Position pos = new Position(new Matrix4f(transformation));
 
             if(lerping) {
-                Position diff = mPosition.getDiff(pos, null);
+                mMeasured.set(mScratchMatrix.set(transformation));
+                mPoses.get(mPoseIndex, mCurrent);
+                Quaternionf diff = mCurrent.getQ().difference(mMeasured.getQ(), mRotationDiff);
                 //GLog.debug("~~~~~~~~~~~~~~~ diff: " + diff.toString());
-                float diffangle = diff.getQ().x + diff.getQ().y + diff.getQ().z;
+                float diffangle = diff.x + diff.y + diff.z;
 
                 if (diffangle < 0.0)
                     diffangle = -diffangle;
@@ -139,41 +179,84 @@ public class TrackableObject3d extends Object3D {
 
                 if (diffangle > 0.06 && lerped < 10) {
                     GLog.info("lerping... " + lerped);
-                    Position lerped = new Position(
-                            mPosition.getV(),
-                            mPosition.getQ().nlerp(pos.getQ(), 0.1f, new Quaternionf())
-                    );
-                    pos = lerped;
-                    transformation = lerped.toMatrix4f(null).get(transformation);
+                    // Keep the translation, move the rotation towards the measured one
+                    mCurrent.getQ().nlerp(mMeasured.getQ(), 0.1f);
+                    mMeasured.set(mCurrent);
+                    transformation = null;
                     this.lerped++;
+                    mAnimating = true;
                 } else {
                     lerped = 0;
+                    mAnimating = false;
                 }
+                mPoses.set(mPoseIndex, mMeasured);
+            } else {
+                mPoses.setTransformation(mPoseIndex, transformation);
+                mAnimating = false;
             }
 
-            projMatrix.setDump(transformation);
-            clearTranslation();
-            translate(projMatrix.getTranslation());
-            setRotationMatrix(projMatrix);
-
-            mPosition = pos;
+            if(transformation != null)
+                projMatrix.setDump(transformation);
+            else
+                mPoses.toJpct(mPoseIndex, projMatrix);
+            JpctInterop.apply(projMatrix, this);
+            onTransformChanged();
 
             // Also, update all the lights
+            projMatrix.getTranslation(mTranslation);
             for (int i=0; i<mLights.size(); i++) {
                 // Lights do not rotate
-                TrackableLight l = mLights.get(i);
-                l.update(projMatrix.getTranslation());
-                mLights.get(i).setVisibility(true);
+                mLights.get(i).update(mTranslation);
             }
+
+            // Level of detail from the distance between camera and marker
+            updateLod(mChildren, mTranslation.length());
         } else {
             frames_notVisible++;
+            mAnimating = false;
             if(frames_notVisible > 3)
                 this.lerped = Integer.MAX_VALUE;
         }
     }
 
+    /**
+     * Updates every LodNode in the subtree, also those nested in other nodes.
+     */
+    private void updateLod(List<Object3D> children, float distance) {
+        for (int i=0; i<children.size(); i++) {
+            Object3D o = children.get(i);
+            if (o instanceof LodNode) {
+                LodNode lod = (LodNode) o;
+                if (lod.update(distance)) {
+                    mAttachedLevels.add(lod);
+                    mChanged = true;
+                }
+                // Keep rendering until a lazily loaded level is attached
+                if (lod.isLoading())
+                    mAnimating = true;
+            }
+            if (o instanceof Node3D)
+                updateLod(((Node3D) o).getChildren(), distance);
+        }
+    }
+
+    /**
+     * LodNodes that attached a lazily loaded level since the list was last cleared,
+     * their bounds changed. The renderer clears it after invalidating its caches.
+     */
+    public List<LodNode> getAttachedLevels() {
+        return mAttachedLevels;
+    }
+
+    /**
+     * Shows or hides the object with its children and lights.
+     * Only a change of the state is propagated, children that are already in the requested
+     * state (e.g. hidden by the frustum culler) are not touched again.
+     */
     @Override
     public void setVisibility (boolean visible) {
+        if (visible == getVisibility())
+            return;
         super.setVisibility(visible);
         for (int i=0; i<mChildren.size(); i++) {
             mChildren.get(i).setVisibility(visible);
@@ -188,6 +271,9 @@ public class TrackableObject3d extends Object3D {
         super.addChild(object3D);
         // Keep it in a local list
         mChildren.add(object3D);
+        // Visibility is only propagated on changes, so new children take the current state
+        object3D.setVisibility(getVisibility());
+        mChanged = true;
     }
 
     @Override
@@ -195,6 +281,7 @@ public class TrackableObject3d extends Object3D {
         super.removeChild(object3D);
         // remove it from the local list
         mChildren.remove(object3D);
+        mChanged = true;
     }
 
     public List<Object3D> getChildren() {
@@ -221,25 +308,114 @@ public class TrackableObject3d extends Object3D {
         }
     }
 
+    /**
+     * Removes the object, its children and lights from the world.
+     * @param world
+     */
+    public void removeFromWorld(World world) {
+        world.removeObject(this);
+        for (int i=0; i<mChildren.size(); i++) {
+            Object3D o = mChildren.get(i);
+            if(o instanceof Node3D)
+                ((Node3D)o).removeFromWorld();
+            else
+                world.removeObject(o);
+        }
+        for (int i=0; i<mLights.size(); i++) {
+            mLights.get(i).removeFromWorld();
+        }
+    }
+
+    /**
+     * @return Snapshot of the current pose, changing it has no effect on the object.
+     */
     public Position getPosition() {
-        return mPosition;
+        return getPosition(null);
+    }
+
+    /**
+     * Copies the current pose into dest, for callers that query it every frame.
+     * @param dest Position to fill, a new one if null.
+     */
+    public Position getPosition(Position dest) {
+        return mPoses.toPosition(mPoseIndex, dest);
     }
 
     public void setPosition(Position newPos) {
-        if(newPos == mPosition)
-            return;
+        mPoses.set(mPoseIndex, newPos);
+        mPoses.toJpct(mPoseIndex, projMatrix);
+        JpctInterop.apply(projMatrix, this);
+        onTransformChanged();
+        mChanged = true;
+    }
+
+    private void onTransformChanged() {
+        mWorldMatrixValid = false;
+        mWorldVersion++;
+    }
+
+    /**
+     * World transformation of the marker, computed by jPCT once per pose update.
+     */
+    @Override
+    public Matrix getWorldMatrix() {
+        if (!mWorldMatrixValid) {
+            getWorldTransformation(mWorldMatrix);
+            mWorldMatrixValid = true;
+        }
+        return mWorldMatrix;
+    }
 
-        mPosition = newPos;
+    @Override
+    public int getWorldVersion() {
+        return mWorldVersion;
+    }
+
+    /**
+     * Marks the object as changed, so the next camera frame is rendered
+     * even if the marker did not move. See {@link ArJcptRenderer#needsRender()}.
+     */
+    public void markChanged() {
+        mChanged = true;
+    }
+
+    /**
+     * @return true if the object, one of its lights or the lerping changed since the last call.
+     */
+    public boolean consumeChanged() {
+        boolean changed = mChanged || mAnimating;
+        mChanged = false;
+        for (int i=0; i<mLights.size(); i++) {
+            if (mLights.get(i).consumeChanged())
+                changed = true;
+        }
+        return changed;
+    }
+
+    /**
+     * Moves the pose of this object into a shared buffer, used by ArJcptRenderer
+     * so all marker poses can be processed in bulk.
+     * @param poses Buffer to store the pose in.
+     * @param index Slot in poses that belongs to this object.
+     */
+    public void setPoseBuffer(PoseBuffer poses, int index) {
+        poses.set(index, mPoses.get(mPoseIndex, mCurrent));
+        mPoses = poses;
+        mPoseIndex = index;
+    }
+
+    public PoseBuffer getPoseBuffer() {
+        return mPoses;
+    }
 
-        float[] transformation = mPosition.toMatrix4f(null).toArray(null);
-        projMatrix.setDump(transformation);
-        clearTranslation();
-        translate(projMatrix.getTranslation());
-        setRotationMatrix(projMatrix);
+    public int getPoseIndex() {
+        return mPoseIndex;
     }
 
     public void addLight(TrackableLight light) {
         mLights.add(light);
+        light.setVisibility(getVisibility());
+        mChanged = true;
     }
 
     @Override
@@ -0,0 +1,118 @@
+package gl.kev.ar.arengine.config;
+
+import com.google.gson.Gson;
+
+import org.artoolkit.ar.jpct.MarkerRange;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Classification of marker changes between two scene configs.
+ */
+public class ConfigDiffTest {
+
+    private static final String BASE = "{ \"marker\": ["
+            + " { \"name\": \"a\", \"marker\": \"single;a.patt;80\", \"models\": [ { \"model\": \"a.obj\", \"x\": 1 } ] },"
+            + " { \"name\": \"b\", \"marker\": \"single;b.patt;80\", \"tags\": [ { \"name\": \"t\", \"x\": 1 } ] },"
+            + " { \"name\": \"c\", \"marker\": \"single;c.patt;80\","
+            + " \"options\": { \"float_type\": { \"ARW_MARKER_OPTION_SQUARE_CONFIDENCE_CUTOFF\": 0.5 } } },"
+            + " { \"marker\": \"single;d.patt;80\" } ] }";
+
+    private static ARSceneConfig parse(String json) {
+        return new Gson().fromJson(json, ARSceneConfig.class);
+    }
+
+    @Test
+    public void compute_sameConfigIsEmpty() {
+        ConfigDiff diff = ConfigDiff.compute(parse(BASE), parse(BASE));
+        assertTrue(diff.isEmpty());
+        assertEquals(4, diff.unchangedTo.size());
+    }
+
+    @Test
+    public void compute_classifiesMarkers() {
+        String changed = BASE
+                // Moved model: rebuilt
+                .replace("\"x\": 1 } ] }", "\"x\": 5 } ] }")
+                // Moved tag: updated in place
+                .replace("{ \"name\": \"t\", \"x\": 1 }", "{ \"name\": \"t\", \"x\": 2 }")
+                // Unnamed marker replaced by another one
+                .replace("single;d.patt;80", "single;e.patt;80");
+        ConfigDiff diff = ConfigDiff.compute(parse(BASE), parse(changed));
+
+        assertEquals(1, diff.getRebuiltCount());
+        assertEquals("a", diff.rebuiltTo.get(0).name);
+        assertEquals(1, diff.getUpdatedCount());
+        assertEquals("b", diff.updatedTo.get(0).name);
+        assertEquals(1, diff.getAddedCount());
+        assertEquals("single;e.patt;80", diff.added.get(0).marker);
+        assertEquals(1, diff.getRemovedCount());
+        assertEquals("single;d.patt;80", diff.removed.get(0).marker);
+        assertEquals("c", diff.unchangedTo.get(0).name);
+        assertFalse(diff.trackerChanged);
+        assertFalse(diff.settingsChanged);
+    }
+
+    @Test
+    public void compute_detectsOptionsAndSceneChanges() {
+        String changed = BASE.replace("\"ARW_MARKER_OPTION_SQUARE_CONFIDENCE_CUTOFF\": 0.5", "\"5\": 0.7")
+                .replace("{ \"marker\": [", "{ \"PatternDetectionMode\": \"1\", \"FrustumCulling\": false, \"script_world\": [\"1\"], \"marker\": [");
+        ConfigDiff diff = ConfigDiff.compute(parse(BASE), parse(changed));
+
+        assertEquals(1, diff.getUpdatedCount());
+        assertEquals("c", diff.updatedTo.get(0).name);
+        assertEquals(0, diff.getRebuiltCount());
+        assertTrue(diff.trackerChanged);
+        assertTrue(diff.settingsChanged);
+        assertTrue(diff.worldScriptChanged);
+        assertFalse(diff.sceneScriptChanged);
+    }
+
+    @Test
+    public void compute_rebuildsOnHookChange() {
+        String changed = BASE.replace("{ \"name\": \"b\",", "{ \"name\": \"b\", \"onVisible\": [\"1\"],");
+        ConfigDiff diff = ConfigDiff.compute(parse(BASE), parse(changed));
+
+        assertEquals(1, diff.getRebuiltCount());
+        assertEquals("b", diff.rebuiltTo.get(0).name);
+    }
+
+    @Test
+    public void compute_detectsPagerChanges() {
+        ConfigDiff diff = ConfigDiff.compute(parse(BASE), parse(BASE.replace("{ \"marker\": [", "{ \"MaxActiveMarkers\": 2, \"marker\": [")));
+        assertTrue(diff.settingsChanged);
+        assertTrue(diff.pagerChanged);
+
+        diff = ConfigDiff.compute(parse(BASE), parse(BASE.replace("{ \"name\": \"b\",", "{ \"name\": \"b\", \"neighbours\": [\"a\"],")));
+        assertTrue(diff.settingsChanged);
+        assertTrue(diff.pagerChanged);
+        assertEquals(0, diff.getUpdatedCount());
+
+        // Replaced marker objects have to be paged by a new pager
+        diff = ConfigDiff.compute(parse(BASE), parse(BASE.replace("single;d.patt;80", "single;e.patt;80")));
+        assertFalse(diff.settingsChanged);
+        assertTrue(diff.pagerChanged);
+
+        assertFalse(ConfigDiff.compute(parse(BASE), parse(BASE)).pagerChanged);
+    }
+
+    @Test
+    public void compute_reportsRangeChanges() {
+        String ranged = BASE.replace("{ \"marker\": [", "{ \"marker\": [ { \"name\": \"codes\", \"marker\": \"single_barcode;{0..511};80\" },");
+
+        assertTrue(ConfigDiff.compute(parse(BASE), parse(ranged)).hasRangeChanges());
+        assertFalse(ConfigDiff.compute(parse(ranged), parse(ranged)).hasRangeChanges());
+        assertFalse(ConfigDiff.compute(parse(BASE), parse(BASE)).hasRangeChanges());
+    }
+
+    @Test
+    public void markerRange_replacesRangeById() {
+        MarkerRange range = new MarkerRange("single_barcode;{16..31};80", null);
+
+        assertEquals(16, range.getFirst());
+        assertEquals(16, range.size());
+        assertEquals("single_barcode;20;80", range.getMarkerString(20));
+        assertFalse(MarkerRange.isRange("single_barcode;20;80"));
+    }
+}
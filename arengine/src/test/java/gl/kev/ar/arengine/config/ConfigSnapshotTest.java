@@ -0,0 +1,127 @@
+package gl.kev.ar.arengine.config;
+
+import org.artoolkit.ar.base.NativeInterface;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+
+import static org.junit.Assert.*;
+
+/**
+ * Compiling, caching and invalidating the binary config snapshot.
+ */
+public class ConfigSnapshotTest {
+
+    private static final String JSON = "{ \"PatternDetectionMode\": \"AR_TEMPLATE_MATCHING_MONO\", \"BuildBudget\": 4, \"MaxActiveMarkers\": 8,"
+            + " \"marker\": [ { \"name\": \"a\", \"marker\": \"single;Data/hiro.patt;80\", \"script\": [\"1+1\"], \"neighbours\": [\"b\"], \"onFrame\": [\"frame.dt\"],"
+            + " \"tags\": [ { \"name\": \"t\", \"x\": 1 } ],"
+            + " \"models\": [ { \"model\": \"loader.asset('a.obj')\", \"scale\": 2, \"lod\": [ { \"model\": \"b\", \"distance\": 300 } ] } ],"
+            + " \"options\": { \"float_type\": { \"ARW_MARKER_OPTION_SQUARE_CONFIDENCE_CUTOFF\": 0.5 },"
+            + " \"int_type\": { \"UNKNOWN_OPTION\": \"1\" } } } ] }";
+
+    private static class CountingSource implements ConfigSnapshot.Source {
+        String json;
+        int opened = 0;
+
+        CountingSource(String json) {
+            this.json = json;
+        }
+
+        @Override
+        public InputStream open() throws IOException {
+            opened++;
+            return new ByteArrayInputStream(json.getBytes("UTF-8"));
+        }
+    }
+
+    private static File snapshotFile() throws IOException {
+        File file = File.createTempFile("config", ".snapshot");
+        file.delete();
+        file.deleteOnExit();
+        return file;
+    }
+
+    @Test
+    public void load_compilesAndResolvesOptions() throws Exception {
+        File file = snapshotFile();
+        CountingSource source = new CountingSource(JSON);
+        ARSceneConfig compiled = ConfigSnapshot.load(file, 1000, JSON.length(), source);
+        assertTrue(file.exists());
+
+        // Same time and length, the source is not read again
+        ARSceneConfig config = ConfigSnapshot.load(file, 1000, JSON.length(), source);
+        assertEquals(1, source.opened);
+        assertNotSame(compiled, config);
+
+        assertEquals(NativeInterface.AR_TEMPLATE_MATCHING_MONO, config.getPatternDetectionMode());
+        assertEquals("AR_TEMPLATE_MATCHING_MONO", config.PatternDetectionMode);
+        assertEquals(Integer.MIN_VALUE, config.getMatrixCodeType());
+        assertEquals(4, config.getBuildBudget(), 0);
+        assertTrue(config.isFrustumCulling());
+        assertEquals(8, config.getMaxActiveMarkers());
+
+        ARMarker marker = config.marker[0];
+        assertEquals("a", marker.name);
+        assertEquals("single;Data/hiro.patt;80", marker.marker);
+        assertArrayEquals(new String[] { "1+1" }, marker.script);
+        assertArrayEquals(new String[] { "b" }, marker.neighbours);
+        assertArrayEquals(new String[] { "frame.dt" }, marker.onFrame);
+        assertNull(marker.onVisible);
+        assertEquals(1, marker.tags[0].x, 0);
+        assertEquals(2, marker.models[0].scale, 0);
+        assertEquals(300, marker.models[0].lod[0].distance, 0);
+        assertTrue(marker.models[0].lod[0].lazy);
+
+        // Unknown options are dropped while compiling
+        assertArrayEquals(new int[] { NativeInterface.ARW_MARKER_OPTION_SQUARE_CONFIDENCE_CUTOFF }, marker.options.floatOptions);
+        assertEquals(0.5f, marker.options.floatValues[0], 0);
+        assertEquals(0, marker.options.intOptions.length);
+    }
+
+    @Test
+    public void load_checksHashWhenTimeChanged() throws Exception {
+        File file = snapshotFile();
+        CountingSource source = new CountingSource(JSON);
+        ConfigSnapshot.load(file, 1000, -1, source);
+        long written = file.lastModified();
+
+        // Touched, same content: hashed, but not parsed
+        ARSceneConfig config = ConfigSnapshot.load(file, 2000, -1, source);
+        assertEquals(2, source.opened);
+        assertEquals(4, config.getBuildBudget(), 0);
+        ConfigSnapshot.load(file, 2000, -1, source);
+        assertEquals(2, source.opened);
+
+        // Changed content is compiled again
+        source.json = JSON.replace("\"BuildBudget\": 4", "\"BuildBudget\": 12");
+        config = ConfigSnapshot.load(file, 3000, -1, source);
+        assertEquals(12, config.getBuildBudget(), 0);
+        config = ConfigSnapshot.load(file, 3000, -1, source);
+        assertEquals(12, config.getBuildBudget(), 0);
+        assertEquals(3, source.opened);
+        assertTrue(file.lastModified() >= written);
+    }
+
+    @Test
+    public void load_sharesEqualOptionBlocks() throws Exception {
+        String options = "\"options\": { \"bool_type\": { \"ARW_MARKER_OPTION_FILTERED\": true } }";
+        String json = "{ \"marker\": [ { \"marker\": \"single_barcode;0;80\", " + options + " },"
+                + " { \"marker\": \"single_barcode;1;80\", " + options + " },"
+                + " { \"marker\": \"single_barcode;2;80\" } ] }";
+        File file = snapshotFile();
+        CountingSource source = new CountingSource(json);
+
+        ARSceneConfig compiled = ConfigSnapshot.load(file, 1000, -1, source);
+        assertSame(compiled.marker[0].options, compiled.marker[1].options);
+
+        ARSceneConfig config = ConfigSnapshot.load(file, 1000, -1, source);
+        assertEquals(1, source.opened);
+        assertSame(config.marker[0].options, config.marker[1].options);
+        assertNull(config.marker[2].options);
+        assertArrayEquals(new int[] { NativeInterface.ARW_MARKER_OPTION_FILTERED }, config.marker[1].options.boolOptions);
+        assertTrue(config.marker[1].options.boolValues[0]);
+    }
+}
@@ -0,0 +1,39 @@
+package gl.kev.ar.arengine.config;
+
+import org.artoolkit.ar.base.NativeInterface;
+import org.junit.Test;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+
+import static org.junit.Assert.*;
+
+/**
+ * The generated constant table must match NativeInterface.
+ */
+public class NativeConstantsTest {
+
+    @Test
+    public void all_containsEveryNativeInterfaceConstant() throws Exception {
+        int constants = 0;
+        for(Field field : NativeInterface.class.getFields()) {
+            int modifiers = field.getModifiers();
+            if(field.getType() != int.class || !Modifier.isStatic(modifiers) || !Modifier.isFinal(modifiers))
+                continue;
+            assertEquals(field.getName(), Integer.valueOf(field.getInt(null)), NativeConstants.ALL.get(field.getName()));
+            constants++;
+        }
+        assertEquals(constants, NativeConstants.ALL.size());
+    }
+
+    @Test
+    public void resolve_namesNumbersAndUnknown() {
+        assertEquals(NativeInterface.ARW_MARKER_OPTION_FILTERED,
+                NativeConstants.resolve("ARW_MARKER_OPTION_FILTERED", NativeConstants.MARKER_OPTIONS, "marker option"));
+        assertEquals(3, NativeConstants.resolve(" 3", NativeConstants.MARKER_OPTIONS, "marker option"));
+        // A pattern detection mode is no marker option
+        assertEquals(Integer.MIN_VALUE,
+                NativeConstants.resolve("AR_TEMPLATE_MATCHING_MONO", NativeConstants.MARKER_OPTIONS, "marker option"));
+        assertEquals(Integer.MIN_VALUE, NativeConstants.resolve(null, NativeConstants.ALL, "value"));
+    }
+}
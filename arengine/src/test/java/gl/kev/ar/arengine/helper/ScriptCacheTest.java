@@ -0,0 +1,82 @@
+package gl.kev.ar.arengine.helper;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+/**
+ * Pruning of the compiled scripts on disk.
+ */
+public class ScriptCacheTest {
+
+    private File directory;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = File.createTempFile("scripts", "");
+        assertTrue(directory.delete());
+        assertTrue(directory.mkdirs());
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = directory.listFiles();
+        if (files != null)
+            for (File file : files)
+                file.delete();
+        directory.delete();
+    }
+
+    private File file(String name, int bytes, long modified) throws IOException {
+        File file = new File(directory, name);
+        FileOutputStream out = new FileOutputStream(file);
+        out.write(new byte[bytes]);
+        out.close();
+        assertTrue(file.setLastModified(modified));
+        return file;
+    }
+
+    @Test
+    public void prune_deletesLeastRecentlyUsed() throws IOException {
+        File oldest = file("a.js.bin", 50, 1000000);
+        File old = file("b.js.bin", 300, 2000000);
+        File recent = file("c.js.bin", 400, 3000000);
+        File newest = file("d.js.bin", 400, 4000000);
+        File tmp = file("e.js.bin.tmp", 10, 5000000);
+
+        ScriptCache.prune(directory, 1000);
+
+        assertTrue(newest.exists());
+        assertTrue(recent.exists());
+        assertFalse(old.exists());
+        // Would still fit, but is older than a file that doesn't
+        assertFalse(oldest.exists());
+        assertFalse(tmp.exists());
+    }
+
+    @Test
+    public void prune_keepsTemporaryFilesBeingWritten() throws IOException {
+        File tmp = file("a.js.bin.tmp", 10, System.currentTimeMillis());
+
+        ScriptCache.prune(directory, 0);
+
+        assertTrue(tmp.exists());
+    }
+
+    @Test
+    public void setDirectory_prunes() throws IOException, InterruptedException {
+        File big = file("a.js.bin", (int) ScriptCache.MAX_DISK_BYTES + 1, 1000000);
+        File small = file("b.js.bin", 100, 2000000);
+
+        new ScriptCache(directory).awaitPrune();
+
+        assertFalse(big.exists());
+        assertTrue(small.exists());
+    }
+}
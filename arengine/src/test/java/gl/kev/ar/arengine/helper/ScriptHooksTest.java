@@ -0,0 +1,141 @@
+package gl.kev.ar.arengine.helper;
+
+import com.threed.jpct.Camera;
+import com.threed.jpct.LogHandler;
+import com.threed.jpct.Logger;
+import com.threed.jpct.Object3D;
+import com.threed.jpct.Primitives;
+
+import org.artoolkit.ar.jpct.TrackableObject3d;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.Collections;
+
+import gl.kev.ar.arengine.helper.jpct.FrustumCuller;
+
+import static org.junit.Assert.*;
+
+/**
+ * Throttling of hooks over the instruction limit and the visibility events.
+ */
+public class ScriptHooksTest {
+
+    private static LogHandler previousHandler;
+
+    // jPCT logs through android.util.Log, which throws on the JVM
+    @BeforeClass
+    public static void silenceJpct() {
+        previousHandler = Logger.getLogHandler();
+        Logger.setLogHandler(new LogHandler() {
+            @Override
+            public boolean log(String message, int type) {
+                return false;
+            }
+        });
+    }
+
+    @AfterClass
+    public static void restoreJpctLogging() {
+        Logger.setLogHandler(previousHandler);
+    }
+
+    private TrackableObject3d marker;
+    private ScriptHooks hooks;
+
+    @Before
+    public void setUp() {
+        marker = new TrackableObject3d("single;test.patt;80");
+        hooks = new ScriptHooks();
+        // No frame budget, only the instruction limit
+        hooks.setBudget(10000, 10000);
+    }
+
+    private ScriptHooks.Hook add(int event, String... body) {
+        ScriptHooks.Hook hook = hooks.add("test", event, body, marker, null, null);
+        assertNotNull(hook);
+        return hook;
+    }
+
+    @Test
+    public void run_throttlesAndDisablesEndlessHooks() {
+        ScriptHooks.Hook endless = add(ScriptHooks.ON_FRAME, "while (true) {}");
+        ScriptHooks.Hook cheap = add(ScriptHooks.ON_FRAME, "var x = 1;");
+        marker.setVisibility(true);
+
+        hooks.run();
+        assertEquals(1, endless.getAborted());
+        assertFalse(endless.isDisabled());
+        assertEquals(1, cheap.getCalls());
+
+        // Aborted with the intervals 1, 2, 4, 8, 16 and 32, the waits in between are skipped
+        for (int i=0; i<100 && !endless.isDisabled(); i++)
+            hooks.run();
+        assertTrue(endless.isDisabled());
+        assertEquals(6, endless.getAborted());
+        assertEquals(6, endless.getCalls());
+        assertEquals(1 + 3 + 7 + 15 + 31, endless.getSkipped());
+        assertFalse(cheap.isDisabled());
+        assertEquals(0, cheap.getAborted());
+
+        long calls = cheap.getCalls();
+        hooks.run();
+        assertEquals(6, endless.getCalls());
+        assertEquals(calls + 1, cheap.getCalls());
+    }
+
+    @Test
+    public void run_callsVisibilityHooksOncePerChange() {
+        ScriptHooks.Hook visible = add(ScriptHooks.ON_VISIBLE, "var x = 1;");
+        ScriptHooks.Hook hidden = add(ScriptHooks.ON_HIDDEN, "var x = 1;");
+        ScriptHooks.Hook frame = add(ScriptHooks.ON_FRAME, "var x = 1;");
+
+        // Hidden from the start is no change
+        hooks.run();
+        assertEquals(0, visible.getCalls());
+        assertEquals(0, hidden.getCalls());
+        assertFalse(hooks.isAnimating());
+
+        marker.setVisibility(true);
+        hooks.run();
+        hooks.run();
+        assertEquals(1, visible.getCalls());
+        assertEquals(0, hidden.getCalls());
+        assertEquals(2, frame.getCalls());
+
+        marker.setVisibility(false);
+        hooks.run();
+        hooks.run();
+        assertEquals(1, visible.getCalls());
+        assertEquals(1, hidden.getCalls());
+        assertEquals(2, frame.getCalls());
+
+        marker.setVisibility(true);
+        hooks.run();
+        assertEquals(2, visible.getCalls());
+        assertEquals(1, hidden.getCalls());
+    }
+
+    @Test
+    public void run_invalidatesMovedNodes() {
+        Object3D node = Primitives.getCube(5);
+        marker.addChild(node);
+        node.build();
+        // The default camera sits at the origin and looks along +z
+        node.translate(1000, 0, 100);
+        marker.setVisibility(true);
+
+        FrustumCuller culler = new FrustumCuller();
+        culler.update(new Camera(), 640, 480, 1, 1000);
+        culler.cull(Collections.singletonList(marker));
+        assertFalse(node.getVisibility());
+
+        hooks = new ScriptHooks(culler);
+        assertNotNull(hooks.add("test", ScriptHooks.ON_VISIBLE, new String[] { "node.translate(-1000, 0, 0);" }, marker, node, null));
+        hooks.run();
+        culler.cull(Collections.singletonList(marker));
+        assertTrue(node.getVisibility());
+    }
+}
@@ -0,0 +1,118 @@
+package gl.kev.ar.arengine.helper.jpct;
+
+import com.threed.jpct.Camera;
+import com.threed.jpct.LogHandler;
+import com.threed.jpct.Logger;
+import com.threed.jpct.Object3D;
+import com.threed.jpct.Primitives;
+
+import org.artoolkit.ar.jpct.TrackableObject3d;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Culling must only hide what is outside of the frustum and must not show what others hid.
+ */
+public class FrustumCullerTest {
+
+    private static LogHandler previousHandler;
+
+    // jPCT logs through android.util.Log, which throws on the JVM
+    @BeforeClass
+    public static void silenceJpct() {
+        previousHandler = Logger.getLogHandler();
+        Logger.setLogHandler(new LogHandler() {
+            @Override
+            public boolean log(String message, int type) {
+                return false;
+            }
+        });
+    }
+
+    @AfterClass
+    public static void restoreJpctLogging() {
+        Logger.setLogHandler(previousHandler);
+    }
+
+    private TrackableObject3d trackable;
+    private List<TrackableObject3d> trackables;
+    private Object3D inside;
+    private Object3D outside;
+    private FrustumCuller culler;
+
+    @Before
+    public void setUp() {
+        trackable = new TrackableObject3d("single;test.patt;80");
+        trackable.setVisibility(true);
+        inside = Primitives.getCube(5);
+        outside = Primitives.getCube(5);
+        trackable.addChild(inside);
+        trackable.addChild(outside);
+        inside.build();
+        outside.build();
+        // The default camera sits at the origin and looks along +z
+        inside.translate(0, 0, 100);
+        outside.translate(1000, 0, 100);
+        trackables = Collections.singletonList(trackable);
+
+        culler = new FrustumCuller();
+        culler.update(new Camera(), 640, 480, 1, 1000);
+    }
+
+    @Test
+    public void cull_hidesObjectsOutside() {
+        assertEquals(1, culler.cull(trackables));
+        assertTrue(inside.getVisibility());
+        assertFalse(outside.getVisibility());
+
+        // Still culled, but not counted again
+        assertEquals(0, culler.cull(trackables));
+        assertFalse(outside.getVisibility());
+
+        outside.translate(-1000, 0, 0);
+        culler.invalidate(outside);
+        culler.cull(trackables);
+        assertTrue(outside.getVisibility());
+    }
+
+    @Test
+    public void cull_keepsObjectsHiddenByOthers() {
+        outside.setVisibility(false);
+        assertEquals(0, culler.cull(trackables));
+
+        outside.translate(-1000, 0, 0);
+        culler.invalidate(outside);
+        culler.cull(trackables);
+        assertFalse(outside.getVisibility());
+    }
+
+    @Test
+    public void invalidateAll_keepsChildrenOfLostMarkersHidden() {
+        culler.cull(trackables);
+        assertFalse(outside.getVisibility());
+
+        // Marker lost, the culler skips it from now on
+        trackable.setVisibility(false);
+        culler.invalidateAll();
+        assertFalse(outside.getVisibility());
+
+        // Found again, the trackable shows its children
+        trackable.setVisibility(true);
+        assertTrue(outside.getVisibility());
+    }
+
+    @Test
+    public void invalidate_keepsChildrenOfLostMarkersHidden() {
+        culler.cull(trackables);
+        trackable.setVisibility(false);
+        culler.invalidate(outside);
+        assertFalse(outside.getVisibility());
+    }
+}
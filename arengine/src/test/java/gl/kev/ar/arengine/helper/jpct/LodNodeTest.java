@@ -0,0 +1,128 @@
+package gl.kev.ar.arengine.helper.jpct;
+
+import com.threed.jpct.Object3D;
+
+import net.gliewe.generic.function.IFuncR0;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Level selection with hysteresis and lazy loading of LodNode.
+ */
+public class LodNodeTest {
+
+    private static Object3D[] objects() {
+        return new Object3D[] { Object3D.createDummyObj() };
+    }
+
+    private static LodNode node() {
+        LodNode node = new LodNode();
+        node.setVisibility(true);
+        node.addLevel(0, objects());
+        node.addLevel(100, objects());
+        node.addLevel(200, objects());
+        node.setHysteresis(0.1f);
+        return node;
+    }
+
+    @Test
+    public void update_switchesWithHysteresis() throws Exception {
+        LodNode node = node();
+        node.update(50);
+        assertEquals(0, node.getActiveLevel());
+
+        // Inside the band around 100 nothing changes
+        node.update(105);
+        assertEquals(0, node.getActiveLevel());
+        node.update(111);
+        assertEquals(1, node.getActiveLevel());
+        node.update(95);
+        assertEquals(1, node.getActiveLevel());
+        node.update(89);
+        assertEquals(0, node.getActiveLevel());
+
+        // Several levels at once
+        node.update(500);
+        assertEquals(2, node.getActiveLevel());
+        node.update(10);
+        assertEquals(0, node.getActiveLevel());
+    }
+
+    @Test
+    public void visibility_onlyActiveLevel() throws Exception {
+        LodNode node = node();
+        node.update(150);
+
+        for(int i = 0 ; i < node.getChildren().size() ; i++)
+            assertEquals(i == 1, node.getChildren().get(i).getVisibility());
+
+        node.setVisibility(false);
+        for(Object3D level : node.getChildren())
+            assertFalse(level.getVisibility());
+
+        node.setVisibility(true);
+        for(int i = 0 ; i < node.getChildren().size() ; i++)
+            assertEquals(i == 1, node.getChildren().get(i).getVisibility());
+    }
+
+    @Test
+    public void lazyLevel_keepsCurrentUntilLoaded() throws Exception {
+        final int[] calls = { 0 };
+        LodNode node = new LodNode();
+        node.setVisibility(true);
+        node.addLevel(0, objects());
+        node.addLevel(100, new IFuncR0<Object3D[]>() {
+            @Override
+            public Object3D[] call() {
+                calls[0]++;
+                return objects();
+            }
+        }, true);
+        assertEquals(0, calls[0]);
+
+        assertFalse(node.update(150));
+        assertEquals(0, node.getActiveLevel());
+
+        boolean attached = false;
+        for(int i = 0 ; i < 100 && node.getActiveLevel() == 0 ; i++) {
+            Thread.sleep(10);
+            attached = node.update(150);
+        }
+        assertEquals(1, node.getActiveLevel());
+        assertTrue(attached);
+        assertFalse(node.isLoading());
+        assertEquals(1, calls[0]);
+    }
+
+    @Test
+    public void failedLevel_keepsCurrent() throws Exception {
+        LodNode node = new LodNode();
+        node.setVisibility(true);
+        node.addLevel(0, objects());
+        node.addLevel(100, new IFuncR0<Object3D[]>() {
+            @Override
+            public Object3D[] call() {
+                throw new IllegalStateException("missing model");
+            }
+        }, true);
+        node.addLevel(200, new IFuncR0<Object3D[]>() {
+            @Override
+            public Object3D[] call() {
+                return null;
+            }
+        }, false);
+
+        for(int i = 0 ; i < 20 ; i++) {
+            Thread.sleep(5);
+            assertFalse(node.update(150));
+        }
+        assertFalse(node.isLoading());
+        assertEquals(0, node.getActiveLevel());
+        assertTrue(node.getChildren().get(0).getVisibility());
+
+        node.update(500);
+        assertEquals(0, node.getActiveLevel());
+    }
+}
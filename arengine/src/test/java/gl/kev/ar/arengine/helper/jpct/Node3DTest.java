@@ -0,0 +1,96 @@
+package gl.kev.ar.arengine.helper.jpct;
+
+import com.threed.jpct.Matrix;
+import com.threed.jpct.Object3D;
+import com.threed.jpct.SimpleVector;
+
+import org.artoolkit.ar.jpct.TrackableObject3d;
+import org.joml.Quaternionf;
+import org.joml.Vector3f;
+import org.junit.Test;
+
+import gl.kev.ar.arengine.helper.math.Position;
+
+import static org.junit.Assert.*;
+
+/**
+ * The cached world matrices of Node3D have to match what jPCT computes.
+ */
+public class Node3DTest {
+
+    private static void assertMatrixEquals(Matrix expected, Matrix actual) {
+        for(int r = 0 ; r < 4 ; r++)
+            for(int c = 0 ; c < 4 ; c++)
+                assertEquals("[" + r + "][" + c + "]", expected.get(r, c), actual.get(r, c), 1e-3f);
+    }
+
+    private static Position pose(float angle, float x, float y, float z) {
+        return new Position(new Vector3f(x, y, z), new Quaternionf().rotateXYZ(angle, angle * 0.5f, -angle));
+    }
+
+    @Test
+    public void worldMatrix_matchesJpct() throws Exception {
+        TrackableObject3d trackable = new TrackableObject3d("single;test.patt;80");
+        Node3D node = new Node3D();
+        Node3D leaf = new Node3D();
+        node.addChild(leaf);
+        trackable.addChild(node);
+
+        node.translate(10, 20, 30);
+        node.rotateY(0.3f);
+        leaf.translate(-5, 0, 12);
+        leaf.rotateX(1.1f);
+
+        for(int i = 0 ; i < 10 ; i++) {
+            trackable.setPosition(pose(i * 0.2f, i * 10f, -i * 3f, 500f + i));
+            if(i % 3 == 0)
+                leaf.rotateZ(0.4f);
+            if(i % 4 == 0)
+                node.translate(new SimpleVector(1, 2, 3));
+
+            assertMatrixEquals(node.getWorldTransformation(), node.getWorldMatrix());
+            assertMatrixEquals(leaf.getWorldTransformation(), leaf.getWorldMatrix());
+        }
+    }
+
+    @Test
+    public void worldVersion_onlyChangesWithTransformations() throws Exception {
+        TrackableObject3d trackable = new TrackableObject3d("single;test.patt;80");
+        Node3D node = new Node3D();
+        Node3D leaf = new Node3D();
+        node.addChild(leaf);
+        trackable.addChild(node);
+        trackable.setPosition(pose(0.5f, 1, 2, 3));
+
+        int nodeVersion = node.getWorldVersion();
+        int leafVersion = leaf.getWorldVersion();
+        assertEquals(nodeVersion, node.getWorldVersion());
+        assertEquals(leafVersion, leaf.getWorldVersion());
+
+        leaf.rotateX(0.1f);
+        assertEquals(nodeVersion, node.getWorldVersion());
+        assertNotEquals(leafVersion, leaf.getWorldVersion());
+
+        leafVersion = leaf.getWorldVersion();
+        trackable.setPosition(pose(0.7f, 1, 2, 3));
+        assertNotEquals(nodeVersion, node.getWorldVersion());
+        assertNotEquals(leafVersion, leaf.getWorldVersion());
+    }
+
+    @Test
+    public void worldVersion_withUncachedParent_onlyChangesWithTheMatrix() throws Exception {
+        Object3D parent = Object3D.createDummyObj();
+        Node3D node = new Node3D();
+        parent.addChild(node);
+        parent.translate(5, 6, 7);
+        node.rotateY(0.2f);
+
+        int version = node.getWorldVersion();
+        assertEquals(version, node.getWorldVersion());
+        assertEquals(version, node.getWorldVersion());
+
+        parent.rotateX(0.3f);
+        assertNotEquals(version, node.getWorldVersion());
+        assertMatrixEquals(node.getWorldTransformation(), node.getWorldMatrix());
+    }
+}
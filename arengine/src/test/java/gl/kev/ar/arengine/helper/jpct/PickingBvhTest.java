@@ -0,0 +1,132 @@
+package gl.kev.ar.arengine.helper.jpct;
+
+import com.threed.jpct.LogHandler;
+import com.threed.jpct.Logger;
+import com.threed.jpct.Object3D;
+import com.threed.jpct.Primitives;
+import com.threed.jpct.SimpleVector;
+
+import org.artoolkit.ar.jpct.TrackableObject3d;
+import org.joml.RayAabIntersection;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Picking through the BVH has to find the same hits as jPCT.
+ */
+public class PickingBvhTest {
+
+    private static LogHandler previousHandler;
+
+    /**
+     * jPCT logs through android.util.Log, which throws on the JVM. A handler that returns false
+     * keeps jPCT from calling it.
+     */
+    @BeforeClass
+    public static void silenceJpct() {
+        previousHandler = Logger.getLogHandler();
+        Logger.setLogHandler(new LogHandler() {
+            @Override
+            public boolean log(String message, int type) {
+                return false;
+            }
+        });
+    }
+
+    @AfterClass
+    public static void restoreJpctLogging() {
+        Logger.setLogHandler(previousHandler);
+    }
+
+    @Test
+    public void bvh_collectsAllHitBoxes() throws Exception {
+        Random random = new Random(7);
+        int count = 500;
+        float[] boxes = new float[count * 6];
+        for(int i = 0 ; i < count ; i++) {
+            for(int a = 0 ; a < 3 ; a++) {
+                float c = random.nextFloat() * 100 - 50;
+                float e = random.nextFloat() * 3;
+                boxes[i * 6 + a] = c - e;
+                boxes[i * 6 + 3 + a] = c + e;
+            }
+        }
+        Bvh bvh = new Bvh();
+        bvh.build(boxes, count);
+
+        RayAabIntersection ray = new RayAabIntersection();
+        for(int r = 0 ; r < 50 ; r++) {
+            ray.set(-80, random.nextFloat() * 40 - 20, random.nextFloat() * 40 - 20, 1, random.nextFloat() - 0.5f, random.nextFloat() - 0.5f);
+
+            int hits = bvh.collect(ray);
+            int[] found = Arrays.copyOf(bvh.getHits(), hits);
+            Arrays.sort(found);
+            for(int i = 0 ; i < count ; i++) {
+                boolean hit = ray.test(boxes[i * 6], boxes[i * 6 + 1], boxes[i * 6 + 2], boxes[i * 6 + 3], boxes[i * 6 + 4], boxes[i * 6 + 5]);
+                // Leaves may report more primitives than hit, but never miss one
+                if(hit)
+                    assertTrue("primitive " + i, Arrays.binarySearch(found, i) >= 0);
+            }
+        }
+    }
+
+    @Test
+    public void pick_matchesJpct() throws Exception {
+        TrackableObject3d trackable = new TrackableObject3d("single;test.patt;80");
+        trackable.setVisibility(true);
+        Node3D node = new Node3D();
+        Object3D near = Primitives.getCube(10);
+        Object3D far = Primitives.getCube(10);
+        // In front of both, but World.calcMinDistance would skip it as well
+        Object3D ignored = Primitives.getCube(10);
+        node.addChild(near);
+        trackable.addChild(node);
+        trackable.addChild(far);
+        trackable.addChild(ignored);
+        near.build();
+        far.build();
+        ignored.build();
+        near.setCollisionMode(Object3D.COLLISION_CHECK_OTHERS);
+        far.setCollisionMode(Object3D.COLLISION_CHECK_OTHERS);
+        ignored.setCollisionMode(Object3D.COLLISION_CHECK_NONE);
+
+        node.translate(0, 0, 100);
+        node.rotateY(0.4f);
+        far.translate(3, 0, 200);
+        ignored.translate(0, 0, 50);
+
+        PickingBvh picker = new PickingBvh();
+        List<TrackableObject3d> trackables = Collections.singletonList(trackable);
+        picker.update(trackables);
+        assertEquals(2, picker.getObjectCount());
+
+        SimpleVector origin = new SimpleVector(0, 0, 0);
+        SimpleVector dir = new SimpleVector(0.01f, 0.02f, 1).normalize();
+        float distance = picker.pick(origin.x, origin.y, origin.z, dir.x, dir.y, dir.z, 100000);
+        assertSame(near, picker.getPickedObject());
+        assertEquals(near.calcMinDistance(origin, dir, 100000), distance, 1e-2f);
+
+        // Moving the node only refits
+        node.translate(0, 50, 0);
+        picker.update(trackables);
+        assertEquals(1, picker.getRebuilds());
+        assertEquals(1, picker.getRefits());
+        distance = picker.pick(origin.x, origin.y, origin.z, dir.x, dir.y, dir.z, 100000);
+        assertSame(far, picker.getPickedObject());
+        assertEquals(far.calcMinDistance(origin, dir, 100000), distance, 1e-2f);
+
+        // Hidden objects are not pickable
+        far.setVisibility(false);
+        picker.update(trackables);
+        assertEquals(2, picker.getRebuilds());
+        assertEquals(Object3D.COLLISION_NONE, picker.pick(origin.x, origin.y, origin.z, dir.x, dir.y, dir.z, 100000), 0f);
+    }
+}
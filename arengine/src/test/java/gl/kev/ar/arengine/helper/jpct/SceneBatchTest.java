@@ -0,0 +1,54 @@
+package gl.kev.ar.arengine.helper.jpct;
+
+import com.threed.jpct.Object3D;
+import com.threed.jpct.SimpleVector;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Positions and transforms set in bulk by config scripts.
+ */
+public class SceneBatchTest {
+
+    private final SceneBatch batch = SceneBatch.getInstance();
+
+    @Test
+    public void along_spacesPointsEvenly() {
+        // Two segments of length 100 and 300
+        float[] path = { 0, 0, 0, 100, 0, 0, 100, 300, 0 };
+        float[] points = batch.along(path, 5);
+
+        assertEquals(15, points.length);
+        assertArrayEquals(new float[] { 0, 0, 0 }, new float[] { points[0], points[1], points[2] }, 1e-4f);
+        assertArrayEquals(new float[] { 100, 0, 0 }, new float[] { points[3], points[4], points[5] }, 1e-4f);
+        assertArrayEquals(new float[] { 100, 100, 0 }, new float[] { points[6], points[7], points[8] }, 1e-4f);
+        assertArrayEquals(new float[] { 100, 300, 0 }, new float[] { points[12], points[13], points[14] }, 1e-4f);
+    }
+
+    @Test
+    public void spawn_placesInstancesAndAttaches() {
+        Object3D template = new Object3D(2);
+        Node3D parent = new Node3D();
+        Object3D[] objects = batch.spawn(template, batch.line(0, 0, 0, 0, 0, 90, 4), parent);
+
+        assertEquals(4, objects.length);
+        for (int i = 0 ; i < objects.length ; i++) {
+            assertNotSame(template, objects[i]);
+            assertTrue(objects[i].hasParent(parent));
+            assertEquals(i * 30, objects[i].getTranslation().z, 1e-4f);
+        }
+
+        batch.translate(objects, batch.grid(0, 0, 10, 20, 2, 2));
+        SimpleVector last = objects[3].getTranslation();
+        assertEquals(10, last.x, 1e-4f);
+        assertEquals(20, last.y, 1e-4f);
+        assertEquals(0, last.z, 1e-4f);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void translate_rejectsTooFewValues() {
+        batch.translate(new Object3D[] { new Object3D(2), new Object3D(2) }, new float[3]);
+    }
+}
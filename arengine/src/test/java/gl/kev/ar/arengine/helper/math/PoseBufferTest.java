@@ -0,0 +1,148 @@
+package gl.kev.ar.arengine.helper.math;
+
+import com.threed.jpct.Matrix;
+
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+import org.junit.Test;
+
+import java.util.Random;
+
+import gl.kev.ar.arengine.helper.jpct.JpctInterop;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks the bulk operations of PoseBuffer against the single pose operations of Pose.
+ */
+public class PoseBufferTest {
+
+    private static final int COUNT = 300;
+    private static final float EPSILON = 1e-3f;
+
+    // In front of the camera
+    private final RandomPoses randomPoses = new RandomPoses(new Random(0xb0ff), new Vector3f(-100f, -100f, -550f), new Vector3f(100f, 100f, -50f));
+
+    private PoseBuffer randomBuffer(Pose[] poses) {
+        // Small initial capacity so growing is covered as well
+        PoseBuffer buffer = new PoseBuffer(2);
+        for(int i = 0 ; i < poses.length ; i++) {
+            poses[i] = randomPoses.next();
+            assertEquals(i, buffer.add(poses[i]));
+        }
+        return buffer;
+    }
+
+    private static void assertPoseEquals(Pose expected, Pose actual) {
+        assertEquals(expected.getT().x, actual.getT().x, EPSILON * 100f);
+        assertEquals(expected.getT().y, actual.getT().y, EPSILON * 100f);
+        assertEquals(expected.getT().z, actual.getT().z, EPSILON * 100f);
+        // q and -q are the same rotation
+        float sign = expected.getQ().dot(actual.getQ()) < 0 ? -1f : 1f;
+        assertEquals(expected.getQ().x, sign * actual.getQ().x, EPSILON);
+        assertEquals(expected.getQ().y, sign * actual.getQ().y, EPSILON);
+        assertEquals(expected.getQ().z, sign * actual.getQ().z, EPSILON);
+        assertEquals(expected.getQ().w, sign * actual.getQ().w, EPSILON);
+    }
+
+    @Test
+    public void compose_matchesPose() throws Exception {
+        Pose[] poses = new Pose[COUNT];
+        PoseBuffer buffer = randomBuffer(poses);
+        Pose reference = randomPoses.next();
+
+        PoseBuffer composed = buffer.compose(reference, 0, COUNT, null);
+        PoseBuffer relative = buffer.relative(reference, 0, COUNT, null);
+        buffer.compose(reference, 0, COUNT, buffer);
+
+        Pose actual = new Pose();
+        for(int i = 0 ; i < COUNT ; i++) {
+            Pose expected = Pose.compose(reference, poses[i], null);
+            assertPoseEquals(expected, composed.get(i, actual));
+            assertPoseEquals(expected, buffer.get(i, actual));
+            assertPoseEquals(Pose.relative(reference, poses[i], null), relative.get(i, actual));
+        }
+    }
+
+    @Test
+    public void setTransformation_matchesPose() throws Exception {
+        PoseBuffer buffer = new PoseBuffer();
+        int index = buffer.add();
+        for(int i = 0 ; i < COUNT ; i++) {
+            Pose pose = randomPoses.next();
+            buffer.setTransformation(index, pose.toMatrix4f(null).get(new float[16]));
+            assertPoseEquals(pose, buffer.get(index, null));
+        }
+    }
+
+    @Test
+    public void packed_roundTrip() throws Exception {
+        Pose[] poses = new Pose[COUNT];
+        PoseBuffer buffer = randomBuffer(poses);
+
+        float[] packed = buffer.getPacked(0, COUNT, null, 0);
+        PoseBuffer copy = new PoseBuffer(COUNT);
+        for(int i = 0 ; i < COUNT ; i++)
+            copy.add();
+        copy.setPacked(0, COUNT, packed, 0);
+
+        float[] single = new float[Pose.PACKED_SIZE];
+        for(int i = 0 ; i < COUNT ; i++) {
+            poses[i].get(single, 0);
+            for(int j = 0 ; j < Pose.PACKED_SIZE ; j++)
+                assertEquals(single[j], packed[i * Pose.PACKED_SIZE + j], 0f);
+            assertPoseEquals(poses[i], copy.get(i, null));
+        }
+    }
+
+    @Test
+    public void smooth_matchesLerp() throws Exception {
+        Pose[] poses = new Pose[COUNT];
+        Pose[] targets = new Pose[COUNT];
+        PoseBuffer buffer = randomBuffer(poses);
+        PoseBuffer target = randomBuffer(targets);
+
+        buffer.smooth(target, 0.25f, 0, COUNT);
+
+        for(int i = 0 ; i < COUNT ; i++) {
+            Pose expected = new Pose();
+            poses[i].getT().lerp(targets[i].getT(), 0.25f, expected.getT());
+            poses[i].getQ().nlerp(targets[i].getQ(), 0.25f, expected.getQ());
+            assertPoseEquals(expected, buffer.get(i, null));
+        }
+    }
+
+    @Test
+    public void project_matchesMatrix() throws Exception {
+        Pose[] poses = new Pose[COUNT];
+        PoseBuffer buffer = randomBuffer(poses);
+        Matrix4f projection = new Matrix4f().perspective(1f, 4f / 3f, 10f, 10000f);
+
+        float[] screen = buffer.project(projection, 640, 480, 0, COUNT, null, 0);
+
+        Vector3f ndc = new Vector3f();
+        for(int i = 0 ; i < COUNT ; i++) {
+            projection.transformProject(poses[i].getT(), ndc);
+            assertEquals((ndc.x + 1f) * 320f, screen[i * 2], 0.01f);
+            assertEquals((1f - ndc.y) * 240f, screen[i * 2 + 1], 0.01f);
+        }
+
+        buffer.set(0, new Pose(0, 0, 100));
+        buffer.project(projection, 640, 480, 0, 1, screen, 0);
+        assertTrue(Float.isNaN(screen[0]));
+    }
+
+    @Test
+    public void toJpct_matchesInterop() throws Exception {
+        Pose[] poses = new Pose[COUNT];
+        PoseBuffer buffer = randomBuffer(poses);
+
+        Matrix[] matrices = buffer.toJpct(0, COUNT, null, 0);
+        for(int i = 0 ; i < COUNT ; i++) {
+            Matrix expected = JpctInterop.toJpct(poses[i].getT(), poses[i].getQ(), null);
+            for(int r = 0 ; r < 4 ; r++)
+                for(int c = 0 ; c < 4 ; c++)
+                    assertEquals(expected.get(r, c), matrices[i].get(r, c), 0f);
+        }
+    }
+}
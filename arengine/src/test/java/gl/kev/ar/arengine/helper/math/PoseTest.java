@@ -0,0 +1,192 @@
+package gl.kev.ar.arengine.helper.math;
+
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import gl.kev.ar.arengine.helper.profiling.FrameAllocationTracker;
+
+import static org.junit.Assert.*;
+
+/**
+ * Property based checks of Pose against Matrix4f on random rigid transformations.
+ */
+public class PoseTest {
+
+    private static final int SAMPLES = 2000;
+    private static final float EPSILON = 1e-3f;
+
+    private final Random random = new Random(0x5eed);
+    private final RandomPoses randomPoses = new RandomPoses(random, new Vector3f(-500f), new Vector3f(500f));
+
+    private static void assertMatrixEquals(String message, Matrix4f expected, Matrix4f actual) {
+        // Translation scales with the scene (up to 1000mm), rotation is unit length.
+        float[] e = expected.toArray(null);
+        float[] a = actual.toArray(null);
+        for(int i = 0 ; i < 16 ; i++) {
+            float tolerance = i >= 12 ? EPSILON * 1000f : EPSILON;
+            assertEquals(message + " [" + i + "]", e[i], a[i], tolerance);
+        }
+    }
+
+    @Test
+    public void compose_matchesMatrixProduct() throws Exception {
+        for(int i = 0 ; i < SAMPLES ; i++) {
+            Pose a = randomPoses.next();
+            Pose b = randomPoses.next();
+
+            Matrix4f expected = a.toMatrix4f(null).mul(b.toMatrix4f(null));
+            Matrix4f actual = Pose.compose(a, b, null).toMatrix4f(null);
+
+            assertMatrixEquals("compose", expected, actual);
+        }
+    }
+
+    @Test
+    public void invert_matchesMatrixInverse() throws Exception {
+        for(int i = 0 ; i < SAMPLES ; i++) {
+            Pose a = randomPoses.next();
+
+            Matrix4f expected = a.toMatrix4f(null).invert();
+            Matrix4f actual = a.invert(null).toMatrix4f(null);
+
+            assertMatrixEquals("invert", expected, actual);
+        }
+    }
+
+    @Test
+    public void relative_matchesInverseTimesMatrix() throws Exception {
+        for(int i = 0 ; i < SAMPLES ; i++) {
+            Pose a = randomPoses.next();
+            Pose b = randomPoses.next();
+
+            Matrix4f expected = a.toMatrix4f(null).invert().mul(b.toMatrix4f(null));
+            Matrix4f actual = Pose.relative(a, b, null).toMatrix4f(null);
+
+            assertMatrixEquals("relative", expected, actual);
+        }
+    }
+
+    @Test
+    public void transformPosition_matchesMatrix() throws Exception {
+        for(int i = 0 ; i < SAMPLES ; i++) {
+            Pose a = randomPoses.next();
+            Vector3f p = new Vector3f(random.nextFloat() * 100f, random.nextFloat() * 100f, random.nextFloat() * 100f);
+
+            Vector3f expected = a.toMatrix4f(null).transformPosition(p, new Vector3f());
+            Vector3f actual = a.transformPosition(p, null);
+
+            assertEquals(expected.x, actual.x, EPSILON * 1000f);
+            assertEquals(expected.y, actual.y, EPSILON * 1000f);
+            assertEquals(expected.z, actual.z, EPSILON * 1000f);
+        }
+    }
+
+    @Test
+    public void operations_doNotChangeArguments_andAllowAliasing() throws Exception {
+        for(int i = 0 ; i < SAMPLES ; i++) {
+            Pose a = randomPoses.next();
+            Pose b = randomPoses.next();
+            Pose aCopy = new Pose(a);
+            Pose bCopy = new Pose(b);
+
+            Matrix4f composed = Pose.compose(a, b, null).toMatrix4f(null);
+            Matrix4f relative = Pose.relative(a, b, null).toMatrix4f(null);
+            Matrix4f inverted = a.invert(null).toMatrix4f(null);
+
+            assertMatrixEquals("a unchanged", aCopy.toMatrix4f(null), a.toMatrix4f(null));
+            assertMatrixEquals("b unchanged", bCopy.toMatrix4f(null), b.toMatrix4f(null));
+
+            assertMatrixEquals("compose into a", composed, Pose.compose(a, b, new Pose(a)).toMatrix4f(null));
+            Pose d = new Pose(a);
+            assertMatrixEquals("compose dest == a", composed, Pose.compose(d, b, d).toMatrix4f(null));
+            d = new Pose(b);
+            assertMatrixEquals("compose dest == b", composed, Pose.compose(a, d, d).toMatrix4f(null));
+            d = new Pose(a);
+            assertMatrixEquals("relative dest == from", relative, Pose.relative(d, b, d).toMatrix4f(null));
+            d = new Pose(b);
+            assertMatrixEquals("relative dest == to", relative, Pose.relative(a, d, d).toMatrix4f(null));
+            d = new Pose(a);
+            assertMatrixEquals("invert in place", inverted, d.invert(d).toMatrix4f(null));
+        }
+    }
+
+    @Test
+    public void packed_roundTrip() throws Exception {
+        float[] packed = new float[Pose.PACKED_SIZE * 3];
+        for(int i = 0 ; i < SAMPLES ; i++) {
+            Pose a = randomPoses.next();
+            a.get(packed, Pose.PACKED_SIZE);
+            Pose b = new Pose().set(packed, Pose.PACKED_SIZE);
+            assertMatrixEquals("packed", a.toMatrix4f(null), b.toMatrix4f(null));
+        }
+    }
+
+    @Test
+    public void fromMatrix_roundTrip() throws Exception {
+        for(int i = 0 ; i < SAMPLES ; i++) {
+            Matrix4f m = randomPoses.next().toMatrix4f(null);
+            assertMatrixEquals("matrix", m, new Pose(m).toMatrix4f(null));
+        }
+    }
+
+    private static final int WARMUP_FRAMES = 5000;
+    private static final int RUNS = 9;
+    private static final int RUN_FRAMES = 200;
+
+    /**
+     * Bytes allocated by RUN_FRAMES frames of the operation, median of RUNS runs after a warm up.
+     * Single frames see JIT and TLAB noise, the median of longer runs does not.
+     */
+    private static long medianRunBytes(FrameAllocationTracker tracker, Runnable operation) {
+        long[] runBytes = new long[RUNS];
+        for(int frame = 0 ; frame < WARMUP_FRAMES + RUNS * RUN_FRAMES ; frame++) {
+            tracker.beginFrame();
+            operation.run();
+            tracker.endFrame();
+            if(frame >= WARMUP_FRAMES)
+                runBytes[(frame - WARMUP_FRAMES) / RUN_FRAMES] += tracker.getLastFrameBytes();
+        }
+        Arrays.sort(runBytes);
+        return runBytes[RUNS / 2];
+    }
+
+    @Test
+    public void operations_doNotAllocate() throws Exception {
+        final Pose a = randomPoses.next();
+        final Pose b = randomPoses.next();
+        final Pose dest = new Pose();
+        final Vector3f point = new Vector3f(1, 2, 3);
+        final Matrix4f matrix = new Matrix4f();
+        final float[] packed = new float[Pose.PACKED_SIZE];
+
+        FrameAllocationTracker tracker = new FrameAllocationTracker();
+        tracker.setEnabled(true);
+
+        // What the counter itself reports for an empty frame
+        long baseline = medianRunBytes(tracker, new Runnable() {
+            @Override
+            public void run() { }
+        });
+        long bytes = medianRunBytes(tracker, new Runnable() {
+            @Override
+            public void run() {
+                Pose.compose(a, b, dest);
+                Pose.relative(a, dest, dest);
+                dest.invert(dest);
+                dest.transformPosition(point, point);
+                dest.toMatrix4f(matrix);
+                dest.set(matrix);
+                dest.get(packed, 0);
+                dest.set(packed, 0);
+            }
+        });
+
+        // An allocating operation adds at least 16 bytes to every frame
+        assertTrue(bytes + " bytes per " + RUN_FRAMES + " frames, " + baseline + " without operations",
+                bytes - baseline < RUN_FRAMES * 16);
+    }
+}
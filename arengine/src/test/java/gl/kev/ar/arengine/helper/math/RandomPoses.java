@@ -0,0 +1,35 @@
+package gl.kev.ar.arengine.helper.math;
+
+import org.joml.Quaternionf;
+import org.joml.Vector3f;
+
+import java.util.Random;
+
+/**
+ * Random rigid transformations for the Pose and PoseBuffer tests: any rotation and a translation
+ * within a box.
+ */
+class RandomPoses {
+
+    private final Random random;
+    private final Vector3f min;
+    private final Vector3f max;
+
+    RandomPoses(Random random, Vector3f min, Vector3f max) {
+        this.random = random;
+        this.min = min;
+        this.max = max;
+    }
+
+    Pose next() {
+        Quaternionf q = new Quaternionf().rotateXYZ(
+                random.nextFloat() * 6.2831855f,
+                random.nextFloat() * 6.2831855f,
+                random.nextFloat() * 6.2831855f);
+        Vector3f t = new Vector3f(
+                min.x + random.nextFloat() * (max.x - min.x),
+                min.y + random.nextFloat() * (max.y - min.y),
+                min.z + random.nextFloat() * (max.z - min.z));
+        return new Pose().set(t, q);
+    }
+}
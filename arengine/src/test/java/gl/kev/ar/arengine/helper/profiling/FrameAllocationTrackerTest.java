@@ -0,0 +1,98 @@
+package gl.kev.ar.arengine.helper.profiling;
+
+import org.joml.Matrix4f;
+import org.joml.Quaternionf;
+import org.joml.Vector3f;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Runs the tracker against the JVM allocation counter, the same way CI runs the marker pipeline.
+ */
+public class FrameAllocationTrackerTest {
+
+    private static final int WARMUP_FRAMES = 2000;
+
+    private FrameAllocationTracker tracker;
+    private int stage;
+
+    // Keeps allocations reachable so they can not be optimized away.
+    private Object sink;
+
+    private final float[] transformation = new float[] {
+            1, 0, 0, 0,
+            0, 0, -1, 0,
+            0, 1, 0, 0,
+            10, 20, 300, 1
+    };
+    private final Matrix4f matrix = new Matrix4f();
+    private final Vector3f translation = new Vector3f();
+    private final Quaternionf rotation = new Quaternionf();
+
+    @Before
+    public void setUp() {
+        tracker = new FrameAllocationTracker();
+        stage = tracker.registerStage("markers", FrameAllocationTracker.NO_BUDGET);
+        tracker.setFailOnBudgetExceeded(true);
+        tracker.setEnabled(true);
+    }
+
+    private void zeroAllocationFrame() {
+        tracker.beginFrame();
+        tracker.beginStage(stage);
+        matrix.set(transformation);
+        matrix.getTranslation(translation);
+        matrix.getNormalizedRotation(rotation);
+        tracker.endFrame();
+    }
+
+    @Test
+    public void zeroAllocationFrame_staysInBudget() throws Exception {
+        for(int i = 0 ; i < WARMUP_FRAMES ; i++)
+            zeroAllocationFrame();
+        tracker.reset();
+
+        tracker.setFrameBudget(256);
+        for(int i = 0 ; i < 100 ; i++)
+            zeroAllocationFrame();
+
+        assertEquals(0, tracker.getFramesOverBudget());
+        assertEquals(100, tracker.getFrameCount());
+    }
+
+    @Test(expected = AllocationBudgetExceededException.class)
+    public void allocatingStage_failsBudget() throws Exception {
+        tracker.setStageBudget(stage, 1024);
+        tracker.beginFrame();
+        tracker.beginStage(stage);
+        sink = new byte[64 * 1024];
+        tracker.endFrame();
+    }
+
+    @Test
+    public void allocatingStage_isCounted() throws Exception {
+        tracker.setFailOnBudgetExceeded(false);
+        tracker.setFrameBudget(1024);
+        tracker.beginFrame();
+        tracker.beginStage(stage);
+        sink = new byte[64 * 1024];
+        tracker.endStage();
+        tracker.endFrame();
+
+        assertTrue(tracker.getLastStageBytes(stage) >= 64 * 1024);
+        assertTrue(tracker.getLastFrameBytes() >= tracker.getLastStageBytes(stage));
+        assertEquals(1, tracker.getFramesOverBudget());
+    }
+
+    @Test
+    public void disabledTracker_countsNothing() throws Exception {
+        tracker.setEnabled(false);
+        tracker.beginFrame();
+        sink = new byte[64 * 1024];
+        tracker.endFrame();
+
+        assertEquals(0, tracker.getFrameCount());
+    }
+}
@@ -0,0 +1,168 @@
+package org.artoolkit.ar.jpct;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * Paging of markers against a fake tracker.
+ */
+public class MarkerPagerTest {
+
+    // 30 fps
+    private static final long FRAME_NANOS = 33333333L;
+
+    private static class FakeRegistrar implements MarkerPager.Registrar {
+        final Set<TrackableObject3d> registered = Collections.newSetFromMap(new IdentityHashMap<TrackableObject3d, Boolean>());
+        final Set<TrackableObject3d> visible = Collections.newSetFromMap(new IdentityHashMap<TrackableObject3d, Boolean>());
+        final Set<TrackableObject3d> broken = Collections.newSetFromMap(new IdentityHashMap<TrackableObject3d, Boolean>());
+        int registrations = 0;
+
+        @Override
+        public boolean isRegistered(TrackableObject3d trackableObject) {
+            return registered.contains(trackableObject);
+        }
+
+        @Override
+        public boolean isVisible(TrackableObject3d trackableObject) {
+            return visible.contains(trackableObject);
+        }
+
+        @Override
+        public boolean register(TrackableObject3d trackableObject) {
+            if (broken.contains(trackableObject))
+                return false;
+            registrations++;
+            return registered.add(trackableObject);
+        }
+
+        @Override
+        public void unregister(TrackableObject3d trackableObject) {
+            registered.remove(trackableObject);
+        }
+    }
+
+    private FakeRegistrar registrar;
+    private List<TrackableObject3d> markers;
+    private long now;
+
+    @Before
+    public void setUp() {
+        registrar = new FakeRegistrar();
+        markers = new ArrayList<>();
+        for (int i=0; i<10; i++) {
+            TrackableObject3d trackableObject = new TrackableObject3d("single;" + i + ".patt;80");
+            markers.add(trackableObject);
+            // Registered up front, like the SceneBuilder does
+            registrar.registered.add(trackableObject);
+        }
+        now = 0;
+    }
+
+    private void frames(MarkerPager pager, int frames, int reserved) {
+        for (int f=0; f<frames; f++) {
+            now += FRAME_NANOS;
+            pager.update(markers, reserved, now);
+            assertTrue("registered " + registrar.registered.size(),
+                    registrar.registered.size() <= Math.max(pager.getMaxActive() - reserved, registrar.visible.size()));
+        }
+    }
+
+    @Test
+    public void update_keepsTheCap() {
+        MarkerPager pager = new MarkerPager(3, registrar);
+        frames(pager, 1, 0);
+        assertEquals(3, registrar.registered.size());
+        assertEquals(3, pager.getActiveCount());
+        assertEquals(7, pager.getPageOuts());
+    }
+
+    @Test
+    public void update_probesColdMarkersSlowly() {
+        MarkerPager pager = new MarkerPager(2, registrar);
+        frames(pager, 1, 0);
+        Set<TrackableObject3d> probes = Collections.newSetFromMap(new IdentityHashMap<TrackableObject3d, Boolean>());
+        probes.addAll(registrar.registered);
+
+        // The probes keep their slots instead of being replaced every pass
+        frames(pager, 25, 0);
+        assertEquals(probes, registrar.registered);
+        assertEquals(0, registrar.registrations);
+
+        frames(pager, 10, 0);
+        assertEquals(2, registrar.registered.size());
+        for (TrackableObject3d trackableObject : registrar.registered)
+            assertFalse(probes.contains(trackableObject));
+        assertEquals(2, registrar.registrations);
+    }
+
+    @Test
+    public void update_keepsVisibleMarkersAndTheirNeighbours() {
+        MarkerPager pager = new MarkerPager(3, registrar);
+        pager.setNeighbours(markers.get(5), markers.get(8));
+        registrar.visible.add(markers.get(5));
+        frames(pager, 1, 0);
+        assertTrue(registrar.isRegistered(markers.get(5)));
+        assertTrue(registrar.isRegistered(markers.get(8)));
+
+        // Lost for a moment, still resident
+        registrar.visible.clear();
+        frames(pager, 20, 0);
+        assertTrue(registrar.isRegistered(markers.get(5)));
+        assertTrue(registrar.isRegistered(markers.get(8)));
+
+        // Gone for longer, the slots are probing again
+        frames(pager, 60, 0);
+        assertFalse(registrar.isRegistered(markers.get(5)) && registrar.isRegistered(markers.get(8)));
+    }
+
+    @Test
+    public void update_countsReservedMarkers() {
+        MarkerPager pager = new MarkerPager(4, registrar);
+        frames(pager, 1, 3);
+        assertEquals(1, registrar.registered.size());
+        assertEquals(3, pager.getReservedCount());
+        TrackableObject3d probe = registrar.registered.iterator().next();
+
+        // Ranges alone use up the cap, only visible markers stay
+        registrar.visible.add(probe);
+        frames(pager, 3, 6);
+        assertEquals(1, registrar.registered.size());
+        assertTrue(registrar.isRegistered(probe));
+
+        // Paged out with the next pass
+        registrar.visible.clear();
+        for (int f=0; f<3; f++)
+            pager.update(markers, 6, now += FRAME_NANOS);
+        assertEquals(0, registrar.registered.size());
+    }
+
+    @Test
+    public void update_skipsMarkersThatFailToRegister() {
+        MarkerPager pager = new MarkerPager(2, registrar);
+        for (int i=0; i<markers.size(); i++)
+            if (i != 4)
+                registrar.broken.add(markers.get(i));
+        registrar.registered.clear();
+
+        frames(pager, 30, 0);
+        assertEquals(1, registrar.registered.size());
+        assertTrue(registrar.isRegistered(markers.get(4)));
+        assertEquals(1, registrar.registrations);
+    }
+
+    @Test
+    public void release_registersAllMarkers() {
+        MarkerPager pager = new MarkerPager(2, registrar);
+        frames(pager, 1, 0);
+        pager.release(markers);
+        assertEquals(markers.size(), registrar.registered.size());
+    }
+}
@@ -394,8 +394,8 @@ public abstract class ARActivity extends Activity implements CameraEventListener
 
         if (ARToolKit.getInstance().convertAndDetect(frame)) {
 
-            // Update the renderer as the frame has changed
-            if (glView != null) glView.requestRender();
+            // Update the renderer as the frame has changed, unless it reports nothing to draw
+            if (glView != null && renderer.needsRender()) glView.requestRender();
 
             onFrameProcessed();
         }
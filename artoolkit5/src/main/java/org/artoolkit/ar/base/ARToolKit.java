@@ -280,6 +280,17 @@ public class ARToolKit {
         return NativeInterface.arwAddMarker(cfg);
     }
 
+    /**
+     * Removes a marker from the set of currently active markers.
+     *
+     * @param markerUID The unique identifier (UID) of the marker to remove.
+     * @return true if the marker was removed.
+     */
+    public boolean removeMarker(int markerUID) {
+        if (!initedNative) return false;
+        return NativeInterface.arwRemoveMarker(markerUID);
+    }
+
     /**
      * Returns whether the marker with the specified ID is currently visible.
      *
@@ -38,11 +38,11 @@
 package org.artoolkit.ar.base.assets;
 
 import android.content.res.AssetManager;
-import android.os.Environment;
 import android.util.Log;
 
+import java.io.Closeable;
 import java.io.File;
-import java.io.FileNotFoundException;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
@@ -59,6 +59,7 @@ public class AssetFileTransfer {
     public File targetDirectory;
 
     public boolean targetFileAlreadyExists;
+    // The hash and CRC fields are no longer set, the files are compared directly
     public String targetFileHash;
     public long targetFileCRC;
     public File tempFile;
@@ -83,12 +84,88 @@ public class AssetFileTransfer {
     }
 
 
+    /**
+     * Compares both streams and stops at the first difference.
+     * @return true if they have the same length and content.
+     */
+    private boolean contentsEqual(InputStream a, InputStream b) throws IOException {
+
+        final int bufferSize = 16384;
+        byte[] bufferA = new byte[bufferSize];
+        byte[] bufferB = new byte[bufferSize];
+
+        while (true) {
+            int bytesRead = readFully(a, bufferA);
+            if (readFully(b, bufferB) != bytesRead) return false;
+            if (bytesRead == 0) return true;
+            for (int i = 0; i < bytesRead; i++) {
+                if (bufferA[i] != bufferB[i]) return false;
+            }
+        }
+    }
+
+    /**
+     * Fills the buffer unless the stream ends, asset streams may return fewer bytes per read.
+     */
+    private static int readFully(InputStream in, byte[] buffer) throws IOException {
+        int total = 0;
+        while (total < buffer.length) {
+            int bytesRead = in.read(buffer, total, buffer.length - total);
+            if (bytesRead == -1) break;
+            total += bytesRead;
+        }
+        return total;
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable == null) return;
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            // Nothing to do
+        }
+    }
+
+    /**
+     * Writes the asset to a temporary file next to the target and renames it over the target,
+     * so an interrupted copy never leaves a partial target file.
+     */
+    private void writeAtomically(InputStream in) throws AssetFileTransferException {
+
+        try {
+            tempFile = File.createTempFile("unpacker", null, targetFile.getParentFile());
+        } catch (IOException ioe) {
+            throw new AssetFileTransferException("Error creating temp file in: " + targetFile.getParent(), ioe);
+        }
+
+        OutputStream out = null;
+        try {
+            out = new FileOutputStream(tempFile);
+            copyContents(in, out);
+            out.close();
+            out = null;
+        } catch (IOException ioe) {
+            closeQuietly(out);
+            tempFile.delete();
+            throw new AssetFileTransferException("Error copying asset to temp file: " + tempFile.getPath(), ioe);
+        }
+
+        if (!tempFile.renameTo(targetFile)) {
+            // Some file systems don't replace existing files on rename
+            targetFile.delete();
+            if (!tempFile.renameTo(targetFile)) {
+                tempFile.delete();
+                throw new AssetFileTransferException("Error moving temp file to: " + targetFile.getPath(), null);
+            }
+        }
+        assetCopied = true;
+    }
+
     public void copyAssetToTargetDir(AssetManager manager, String assetFilePath, String targetDirPath) throws AssetFileTransferException {
 
         assetFile = new File(assetFilePath);
 
         InputStream in;
-        OutputStream out;
 
         try {
             in = manager.open(assetFilePath);
@@ -103,90 +180,47 @@ public class AssetFileTransfer {
 
         Log.i(TAG, "copyAssetToTargetDir(): [" + assetFilePath + "] -> [" + targetFile.getPath() + "]");
 
-        if (targetFileAlreadyExists) {
-
-            //Log.i(TAG, "Target file exists. Unpacking to temporary file first.");
-
-            // Create temporary file to unpack to
-            try {
-                tempFile = File.createTempFile("unpacker", null, Environment.getExternalStorageDirectory());
-                //Log.i(TAG, "Created temp file for unpacking: " + tempFile.getPath());
-            } catch (IOException ioe) {
-                throw new AssetFileTransferException("Error creating temp file: " + tempFile.getPath(), ioe);
-            }
-
-            // Copy asset to temporary file
-            try {
-                out = new FileOutputStream(tempFile);
-            } catch (FileNotFoundException fnfe) {
-                throw new AssetFileTransferException("Error creating temp file: " + tempFile.getPath(), fnfe);
-            }
-            try {
-                copyContents(in, out);
-                in.close();
-                in = null;
-                out.close();
-                out = null;
-            } catch (IOException ioe) {
-                throw new AssetFileTransferException("Error copying asset to temp file: " + tempFile.getPath(), ioe);
-            }
-
-            // Get hashes for new temporary file and existing file
-            try {
-
-                //tempFileHash = Hasher.computeHash(tempFile.getPath());
-                tempFileCRC = Hasher.computeCRC(tempFile.getPath());
-
-                //targetFileHash = Hasher.computeHash(targetFile.getPath());
-                targetFileCRC = Hasher.computeCRC(targetFile.getPath());
-
-            } catch (HashComputationException hce) {
-                throw new AssetFileTransferException("Error hashing files", hce);
-            }
-
-            if (tempFileCRC == targetFileCRC) {
-
-                // The hashes match. The files are the same, so don't need to do anything.
-                //Log.i(TAG, "The hashes match. Keeping existing file, removing temp file.");
-                // Clean up temporary file
-                tempFile.delete();
+        try {
+            if (targetFileAlreadyExists) {
+
+                // Read the asset and the existing file side by side, a single pass that stops at the first difference
+                InputStream existing = null;
+                try {
+                    existing = new FileInputStream(targetFile);
+                    filesMatch = contentsEqual(in, existing);
+                } catch (IOException ioe) {
+                    throw new AssetFileTransferException("Error comparing asset with: " + targetFile.getPath(), ioe);
+                } finally {
+                    closeQuietly(existing);
+                }
+
+                if (filesMatch) {
+                    // The files are the same, so don't need to do anything.
+                    return;
+                }
+
+                // The files differ. Part of the asset was consumed by the comparison, so read it again.
+                closeQuietly(in);
+                try {
+                    in = manager.open(assetFilePath);
+                } catch (IOException e) {
+                    in = null;
+                    throw new AssetFileTransferException("Unable to open the asset file: " + assetFilePath, e);
+                }
+                writeAtomically(in);
 
             } else {
 
-                // The hashes do not match. Overwrite the existing file with the new one.
-                targetFile.delete();
-                //Log.i(TAG, "Deleted existing file");
-                tempFile.renameTo(targetFile);
-                //Log.i(TAG, "Moved temp file: " + tempFile.getPath() + " to " + targetFile.getPath());
-                assetCopied = true;
-            }
-
-        } else {
+                Log.i(TAG, "copyAssetToTargetDir(): Target file does not exist. Creating directory structure.");
 
-            Log.i(TAG, "copyAssetToTargetDir(): Target file does not exist. Creating directory structure.");
+                // Ensure parent directories exist so we can create the file
+                targetDirectory = targetFile.getParentFile();
+                targetDirectory.mkdirs();
 
-            // Ensure parent directories exist so we can create the file
-            targetDirectory = targetFile.getParentFile();
-            targetDirectory.mkdirs();
-
-            // Copy asset to target file
-            try {
-                out = new FileOutputStream(targetFile);
-            } catch (FileNotFoundException fnfe) {
-                throw new AssetFileTransferException("Error creating target file: " + targetFile.getPath(), fnfe);
-            }
-            try {
-                copyContents(in, new FileOutputStream(targetFile));
-                //Log.i(TAG, "Copied asset to target file");
-
-                in.close();
-                in = null;
-                out.close();
-                out = null;
-            } catch (IOException ioe) {
-                throw new AssetFileTransferException("Error copying asset to target file: " + targetFile.getPath(), ioe);
+                writeAtomically(in);
             }
-            assetCopied = true;
+        } finally {
+            closeQuietly(in);
         }
     }
-}
\ No newline at end of file
+}
@@ -83,6 +83,18 @@ public class ARRenderer implements GLSurfaceView.Renderer {
         }
     }
 
+    /**
+     * Called by the Activity after a camera frame has been processed, on the thread that ran
+     * the detection. Returning false skips the render request for this frame, the last
+     * rendered frame stays on screen. Subclasses can override this to skip frames in which
+     * nothing changed.
+     *
+     * @return true if the frame should be rendered.
+     */
+    public boolean needsRender() {
+        return true;
+    }
+
     /**
      * Should be overridden in subclasses and used to perform rendering.
      */
@@ -0,0 +1,155 @@
+package org.artoolkit.ar.base.rendering;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.ArrayDeque;
+
+/**
+ * Pool of direct ByteBuffers in power of two size classes.
+ * <p/>
+ * Allocating direct buffers for short lived data fragments the native heap on Android and their
+ * memory is only returned when the garbage collector finalizes them. Buffers taken with
+ * {@link #acquire(int)} and given back with {@link #release(ByteBuffer)} are reused instead,
+ * the same for float views with {@link #acquireFloats(int)} and {@link #release(FloatBuffer)}.
+ * Buffers above the largest size class are allocated and dropped as usual.
+ */
+public class DirectBufferPool {
+
+    private static final int MIN_CLASS = 6;   // 64 bytes
+    private static final int MAX_CLASS = 22;  // 4 MB
+
+    private static DirectBufferPool instance;
+
+    private final ArrayDeque<ByteBuffer>[] freeBuffers;
+    private final ArrayDeque<FloatBuffer>[] freeFloatBuffers;
+    private int maxPerClass = 8;
+    private long allocatedBytes = 0;
+    private int allocations = 0;
+    private int reuses = 0;
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public DirectBufferPool() {
+        freeBuffers = new ArrayDeque[MAX_CLASS + 1];
+        freeFloatBuffers = new ArrayDeque[MAX_CLASS + 1];
+        for (int i = MIN_CLASS; i <= MAX_CLASS; i++) {
+            freeBuffers[i] = new ArrayDeque<>();
+            freeFloatBuffers[i] = new ArrayDeque<>();
+        }
+    }
+
+    public static synchronized DirectBufferPool getInstance() {
+        if (instance == null)
+            instance = new DirectBufferPool();
+        return instance;
+    }
+
+    /**
+     * @param maxPerClass Free buffers kept per size class, further released buffers are dropped.
+     */
+    public synchronized void setMaxPerClass(int maxPerClass) {
+        this.maxPerClass = maxPerClass;
+    }
+
+    private static int sizeClass(int bytes) {
+        int sizeClass = 32 - Integer.numberOfLeadingZeros(Math.max(bytes, 1) - 1);
+        return Math.max(sizeClass, MIN_CLASS);
+    }
+
+    /**
+     * @return A direct buffer in native byte order with position 0 and limit bytes.
+     * The capacity may be larger.
+     */
+    public synchronized ByteBuffer acquire(int bytes) {
+        int sizeClass = sizeClass(bytes);
+        ByteBuffer buffer = null;
+        if (sizeClass <= MAX_CLASS)
+            buffer = freeBuffers[sizeClass].poll();
+
+        if (buffer != null) {
+            reuses++;
+        } else {
+            int capacity = sizeClass <= MAX_CLASS ? 1 << sizeClass : bytes;
+            buffer = ByteBuffer.allocateDirect(capacity);
+            buffer.order(ByteOrder.nativeOrder());
+            allocatedBytes += capacity;
+            allocations++;
+        }
+        buffer.clear();
+        buffer.limit(bytes);
+        return buffer;
+    }
+
+    /**
+     * Gives a buffer from {@link #acquire(int)} back. It must not be used afterwards.
+     */
+    public synchronized void release(ByteBuffer buffer) {
+        if (buffer == null || !buffer.isDirect())
+            return;
+        int capacity = buffer.capacity();
+        int sizeClass = sizeClass(capacity);
+        // Only exact size class buffers, e.g. not the unpooled large ones
+        if (sizeClass > MAX_CLASS || capacity != 1 << sizeClass)
+            return;
+        if (freeBuffers[sizeClass].size() < maxPerClass)
+            freeBuffers[sizeClass].push(buffer);
+    }
+
+    /**
+     * @return A direct float buffer in native byte order with position 0 and limit floats.
+     * The capacity covers the whole size class.
+     */
+    public synchronized FloatBuffer acquireFloats(int floats) {
+        int sizeClass = sizeClass(floats * 4);
+        FloatBuffer buffer = null;
+        if (sizeClass <= MAX_CLASS)
+            buffer = freeFloatBuffers[sizeClass].poll();
+
+        if (buffer != null) {
+            reuses++;
+        } else {
+            ByteBuffer bytes = acquire(floats * 4);
+            bytes.clear();
+            buffer = bytes.asFloatBuffer();
+        }
+        buffer.clear();
+        buffer.limit(floats);
+        return buffer;
+    }
+
+    /**
+     * Gives a buffer from {@link #acquireFloats(int)} back. It must not be used afterwards.
+     */
+    public synchronized void release(FloatBuffer buffer) {
+        if (buffer == null || !buffer.isDirect())
+            return;
+        int capacity = buffer.capacity() * 4;
+        int sizeClass = sizeClass(capacity);
+        if (sizeClass > MAX_CLASS || capacity != 1 << sizeClass)
+            return;
+        if (freeFloatBuffers[sizeClass].size() < maxPerClass)
+            freeFloatBuffers[sizeClass].push(buffer);
+    }
+
+    /**
+     * Drops all free buffers, e.g. when the app is trimmed.
+     */
+    public synchronized void clear() {
+        for (int i = MIN_CLASS; i <= MAX_CLASS; i++) {
+            freeBuffers[i].clear();
+            freeFloatBuffers[i].clear();
+        }
+    }
+
+    public synchronized long getAllocatedBytes() {
+        return allocatedBytes;
+    }
+
+    public synchronized int getAllocations() {
+        return allocations;
+    }
+
+    public synchronized int getReuses() {
+        return reuses;
+    }
+}
@@ -84,8 +84,9 @@ public class Line {
             vertices[i + vertexLength] = end[i];
         }
 
-        mVertexBuffer = RenderUtils.buildFloatBuffer(vertices);
-        mColorBuffer = RenderUtils.buildFloatBuffer(color);
+        // Called on every draw by LineGLES20, reuse the buffers
+        mVertexBuffer = RenderUtils.fillFloatBuffer(vertices, mVertexBuffer);
+        mColorBuffer = RenderUtils.fillFloatBuffer(color, mColorBuffer);
     }
 
     public void draw(GL10 gl) {
@@ -72,6 +72,27 @@ public class RenderUtils {
         return sb;
     }
 
+    /**
+     * Like {@link #buildFloatBuffer(float[])}, but writes into reuse if it is large enough.
+     * New buffers come from the {@link DirectBufferPool}, so data that changes every frame
+     * does not allocate a direct buffer every frame. An outgrown reuse buffer goes back to the
+     * pool and must not be used afterwards.
+     *
+     * @return reuse or a new buffer, with position 0 and limit arr.length.
+     */
+    public static FloatBuffer fillFloatBuffer(float[] arr, FloatBuffer reuse) {
+        FloatBuffer fb = reuse;
+        if (fb == null || fb.capacity() < arr.length) {
+            DirectBufferPool pool = DirectBufferPool.getInstance();
+            pool.release(reuse);
+            fb = pool.acquireFloats(arr.length);
+        }
+        fb.clear();
+        fb.put(arr);
+        fb.flip();
+        return fb;
+    }
+
     public static ByteBuffer buildByteBuffer(byte[] arr) {
         ByteBuffer bb = ByteBuffer.allocateDirect(arr.length);
         bb.put(arr);
@@ -74,6 +74,8 @@ public abstract class ARRendererGLES20 extends ARRenderer {
 
         // Transparent background
         GLES20.glClearColor(0.0f, 0.0f, 0.0f, 0.f);
+        // Buffer objects of a previous context are gone, upload them again when used
+        GpuBufferManager.getInstance().onContextCreated();
         this.baseShaderProgram = new BaseShaderProgram(new BaseVertexShader(), new BaseFragmentShader());
         GLES20.glUseProgram(baseShaderProgram.getShaderProgramHandle());
     }
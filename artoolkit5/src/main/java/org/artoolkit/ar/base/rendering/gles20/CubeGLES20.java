@@ -36,6 +36,8 @@
  */
 package org.artoolkit.ar.base.rendering.gles20;
 
+import android.opengl.GLES20;
+
 import org.artoolkit.ar.base.rendering.Cube;
 
 /**
@@ -43,7 +45,13 @@ import org.artoolkit.ar.base.rendering.Cube;
  */
 public class CubeGLES20 extends Cube implements ARDrawableOpenGLES20 {
 
+    private static final int INDEX_COUNT = 36;
+
     private ShaderProgram shaderProgram;
+    private boolean useGpuBuffers = false;
+    private GpuBuffer vertexGpuBuffer;
+    private GpuBuffer colorGpuBuffer;
+    private GpuBuffer indexGpuBuffer;
 
     public CubeGLES20(ShaderProgram shaderProgram) {
         super();
@@ -70,8 +78,30 @@ public class CubeGLES20 extends Cube implements ARDrawableOpenGLES20 {
         shaderProgram.setProjectionMatrix(projectionMatrix);
         shaderProgram.setModelViewMatrix(modelViewMatrix);
 
-        shaderProgram.render(this.getmVertexBuffer(), this.getmColorBuffer(), this.getmIndexBuffer());
+        if (useGpuBuffers) {
+            if (vertexGpuBuffer == null) {
+                // Uploaded once, the manager takes care of context losses
+                GpuBufferManager manager = GpuBufferManager.getInstance();
+                vertexGpuBuffer = manager.createVertexBuffer(this.getmVertexBuffer());
+                colorGpuBuffer = manager.createVertexBuffer(this.getmColorBuffer());
+                indexGpuBuffer = manager.createIndexBuffer(this.getmIndexBuffer());
+            }
+            shaderProgram.render(vertexGpuBuffer, colorGpuBuffer, indexGpuBuffer, GLES20.GL_TRIANGLES, INDEX_COUNT);
+        } else {
+            shaderProgram.render(this.getmVertexBuffer(), this.getmColorBuffer(), this.getmIndexBuffer());
+        }
+
+    }
 
+    /**
+     * @param useGpuBuffers true uploads the geometry once and draws it with
+     *                      {@link ShaderProgram#render(GpuBuffer, GpuBuffer, GpuBuffer, int, int)}.
+     *                      Off by default, the client side arrays are sent to
+     *                      {@link ShaderProgram#render(java.nio.FloatBuffer, java.nio.FloatBuffer, java.nio.ByteBuffer)}
+     *                      on every draw, where shader programs may bind their own attributes.
+     */
+    public void setUseGpuBuffers(boolean useGpuBuffers) {
+        this.useGpuBuffers = useGpuBuffers;
     }
 
     @Override
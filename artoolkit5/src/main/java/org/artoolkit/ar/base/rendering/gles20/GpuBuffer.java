@@ -0,0 +1,136 @@
+package org.artoolkit.ar.base.rendering.gles20;
+
+import android.opengl.GLES20;
+
+import org.artoolkit.ar.base.rendering.DirectBufferPool;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.ShortBuffer;
+
+/**
+ * A vertex (VBO) or index (IBO) buffer object, created with {@link GpuBufferManager}.
+ * <p/>
+ * The data is uploaded when the buffer is bound first. The buffer keeps a reference to its data,
+ * so after the GL context was lost it is uploaded again into a new handle, see
+ * {@link GpuBufferManager#onContextCreated()}.
+ * <p/>
+ * Dynamic buffers are updated with {@link #update(float[], int)}, which copies through a pooled
+ * direct buffer.
+ */
+public class GpuBuffer {
+
+    private final GpuBufferManager manager;
+    private final int target;
+    private final int usage;
+    private final int indexType;
+    private Buffer data;
+    private float[] floats;
+    private int bytes;
+    private int handle = 0;
+    private int generation = -1;
+    private final int[] handles = new int[1];
+
+    GpuBuffer(GpuBufferManager manager, int target, int usage, int indexType, Buffer data, int bytes) {
+        this.manager = manager;
+        this.target = target;
+        this.usage = usage;
+        this.indexType = indexType;
+        this.data = data;
+        this.bytes = bytes;
+    }
+
+    void setInitialData(float[] values, int count) {
+        floats = values;
+        bytes = count * 4;
+    }
+
+    static int bytes(Buffer buffer) {
+        if (buffer instanceof FloatBuffer)
+            return buffer.limit() * 4;
+        if (buffer instanceof ShortBuffer)
+            return buffer.limit() * 2;
+        if (buffer instanceof ByteBuffer)
+            return buffer.limit();
+        throw new IllegalArgumentException("Unsupported buffer type " + buffer.getClass());
+    }
+
+    /**
+     * Binds the buffer to its target, uploads it first if this context has not seen it yet.
+     */
+    public void bind() {
+        if (generation != manager.getGeneration()) {
+            // New handle, the old one died with its context
+            GLES20.glGenBuffers(1, handles, 0);
+            handle = handles[0];
+            generation = manager.getGeneration();
+            GLES20.glBindBuffer(target, handle);
+            upload();
+            return;
+        }
+        GLES20.glBindBuffer(target, handle);
+    }
+
+    private void upload() {
+        if (floats != null) {
+            ByteBuffer staging = DirectBufferPool.getInstance().acquire(bytes);
+            staging.asFloatBuffer().put(floats, 0, bytes / 4);
+            GLES20.glBufferData(target, bytes, staging, usage);
+            DirectBufferPool.getInstance().release(staging);
+        } else {
+            data.position(0);
+            GLES20.glBufferData(target, bytes, data, usage);
+        }
+        manager.onUpload(bytes);
+    }
+
+    /**
+     * Replaces the content of a dynamic buffer. Must be called on the GL thread.
+     * The array is kept to upload it again after a context loss, so do not change it while the buffer is used.
+     */
+    public void update(float[] values, int count) {
+        floats = values;
+        data = null;
+        bytes = count * 4;
+        if (generation != manager.getGeneration()) {
+            bind();
+        } else {
+            GLES20.glBindBuffer(target, handle);
+            upload();
+        }
+        unbind();
+    }
+
+    public void unbind() {
+        GLES20.glBindBuffer(target, 0);
+    }
+
+    /**
+     * Deletes the handle in the current context. The buffer must not be used afterwards.
+     */
+    public void delete() {
+        if (generation == manager.getGeneration() && handle != 0) {
+            handles[0] = handle;
+            GLES20.glDeleteBuffers(1, handles, 0);
+        }
+        handle = 0;
+        generation = -1;
+        manager.onDelete(this);
+    }
+
+    public int getTarget() {
+        return target;
+    }
+
+    /**
+     * @return GL_UNSIGNED_BYTE or GL_UNSIGNED_SHORT for index buffers, 0 for vertex buffers.
+     */
+    public int getIndexType() {
+        return indexType;
+    }
+
+    public int getBytes() {
+        return bytes;
+    }
+}
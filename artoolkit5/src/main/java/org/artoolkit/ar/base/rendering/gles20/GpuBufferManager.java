@@ -0,0 +1,101 @@
+package org.artoolkit.ar.base.rendering.gles20;
+
+import android.opengl.GLES20;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.ShortBuffer;
+import java.util.Collections;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+/**
+ * Creates {@link GpuBuffer}s for geometry that is uploaded once and drawn from GPU memory,
+ * instead of sending client side arrays with every draw call.
+ * <p/>
+ * GL handles belong to a context. The renderer calls {@link #onContextCreated()} from
+ * onSurfaceCreated, which makes every buffer upload its data into a new handle when it is bound next.
+ */
+public class GpuBufferManager {
+
+    private static GpuBufferManager instance;
+
+    private volatile int generation = 0;
+    private final Set<GpuBuffer> buffers = Collections.newSetFromMap(new WeakHashMap<GpuBuffer, Boolean>());
+    private long uploadedBytes = 0;
+    private int uploads = 0;
+
+    public static synchronized GpuBufferManager getInstance() {
+        if (instance == null)
+            instance = new GpuBufferManager();
+        return instance;
+    }
+
+    /**
+     * Static vertex data, e.g. positions or colors.
+     */
+    public synchronized GpuBuffer createVertexBuffer(FloatBuffer data) {
+        return register(new GpuBuffer(this, GLES20.GL_ARRAY_BUFFER, GLES20.GL_STATIC_DRAW, 0, data, GpuBuffer.bytes(data)));
+    }
+
+    /**
+     * Vertex data that changes, see {@link GpuBuffer#update(float[], int)}.
+     */
+    public synchronized GpuBuffer createDynamicVertexBuffer(float[] values, int count) {
+        GpuBuffer buffer = register(new GpuBuffer(this, GLES20.GL_ARRAY_BUFFER, GLES20.GL_DYNAMIC_DRAW, 0, null, 0));
+        buffer.setInitialData(values, count);
+        return buffer;
+    }
+
+    public synchronized GpuBuffer createIndexBuffer(ByteBuffer indices) {
+        return register(new GpuBuffer(this, GLES20.GL_ELEMENT_ARRAY_BUFFER, GLES20.GL_STATIC_DRAW,
+                GLES20.GL_UNSIGNED_BYTE, indices, GpuBuffer.bytes(indices)));
+    }
+
+    public synchronized GpuBuffer createIndexBuffer(ShortBuffer indices) {
+        return register(new GpuBuffer(this, GLES20.GL_ELEMENT_ARRAY_BUFFER, GLES20.GL_STATIC_DRAW,
+                GLES20.GL_UNSIGNED_SHORT, indices, GpuBuffer.bytes(indices)));
+    }
+
+    private GpuBuffer register(GpuBuffer buffer) {
+        buffers.add(buffer);
+        return buffer;
+    }
+
+    /**
+     * A new GL context was created, all handles of the old one are gone.
+     * Call from onSurfaceCreated.
+     */
+    public void onContextCreated() {
+        generation++;
+    }
+
+    int getGeneration() {
+        return generation;
+    }
+
+    synchronized void onUpload(int bytes) {
+        uploadedBytes += bytes;
+        uploads++;
+    }
+
+    synchronized void onDelete(GpuBuffer buffer) {
+        buffers.remove(buffer);
+    }
+
+    public synchronized int getBufferCount() {
+        return buffers.size();
+    }
+
+    /**
+     * @return Bytes uploaded since start, including uploads after context losses.
+     */
+    public synchronized long getUploadedBytes() {
+        return uploadedBytes;
+    }
+
+    public synchronized int getUploads() {
+        return uploads;
+    }
+}
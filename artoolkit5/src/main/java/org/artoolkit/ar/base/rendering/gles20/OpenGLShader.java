@@ -52,6 +52,8 @@ public interface OpenGLShader {
     //Also used to provide a link to the shader program. In this case we pass in the position vectors from the
     //AR application to the shader.
     String positionVectorString = "a_Position";
+    //Optional per-vertex color, used by ShaderProgram when rendering from GPU buffers
+    String colorVectorString = "a_Color";
 
     public int configureShader();
 
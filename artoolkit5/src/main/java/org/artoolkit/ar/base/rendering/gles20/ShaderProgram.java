@@ -82,6 +82,12 @@ public abstract class ShaderProgram {
     protected float[] projectionMatrix;
     protected float[] modelViewMatrix;
 
+    /* Attribute locations for GPU buffer rendering, -2 until looked up, -1 if the shader does not have it */
+    protected int positionAttribute = -2;
+    protected int colorAttribute = -2;
+
+    private FloatBuffer positionBuffer;
+
     public ShaderProgram(OpenGLShader vertexShader, OpenGLShader fragmentShader) {
         shaderProgramHandle = createProgram(vertexShader.configureShader(), fragmentShader.configureShader());
     }
@@ -153,7 +159,59 @@ public abstract class ShaderProgram {
      * @param position The position to be rendered
      */
     public void render(float[] position) {
-        render(RenderUtils.buildFloatBuffer(position), null);
+        positionBuffer = RenderUtils.fillFloatBuffer(position, positionBuffer);
+        render(positionBuffer, null);
+    }
+
+    /**
+     * Renders geometry from GPU buffers, see {@link GpuBufferManager}. The vertex data is bound to
+     * {@link OpenGLShader#positionVectorString} and, if the shader has it, {@link OpenGLShader#colorVectorString}.
+     * Override {@link #setupGpuAttributes()} for other attributes.
+     *
+     * @param vertexBuffer positions, {@link #positionDataSize} floats per vertex
+     * @param colorBuffer  colors, {@link #colorDataSize} floats per vertex, may be null
+     * @param indexBuffer  indices, may be null to draw the vertices in order
+     * @param mode         e.g. GL_TRIANGLES
+     * @param count        number of indices or vertices
+     */
+    public void render(GpuBuffer vertexBuffer, GpuBuffer colorBuffer, GpuBuffer indexBuffer, int mode, int count) {
+        setupShaderUsage();
+        setupGpuAttributes();
+
+        vertexBuffer.bind();
+        GLES20.glVertexAttribPointer(positionAttribute, positionDataSize, GLES20.GL_FLOAT, false, positionStrideBytes, 0);
+        GLES20.glEnableVertexAttribArray(positionAttribute);
+
+        boolean colors = colorBuffer != null && colorAttribute >= 0;
+        if (colors) {
+            colorBuffer.bind();
+            GLES20.glVertexAttribPointer(colorAttribute, colorDataSize, GLES20.GL_FLOAT, false, colorStrideBytes, 0);
+            GLES20.glEnableVertexAttribArray(colorAttribute);
+        }
+        vertexBuffer.unbind();
+
+        if (indexBuffer != null) {
+            indexBuffer.bind();
+            GLES20.glDrawElements(mode, count, indexBuffer.getIndexType(), 0);
+            indexBuffer.unbind();
+        } else {
+            GLES20.glDrawArrays(mode, 0, count);
+        }
+
+        // Client side arrays of other geometry must not pick up these attributes
+        GLES20.glDisableVertexAttribArray(positionAttribute);
+        if (colors)
+            GLES20.glDisableVertexAttribArray(colorAttribute);
+    }
+
+    /**
+     * Looks up the attribute locations used by {@link #render(GpuBuffer, GpuBuffer, GpuBuffer, int, int)} once.
+     */
+    protected void setupGpuAttributes() {
+        if (positionAttribute == -2) {
+            positionAttribute = GLES20.glGetAttribLocation(shaderProgramHandle, OpenGLShader.positionVectorString);
+            colorAttribute = GLES20.glGetAttribLocation(shaderProgramHandle, OpenGLShader.colorVectorString);
+        }
     }
 
     public void setProjectionMatrix(float[] projectionMatrix) {
@@ -0,0 +1,105 @@
+package gl.kev.ar.benchmark;
+
+import com.threed.jpct.Matrix;
+import com.threed.jpct.SimpleVector;
+
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+import gl.kev.ar.arengine.helper.jpct.JpctInterop;
+import gl.kev.ar.arengine.helper.math.Position;
+
+/**
+ * Created by kevingliewe on 18.10.26.
+ *
+ * joml to jPCT conversion: the old path through temporaries against JpctInterop.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InteropBenchmark {
+
+    private Position[] positions;
+    private Matrix4f[] matrices;
+    private int index = 0;
+
+    private final Matrix jpctMatrix = new Matrix();
+    private final SimpleVector simpleVector = new SimpleVector();
+    private final Vector3f vector = new Vector3f();
+
+    @Setup
+    public void setUp() {
+        float[][] transformations = MarkerData.transformations(3);
+        positions = new Position[MarkerData.COUNT];
+        matrices = new Matrix4f[MarkerData.COUNT];
+        for(int i = 0 ; i < MarkerData.COUNT ; i++) {
+            matrices[i] = new Matrix4f(transformations[i]);
+            positions[i] = new Position(matrices[i]);
+        }
+    }
+
+    private int next() {
+        index = (index + 1) % MarkerData.COUNT;
+        return index;
+    }
+
+    @Benchmark
+    public Matrix positionToJpctTemporaries() {
+        jpctMatrix.setDump(positions[next()].toMatrix4f(null).toArray(null));
+        return jpctMatrix;
+    }
+
+    @Benchmark
+    public Matrix positionToJpctInterop() {
+        Position p = positions[next()];
+        return JpctInterop.toJpct(p.getV(), p.getQ(), jpctMatrix);
+    }
+
+    @Benchmark
+    public Matrix matrix4fToJpctTemporaries() {
+        jpctMatrix.setDump(matrices[next()].toArray(null));
+        return jpctMatrix;
+    }
+
+    @Benchmark
+    public Matrix matrix4fToJpctInterop() {
+        return JpctInterop.toJpct(matrices[next()], jpctMatrix);
+    }
+
+    @Benchmark
+    public SimpleVector vectorToSimpleVectorTemporaries() {
+        return positions[next()].getV().toSimpleVector();
+    }
+
+    @Benchmark
+    public SimpleVector vectorToSimpleVectorInterop() {
+        return JpctInterop.toJpct(positions[next()].getV(), simpleVector);
+    }
+
+    @Benchmark
+    public Vector3f simpleVectorToVectorTemporaries() {
+        simpleVector.set(next(), 1, 2);
+        return new Vector3f(simpleVector);
+    }
+
+    @Benchmark
+    public Vector3f simpleVectorToVectorInterop() {
+        simpleVector.set(next(), 1, 2);
+        return JpctInterop.toJoml(simpleVector, vector);
+    }
+}
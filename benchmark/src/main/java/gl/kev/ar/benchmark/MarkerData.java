@@ -0,0 +1,34 @@
+package gl.kev.ar.benchmark;
+
+import org.joml.Matrix4f;
+
+import java.util.Random;
+
+/**
+ * Created by kevingliewe on 18.10.26.
+ *
+ * Marker transformations shaped like the ones ARToolKit reports
+ * (column major, rotation plus a translation a few hundred mm in front of the camera).
+ */
+public class MarkerData {
+    public static final int COUNT = 64;
+
+    public static float[][] transformations(long seed) {
+        Random random = new Random(seed);
+        float[][] ret = new float[COUNT][];
+        Matrix4f m = new Matrix4f();
+        for(int i = 0 ; i < COUNT ; i++) {
+            m.identity()
+                    .translate(
+                            (random.nextFloat() - 0.5f) * 400f,
+                            (random.nextFloat() - 0.5f) * 300f,
+                            -200f - random.nextFloat() * 800f)
+                    .rotateXYZ(
+                            random.nextFloat() * 6.2831855f,
+                            random.nextFloat() * 6.2831855f,
+                            random.nextFloat() * 6.2831855f);
+            ret[i] = m.toArray(null);
+        }
+        return ret;
+    }
+}
@@ -0,0 +1,83 @@
+package gl.kev.ar.benchmark;
+
+import com.threed.jpct.Matrix;
+
+import org.joml.Matrix4f;
+import org.joml.Quaternionf;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+import gl.kev.ar.arengine.helper.math.Position;
+
+/**
+ * Created by kevingliewe on 18.10.26.
+ *
+ * Per marker and frame conversions done in TrackableObject3d.updateMarkerTransformation.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MatrixBenchmark {
+
+    private float[][] transformations;
+    private int index = 0;
+
+    private final Matrix4f matrix = new Matrix4f();
+    private final Quaternionf rotation = new Quaternionf();
+    private final Matrix jpctMatrix = new Matrix();
+
+    @Setup
+    public void setUp() {
+        transformations = MarkerData.transformations(42);
+        matrix.set(transformations[0]);
+    }
+
+    private float[] next() {
+        index = (index + 1) % MarkerData.COUNT;
+        return transformations[index];
+    }
+
+    @Benchmark
+    public Matrix4f matrix4fFromArray() {
+        return new Matrix4f(next());
+    }
+
+    @Benchmark
+    public Matrix4f matrix4fSetArray() {
+        return matrix.set(next());
+    }
+
+    @Benchmark
+    public Quaternionf getNormalizedRotation() {
+        return matrix.set(next()).getNormalizedRotation(new Quaternionf());
+    }
+
+    @Benchmark
+    public Quaternionf getNormalizedRotationInto() {
+        return matrix.set(next()).getNormalizedRotation(rotation);
+    }
+
+    @Benchmark
+    public Matrix jpctSetDump() {
+        jpctMatrix.setDump(next());
+        return jpctMatrix;
+    }
+
+    @Benchmark
+    public Position positionFromArray() {
+        return new Position(new Matrix4f(next()));
+    }
+}
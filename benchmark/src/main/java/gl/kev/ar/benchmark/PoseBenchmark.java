@@ -0,0 +1,63 @@
+package gl.kev.ar.benchmark;
+
+import org.joml.Matrix4f;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+import gl.kev.ar.arengine.helper.math.Pose;
+
+/**
+ * Created by kevingliewe on 18.10.26.
+ *
+ * Pose counterpart of TagBenchmark and the matrix based composition in MatrixBenchmark.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PoseBenchmark {
+
+    private Pose[] trackables;
+    private int index = 0;
+
+    private final Pose tag = new Pose(100, 100, 100);
+    private final Pose result = new Pose();
+
+    @Setup
+    public void setUp() {
+        float[][] transformations = MarkerData.transformations(21);
+        trackables = new Pose[MarkerData.COUNT];
+        for(int i = 0 ; i < MarkerData.COUNT ; i++)
+            trackables[i] = new Pose(new Matrix4f(transformations[i]));
+    }
+
+    @Benchmark
+    public Pose compose() {
+        index = (index + 1) % MarkerData.COUNT;
+        return Pose.compose(trackables[index], tag, result);
+    }
+
+    @Benchmark
+    public Pose relative() {
+        index = (index + 1) % MarkerData.COUNT;
+        return Pose.relative(trackables[index], tag, result);
+    }
+
+    @Benchmark
+    public Pose invert() {
+        index = (index + 1) % MarkerData.COUNT;
+        return trackables[index].invert(result);
+    }
+}
@@ -0,0 +1,95 @@
+package gl.kev.ar.benchmark;
+
+import com.threed.jpct.Matrix;
+
+import org.joml.Matrix4f;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+import gl.kev.ar.arengine.helper.math.Position;
+
+/**
+ * Created by kevingliewe on 18.10.26.
+ *
+ * Position operations used for lerping, tags and TrackableObject3d.setPosition.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PositionBenchmark {
+
+    private Position[] positions;
+    private int index = 0;
+
+    private final Position dest = new Position();
+    private final Matrix4f matrix = new Matrix4f();
+    private final Matrix jpctMatrix = new Matrix();
+
+    @Setup
+    public void setUp() {
+        float[][] transformations = MarkerData.transformations(7);
+        positions = new Position[MarkerData.COUNT];
+        for(int i = 0 ; i < MarkerData.COUNT ; i++)
+            positions[i] = new Position(new Matrix4f(transformations[i]));
+    }
+
+    private Position next() {
+        index = (index + 1) % MarkerData.COUNT;
+        return positions[index];
+    }
+
+    @Benchmark
+    public Position getDiff() {
+        return next().getDiff(positions[0], null);
+    }
+
+    @Benchmark
+    public Position getDiffInto() {
+        return next().getDiff(positions[0], dest);
+    }
+
+    @Benchmark
+    public Position add() {
+        return next().add(positions[0]);
+    }
+
+    @Benchmark
+    public Position invert() {
+        return next().invert();
+    }
+
+    @Benchmark
+    public Position invertInto() {
+        return next().invert(dest);
+    }
+
+    @Benchmark
+    public Matrix4f toMatrix4f() {
+        return next().toMatrix4f(null);
+    }
+
+    @Benchmark
+    public Matrix4f toMatrix4fInto() {
+        return next().toMatrix4f(matrix);
+    }
+
+    @Benchmark
+    public Matrix toJpctMatrix() {
+        // Same path as Position.apply and TrackableObject3d.setPosition
+        jpctMatrix.setDump(next().toMatrix4f(null).toArray(null));
+        return jpctMatrix;
+    }
+}
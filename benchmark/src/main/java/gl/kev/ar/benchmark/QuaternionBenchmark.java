@@ -0,0 +1,63 @@
+package gl.kev.ar.benchmark;
+
+import org.joml.Matrix4f;
+import org.joml.Quaternionf;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Created by kevingliewe on 18.10.26.
+ *
+ * Rotation interpolation as used by the lerping of TrackableObject3d.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class QuaternionBenchmark {
+
+    private Quaternionf[] rotations;
+    private int index = 0;
+
+    private final Quaternionf dest = new Quaternionf();
+
+    @Setup
+    public void setUp() {
+        float[][] transformations = MarkerData.transformations(13);
+        rotations = new Quaternionf[MarkerData.COUNT];
+        for(int i = 0 ; i < MarkerData.COUNT ; i++)
+            rotations[i] = new Matrix4f(transformations[i]).getNormalizedRotation(new Quaternionf());
+    }
+
+    private Quaternionf next() {
+        index = (index + 1) % MarkerData.COUNT;
+        return rotations[index];
+    }
+
+    @Benchmark
+    public Quaternionf nlerp() {
+        return next().nlerp(rotations[0], 0.1f, new Quaternionf());
+    }
+
+    @Benchmark
+    public Quaternionf nlerpInto() {
+        return next().nlerp(rotations[0], 0.1f, dest);
+    }
+
+    @Benchmark
+    public Quaternionf slerpInto() {
+        return next().slerp(rotations[0], 0.1f, dest);
+    }
+}
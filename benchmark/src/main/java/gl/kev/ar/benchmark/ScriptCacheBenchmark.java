@@ -0,0 +1,102 @@
+package gl.kev.ar.benchmark;
+
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.Script;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import gl.kev.ar.arengine.helper.ScriptCache;
+
+/**
+ * Created by kevingliewe on 18.10.26.
+ *
+ * Cold start cost of a large script_world block: parsed from source, or loaded from the
+ * ScriptCache directory written by a previous start. Every invocation uses an empty memory cache.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ScriptCacheBenchmark {
+
+    @Param({"50", "500"})
+    public int functions;
+
+    private String source;
+    private File directory;
+
+    @Setup
+    public void setUp() throws IOException {
+        StringBuilder sb = new StringBuilder();
+        for(int i = 0 ; i < functions ; i++) {
+            sb.append("function place").append(i).append("(world, x, y) {\n")
+                    .append("  var o = { name: 'object").append(i).append("', x: x * ").append(i).append(", y: y + ").append(i).append(" };\n")
+                    .append("  for (var j = 0; j < 3; j++) { o.x += Math.sin(j) * o.y; }\n")
+                    .append("  return o;\n")
+                    .append("}\n");
+        }
+        source = sb.toString();
+
+        directory = File.createTempFile("scripts", "");
+        directory.delete();
+        // Written like on the first start
+        Context cx = enter();
+        try {
+            new ScriptCache(directory).compile(cx, source, "script_world");
+        } finally {
+            Context.exit();
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        File[] files = directory.listFiles();
+        if(files != null)
+            for(File file : files)
+                file.delete();
+        directory.delete();
+    }
+
+    private static Context enter() {
+        Context cx = Context.enter();
+        // Like Scripting, only interpreted scripts are cached on disk
+        cx.setOptimizationLevel(-1);
+        return cx;
+    }
+
+    @Benchmark
+    public Script compileFromSource() {
+        Context cx = enter();
+        try {
+            return cx.compileString(source, "script_world", 1, null);
+        } finally {
+            Context.exit();
+        }
+    }
+
+    @Benchmark
+    public Script loadFromCache() {
+        Context cx = enter();
+        try {
+            return new ScriptCache(directory).compile(cx, source, "script_world");
+        } finally {
+            Context.exit();
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package gl.kev.ar.benchmark;
+
+import org.joml.Matrix4f;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+import gl.kev.ar.arengine.helper.math.Position;
+
+/**
+ * Created by kevingliewe on 18.10.26.
+ *
+ * Tag composition of ArJpctActivity.getTag, which runs for every tracked view on every frame.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TagBenchmark {
+
+    private Position[] trackables;
+    private int index = 0;
+
+    private final Position tag = new Position(100, 100, 100);
+    private final Position tagInverse = new Position();
+    private final Position dest = new Position();
+
+    @Setup
+    public void setUp() {
+        float[][] transformations = MarkerData.transformations(21);
+        trackables = new Position[MarkerData.COUNT];
+        for(int i = 0 ; i < MarkerData.COUNT ; i++)
+            trackables[i] = new Position(new Matrix4f(transformations[i]));
+    }
+
+    @Benchmark
+    public Position getTag() {
+        index = (index + 1) % MarkerData.COUNT;
+        Position trackablePositinon = trackables[index];
+        return trackablePositinon.add(tag.invert(tagInverse), dest);
+    }
+}